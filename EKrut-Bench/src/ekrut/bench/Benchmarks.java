@@ -0,0 +1,13 @@
+package ekrut.bench;
+
+/**
+ * Runs the EKrut benchmarks. Takes the same arguments as the JMH command line,
+ * e.g. a regular expression selecting the benchmarks to run and
+ * <code>-p name=value</code> to fix a parameter.
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws Exception {
+		org.openjdk.jmh.Main.main(args);
+	}
+}
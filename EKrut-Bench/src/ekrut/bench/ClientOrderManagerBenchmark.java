@@ -0,0 +1,72 @@
+package ekrut.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ekrut.client.managers.ClientOrderManager;
+import ekrut.entity.Item;
+import ekrut.entity.OrderItem;
+
+/**
+ * Measures {@link ClientOrderManager#addItemToOrder(OrderItem)}, both when
+ * filling a new order with distinct items and when changing the quantity of
+ * the last item of a full order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientOrderManagerBenchmark {
+
+	@Param({ "5", "20", "50" })
+	public int itemCount;
+
+	private Item[] items;
+	private ClientOrderManager fullOrderManager;
+
+	@Setup
+	public void setup() {
+		items = new Item[itemCount];
+		for (int i = 0; i < itemCount; i++)
+			items[i] = new Item(i, "item" + i, "", 1 + i % 20);
+
+		fullOrderManager = new ClientOrderManager();
+		fullOrderManager.createOrder("haifa");
+		for (Item item : items)
+			fullOrderManager.addItemToOrder(new OrderItem(item, 1));
+	}
+
+	/**
+	 * Creates an order and adds every item to it once.
+	 */
+	@Benchmark
+	public ClientOrderManager fillOrder() {
+		ClientOrderManager manager = new ClientOrderManager();
+		manager.createOrder("haifa");
+		for (Item item : items)
+			manager.addItemToOrder(new OrderItem(item, 1));
+		return manager;
+	}
+
+	/**
+	 * Adds an item that is already the last one in the order.
+	 */
+	@Benchmark
+	public ClientOrderManager updateLastItem() {
+		fullOrderManager.addItemToOrder(new OrderItem(items[itemCount - 1], 2));
+		return fullOrderManager;
+	}
+}
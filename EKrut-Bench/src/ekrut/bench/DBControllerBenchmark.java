@@ -0,0 +1,164 @@
+package ekrut.bench;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ekrut.entity.InventoryItem;
+import ekrut.entity.Item;
+import ekrut.server.db.DBController;
+import ekrut.server.db.InventoryCache;
+import ekrut.server.db.InventoryItemDAO;
+import ekrut.server.db.ItemDAO;
+
+/**
+ * Measures the query paths of {@link DBController} and the DAOs built on it
+ * against an in-memory H2 database running in MySQL mode, so no database
+ * server is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DBControllerBenchmark {
+
+	private static final String URL = "jdbc:h2:mem:ekrut;MODE=MySQL;DB_CLOSE_DELAY=-1";
+	private static final String LOCATION = "Haifa";
+	private static final int UPDATE_COUNT = 50;
+
+	@Param({ "100", "1000" })
+	public int itemCount;
+
+	private DBController con;
+	private InventoryItemDAO inventoryItemDAO;
+	private ItemDAO itemDAO;
+	private InventoryCache inventoryCache;
+	private Item[] items;
+
+	@Setup
+	public void setup() throws SQLException {
+		createDatabase();
+		con = new DBController(URL, "sa", "");
+		if (!con.connect())
+			throw new IllegalStateException("Could not connect to " + URL);
+
+		inventoryItemDAO = new InventoryItemDAO(con);
+		itemDAO = new ItemDAO(con);
+		inventoryCache = new InventoryCache(inventoryItemDAO);
+		items = itemDAO.fetchAllItems();
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException {
+		inventoryCache.close();
+		con.close();
+		try (Connection conn = DriverManager.getConnection(URL, "sa", "");
+				Statement st = conn.createStatement()) {
+			st.execute("DROP ALL OBJECTS");
+		}
+	}
+
+	private void createDatabase() throws SQLException {
+		try (Connection conn = DriverManager.getConnection(URL, "sa", "");
+				Statement st = conn.createStatement()) {
+			st.execute("DROP ALL OBJECTS");
+			st.execute("CREATE TABLE item (item_id INT PRIMARY KEY, item_name VARCHAR(45), "
+					+ "item_description VARCHAR(255), item_price INT)");
+			st.execute("CREATE TABLE inventory_item (item_id INT, ekrut_location VARCHAR(45), "
+					+ "item_quantity INT, item_threshold INT, PRIMARY KEY (item_id, ekrut_location))");
+
+			try (PreparedStatement item = conn.prepareStatement("INSERT INTO item VALUES (?, ?, ?, ?)");
+					PreparedStatement inventory = conn.prepareStatement(
+							"INSERT INTO inventory_item VALUES (?, ?, ?, ?)")) {
+				for (int i = 1; i <= itemCount; i++) {
+					item.setInt(1, i);
+					item.setString(2, "Item " + i);
+					item.setString(3, "Description of item " + i);
+					item.setInt(4, 5 + i % 30);
+					item.addBatch();
+
+					for (String location : new String[] { LOCATION, "Karmiel" }) {
+						inventory.setInt(1, i);
+						inventory.setString(2, location);
+						inventory.setInt(3, i % 40);
+						inventory.setInt(4, 5);
+						inventory.addBatch();
+					}
+				}
+				item.executeBatch();
+				inventory.executeBatch();
+			}
+		}
+	}
+
+	@Benchmark
+	public InventoryItem fetchInventoryItem() {
+		Item item = items[ThreadLocalRandom.current().nextInt(items.length)];
+		return inventoryItemDAO.fetchInventoryItem(item, LOCATION);
+	}
+
+	@Benchmark
+	public InventoryItem[] fetchAllItemsByLocation() {
+		return inventoryItemDAO.fetchAllItemsByLocation(LOCATION);
+	}
+
+	@Benchmark
+	public Item[] fetchAllItems() {
+		return itemDAO.fetchAllItems();
+	}
+
+	/**
+	 * Sums the prices of all items without loading the whole result into memory.
+	 */
+	@Benchmark
+	public long streamAllItems() {
+		PreparedStatement ps = con.getPreparedStatement("SELECT item_price FROM item");
+		try (Stream<Integer> prices = con.stream(ps, 100, rs -> rs.getInt(1))) {
+			return prices.mapToLong(Integer::longValue).sum();
+		}
+	}
+
+	/**
+	 * Writes new quantities for a run of items in one batch.
+	 */
+	@Benchmark
+	public Boolean updateItemQuantities() {
+		int first = ThreadLocalRandom.current().nextInt(Math.max(1, itemCount - UPDATE_COUNT));
+		int count = Math.min(UPDATE_COUNT, itemCount);
+		int[] itemIds = new int[count];
+		int[] quantities = new int[count];
+		for (int i = 0; i < count; i++) {
+			itemIds[i] = first + i + 1;
+			quantities[i] = ThreadLocalRandom.current().nextInt(50);
+		}
+		return inventoryItemDAO.updateItemQuantities(LOCATION, itemIds, quantities);
+	}
+
+	/**
+	 * The same fetch as {@link #fetchAllItemsByLocation()}, served by the inventory cache.
+	 */
+	@Benchmark
+	public InventoryItem[] cachedItemsByLocation() {
+		return inventoryCache.getItems(LOCATION);
+	}
+}
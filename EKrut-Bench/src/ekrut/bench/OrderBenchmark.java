@@ -0,0 +1,49 @@
+package ekrut.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ekrut.entity.Item;
+import ekrut.entity.Order;
+import ekrut.entity.OrderItem;
+import ekrut.entity.OrderType;
+
+/**
+ * Measures {@link Order#getSumAmount()} for orders of different sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBenchmark {
+
+	@Param({ "1", "10", "50" })
+	public int itemCount;
+
+	private Order order;
+
+	@Setup
+	public void setup() {
+		order = new Order(OrderType.PICKUP, "haifa");
+		for (int i = 0; i < itemCount; i++)
+			order.getItems().add(new OrderItem(new Item(i, "item" + i, "", 1 + i % 20), 1 + i % 3));
+	}
+
+	@Benchmark
+	public int getSumAmount() {
+		return order.getSumAmount();
+	}
+}
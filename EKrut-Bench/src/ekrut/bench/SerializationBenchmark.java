@@ -0,0 +1,110 @@
+package ekrut.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ekrut.entity.InventoryItem;
+import ekrut.entity.Item;
+import ekrut.net.BinaryCodec;
+import ekrut.net.InventoryItemResponse;
+
+/**
+ * Compares Java serialization with {@link BinaryCodec} for an
+ * {@link InventoryItemResponse} holding the inventory of a machine. Running
+ * {@link #main(String[])} prints the encoded sizes instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	@Param({ "50", "200", "500" })
+	public int itemCount;
+
+	private InventoryItemResponse response;
+	private byte[] serialized;
+	private byte[] encoded;
+
+	@Setup
+	public void setup() throws IOException {
+		response = createResponse(itemCount);
+		serialized = serialize(response);
+		encoded = BinaryCodec.encode(response);
+	}
+
+	@Benchmark
+	public byte[] javaSerialize() throws IOException {
+		return serialize(response);
+	}
+
+	@Benchmark
+	public Object javaDeserialize() throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+			return in.readObject();
+		}
+	}
+
+	@Benchmark
+	public byte[] binaryEncode() {
+		return BinaryCodec.encode(response);
+	}
+
+	@Benchmark
+	public Object binaryDecode() {
+		return BinaryCodec.decode(encoded);
+	}
+
+	/**
+	 * Builds the response a machine with the given number of items gets for a fetch.
+	 * 
+	 * @param itemCount the number of items in the machine
+	 * @return          the response
+	 */
+	static InventoryItemResponse createResponse(int itemCount) {
+		InventoryItem[] items = new InventoryItem[itemCount];
+		for (int i = 0; i < itemCount; i++) {
+			Item item = new Item(i + 1, "Item " + (i + 1), "Description of item " + (i + 1), 5 + i % 30);
+			items[i] = new InventoryItem(item, i % 40, "Haifa", 5);
+		}
+		return new InventoryItemResponse("OK", items);
+	}
+
+	static byte[] serialize(Object msg) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(msg);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Prints the size of the response in both formats for every item count.
+	 */
+	public static void main(String[] args) throws IOException {
+		System.out.println("items  java  binary");
+		for (int itemCount : new int[] { 50, 200, 500 }) {
+			InventoryItemResponse response = createResponse(itemCount);
+			System.out.printf("%5d %6d %7d%n", itemCount, serialize(response).length,
+					BinaryCodec.encode(response).length);
+		}
+	}
+}
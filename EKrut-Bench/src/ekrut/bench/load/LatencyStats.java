@@ -0,0 +1,127 @@
+package ekrut.bench.load;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Collects the latencies of the requests sent by all the simulated machines in
+ * an HDR histogram per request type. Latencies are recorded in microseconds.
+ */
+public class LatencyStats {
+
+	/**
+	 * The highest latency that can be recorded, in microseconds.
+	 */
+	private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+	private final EnumMap<RequestType, Recorder> recorders = new EnumMap<>(RequestType.class);
+	private final EnumMap<RequestType, Histogram> totals = new EnumMap<>(RequestType.class);
+	private final EnumMap<RequestType, AtomicLong> errors = new EnumMap<>(RequestType.class);
+	private final EnumMap<RequestType, Histogram> intervals = new EnumMap<>(RequestType.class);
+
+	public LatencyStats() {
+		for (RequestType type : RequestType.values()) {
+			recorders.put(type, new Recorder(MAX_LATENCY_MICROS, 3));
+			totals.put(type, new Histogram(MAX_LATENCY_MICROS, 3));
+			errors.put(type, new AtomicLong());
+		}
+	}
+
+	/**
+	 * Records a completed request. May be called from any thread.
+	 * 
+	 * @param type         the type of the request
+	 * @param latencyNanos the time from when the request was due until its response arrived
+	 */
+	public void record(RequestType type, long latencyNanos) {
+		long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_MICROS);
+		recorders.get(type).recordValue(micros);
+	}
+
+	/**
+	 * Records a failed request. May be called from any thread.
+	 * 
+	 * @param type the type of the request
+	 */
+	public void recordError(RequestType type) {
+		errors.get(type).incrementAndGet();
+	}
+
+	/**
+	 * Prints the throughput and latency of the requests completed since the
+	 * previous call, and adds them to the totals. Must be called from a single
+	 * thread.
+	 * 
+	 * @param out           where to print
+	 * @param elapsedMillis the length of the interval
+	 */
+	public void printInterval(PrintStream out, long elapsedMillis) {
+		for (RequestType type : RequestType.values())
+			print(out, type, collectInterval(type), elapsedMillis);
+	}
+
+	/**
+	 * Adds the requests completed since the last report to the totals without
+	 * printing them. Must be called from a single thread.
+	 */
+	public void collect() {
+		for (RequestType type : RequestType.values())
+			collectInterval(type);
+	}
+
+	private Histogram collectInterval(RequestType type) {
+		Histogram interval = recorders.get(type).getIntervalHistogram(intervals.get(type));
+		intervals.put(type, interval);
+		totals.get(type).add(interval);
+		return interval;
+	}
+
+	/**
+	 * Prints the throughput and latency of all the requests. Must be called
+	 * after the last call to {@link #collect()}.
+	 * 
+	 * @param out           where to print
+	 * @param elapsedMillis the length of the whole run
+	 */
+	public void printTotals(PrintStream out, long elapsedMillis) {
+		for (RequestType type : RequestType.values())
+			print(out, type, totals.get(type), elapsedMillis);
+	}
+
+	/**
+	 * Writes the full percentile distribution of every request type to a
+	 * <code>.hgrm</code> file, which can be plotted with the HdrHistogram tools.
+	 * 
+	 * @param dir the folder to write the files to
+	 * @throws FileNotFoundException if a file could not be created
+	 */
+	public void writeHistograms(Path dir) throws FileNotFoundException {
+		for (RequestType type : RequestType.values()) {
+			Path file = dir.resolve(type.name().toLowerCase() + ".hgrm");
+			try (PrintStream out = new PrintStream(file.toFile())) {
+				// Values are in microseconds, print them in milliseconds
+				totals.get(type).outputPercentileDistribution(out, 1000.0);
+			}
+		}
+	}
+
+	public static void printHeader(PrintStream out) {
+		out.printf("%-8s %9s %9s %7s %9s %9s %9s %9s%n", "type", "count", "req/s", "errors", "p50 ms", "p99 ms",
+				"p999 ms", "max ms");
+	}
+
+	private void print(PrintStream out, RequestType type, Histogram histogram, long elapsedMillis) {
+		long count = histogram.getTotalCount();
+		double throughput = elapsedMillis > 0 ? count * 1000.0 / elapsedMillis : 0;
+		out.printf("%-8s %9d %9.1f %7d %9.2f %9.2f %9.2f %9.2f%n", type, count, throughput, errors.get(type).get(),
+				histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+				histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0);
+	}
+}
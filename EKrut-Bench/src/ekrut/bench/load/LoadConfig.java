@@ -0,0 +1,169 @@
+package ekrut.bench.load;
+
+import java.util.HashMap;
+
+/**
+ * The settings of a load run, read from <code>name=value</code> arguments:
+ * <ul>
+ * <li><b>host</b>, <b>port</b>: the server to connect to (localhost, 5555)</li>
+ * <li><b>machines</b>: the number of simulated machines, each with its own connection (10)</li>
+ * <li><b>customers</b>: the number of customers, spread over the machines (100)</li>
+ * <li><b>rate</b>: the total number of requests per second of all machines (100)</li>
+ * <li><b>duration</b>: the length of the run in seconds (60)</li>
+ * <li><b>mix</b>: the weights of order, fetch and restock requests (60:30:10)</li>
+ * <li><b>locations</b>: comma separated machine locations, used in turn (Haifa)</li>
+ * <li><b>orderItems</b>: the most items in one order (5)</li>
+ * <li><b>restockItems</b>: the most items restocked at once (10)</li>
+ * <li><b>restockQuantity</b>: the quantity of a restocked item (30)</li>
+ * <li><b>report</b>: seconds between progress reports (5)</li>
+ * <li><b>histograms</b>: a folder to write the full latency histograms to (none)</li>
+ * </ul>
+ */
+public class LoadConfig {
+
+	private String host = "localhost";
+	private int port = 5555;
+	private int machines = 10;
+	private int customers = 100;
+	private double rate = 100;
+	private int durationSeconds = 60;
+	private int orderWeight = 60;
+	private int fetchWeight = 30;
+	private int restockWeight = 10;
+	private String[] locations = { "Haifa" };
+	private int maxItemsPerOrder = 5;
+	private int maxItemsPerRestock = 10;
+	private int restockQuantity = 30;
+	private int reportIntervalSeconds = 5;
+	private String histogramDir;
+
+	/**
+	 * Reads the settings from the command line.
+	 * 
+	 * @param args <code>name=value</code> arguments, settings not given keep their default
+	 * @return     the settings
+	 * @throws IllegalArgumentException if an argument is unknown or invalid
+	 */
+	public static LoadConfig parse(String[] args) {
+		HashMap<String, String> values = new HashMap<>();
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split <= 0)
+				throw new IllegalArgumentException("Expected name=value but got " + arg);
+			values.put(arg.substring(0, split), arg.substring(split + 1));
+		}
+
+		LoadConfig config = new LoadConfig();
+		try {
+			for (String name : values.keySet()) {
+				String value = values.get(name);
+				switch (name) {
+				case "host": config.host = value; break;
+				case "port": config.port = Integer.parseInt(value); break;
+				case "machines": config.machines = Integer.parseInt(value); break;
+				case "customers": config.customers = Integer.parseInt(value); break;
+				case "rate": config.rate = Double.parseDouble(value); break;
+				case "duration": config.durationSeconds = Integer.parseInt(value); break;
+				case "mix": config.parseMix(value); break;
+				case "locations": config.locations = value.split(","); break;
+				case "orderItems": config.maxItemsPerOrder = Integer.parseInt(value); break;
+				case "restockItems": config.maxItemsPerRestock = Integer.parseInt(value); break;
+				case "restockQuantity": config.restockQuantity = Integer.parseInt(value); break;
+				case "report": config.reportIntervalSeconds = Integer.parseInt(value); break;
+				case "histograms": config.histogramDir = value; break;
+				default: throw new IllegalArgumentException("Unknown setting " + name);
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number: " + e.getMessage());
+		}
+
+		if (config.machines < 1 || config.customers < 0 || config.rate <= 0 || config.durationSeconds < 1
+				|| config.maxItemsPerOrder < 1 || config.maxItemsPerRestock < 1 || config.reportIntervalSeconds < 1)
+			throw new IllegalArgumentException("Settings out of range");
+		return config;
+	}
+
+	private void parseMix(String mix) {
+		String[] weights = mix.split(":");
+		if (weights.length != 3)
+			throw new IllegalArgumentException("mix must be order:fetch:restock");
+		orderWeight = Integer.parseInt(weights[0]);
+		fetchWeight = Integer.parseInt(weights[1]);
+		restockWeight = Integer.parseInt(weights[2]);
+		if (orderWeight < 0 || fetchWeight < 0 || restockWeight < 0 || getTotalWeight() == 0)
+			throw new IllegalArgumentException("mix weights must be non-negative and not all 0");
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public int getMachines() {
+		return machines;
+	}
+
+	public int getCustomers() {
+		return customers;
+	}
+
+	public double getRatePerMachine() {
+		return rate / machines;
+	}
+
+	public int getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	public int getOrderWeight() {
+		return orderWeight;
+	}
+
+	public int getFetchWeight() {
+		return fetchWeight;
+	}
+
+	public int getTotalWeight() {
+		return orderWeight + fetchWeight + restockWeight;
+	}
+
+	/**
+	 * @param machine the index of a machine
+	 * @return        the location of that machine
+	 */
+	public String getLocation(int machine) {
+		return locations[machine % locations.length];
+	}
+
+	/**
+	 * @param machine the index of a machine
+	 * @return        the number of customers using that machine
+	 */
+	public int getCustomers(int machine) {
+		return customers / machines + (machine < customers % machines ? 1 : 0);
+	}
+
+	public int getMaxItemsPerOrder() {
+		return maxItemsPerOrder;
+	}
+
+	public int getMaxItemsPerRestock() {
+		return maxItemsPerRestock;
+	}
+
+	public int getRestockQuantity() {
+		return restockQuantity;
+	}
+
+	public int getReportIntervalSeconds() {
+		return reportIntervalSeconds;
+	}
+
+	public String getHistogramDir() {
+		return histogramDir;
+	}
+}
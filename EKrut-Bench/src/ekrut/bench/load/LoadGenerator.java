@@ -0,0 +1,89 @@
+package ekrut.bench.load;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import ekrut.client.EKrutClient;
+
+/**
+ * Puts a running EKrut server under the load of a fleet of vending machines
+ * and reports the throughput and latency of every request type. See
+ * {@link LoadConfig} for the arguments, e.g.
+ * 
+ * <pre>
+ * java ekrut.bench.load.LoadGenerator machines=50 customers=2000 rate=500 duration=120
+ * </pre>
+ */
+public class LoadGenerator {
+
+	public static void main(String[] args) throws Exception {
+		LoadConfig config;
+		try {
+			config = LoadConfig.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		LatencyStats stats = new LatencyStats();
+		MachineSimulator[] machines = new MachineSimulator[config.getMachines()];
+		Thread[] threads = new Thread[machines.length];
+
+		for (int i = 0; i < machines.length; i++) {
+			EKrutClient client = new EKrutClient(config.getHost(), config.getPort());
+			try {
+				client.connect();
+			} catch (IOException e) {
+				System.err.println("Could not connect machine " + i + ": " + e.getMessage());
+				System.exit(1);
+			}
+			machines[i] = new MachineSimulator(config.getLocation(i), client, config.getCustomers(i), config,
+					stats, i);
+			threads[i] = new Thread(machines[i], "machine " + i);
+		}
+
+		System.out.printf("%d machines, %d customers, %.1f requests/s for %d s%n", machines.length,
+				config.getCustomers(), config.getRatePerMachine() * machines.length, config.getDurationSeconds());
+
+		long start = System.nanoTime();
+		for (Thread thread : threads)
+			thread.start();
+
+		long end = start + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+		long intervalStart = start;
+		while (System.nanoTime() < end) {
+			long next = Math.min(end, intervalStart + TimeUnit.SECONDS.toNanos(config.getReportIntervalSeconds()));
+			TimeUnit.NANOSECONDS.sleep(Math.max(0, next - System.nanoTime()));
+
+			long now = System.nanoTime();
+			System.out.printf("%n[%d s]%n", TimeUnit.NANOSECONDS.toSeconds(now - start));
+			LatencyStats.printHeader(System.out);
+			stats.printInterval(System.out, TimeUnit.NANOSECONDS.toMillis(now - intervalStart));
+			intervalStart = now;
+		}
+
+		for (MachineSimulator machine : machines)
+			machine.stop();
+		for (Thread thread : threads)
+			thread.join();
+
+		// Requests that completed while the machines were stopping
+		stats.collect();
+
+		System.out.printf("%nTotal%n");
+		LatencyStats.printHeader(System.out);
+		stats.printTotals(System.out, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		if (config.getHistogramDir() != null) {
+			Path dir = Paths.get(config.getHistogramDir());
+			Files.createDirectories(dir);
+			stats.writeHistograms(dir);
+			System.out.println("Histograms written to " + dir.toAbsolutePath());
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,156 @@
+package ekrut.bench.load;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+
+import ekrut.server.EKrutServer;
+import ekrut.server.db.DBController;
+
+/**
+ * Starts an EKrut server for {@link LoadGenerator} on an in-memory H2 database
+ * running in MySQL mode, so no database server is needed. The database is
+ * created by the server's schema script and every location is stocked with the
+ * same items. The settings are <code>name=value</code> arguments:
+ * <ul>
+ * <li><b>port</b>: the port to listen on (5555)</li>
+ * <li><b>schema</b>: the schema script (../EKrut-Server/db/schema.sql)</li>
+ * <li><b>items</b>: the number of items (100)</li>
+ * <li><b>quantity</b>: the starting quantity of every item in every location (1000)</li>
+ * <li><b>locations</b>: comma separated locations to stock (Haifa)</li>
+ * <li><b>workers</b>: the number of threads handling requests (one per processor)</li>
+ * <li><b>eventLoops</b>: the number of event loop threads, or 0 for a thread per client (0)</li>
+ * </ul>
+ * The server runs until Enter is pressed. A run of the load generator against
+ * it, from the EKrut-Bench folder:
+ *
+ * <pre>
+ * java ekrut.bench.load.LoadServer
+ * java ekrut.bench.load.LoadGenerator machines=8 rate=800
+ * </pre>
+ */
+public class LoadServer {
+
+	private static final String URL = "jdbc:h2:mem:ekrut;MODE=MySQL;DB_CLOSE_DELAY=-1";
+	private static final String AREA = "North";
+	private static final int THRESHOLD = 5;
+
+	private int port = 5555;
+	private String schema = "../EKrut-Server/db/schema.sql";
+	private int items = 100;
+	private int quantity = 1000;
+	private String[] locations = { "Haifa" };
+	private int workers = EKrutServer.DEFAULT_WORKER_COUNT;
+	private int eventLoops = 0;
+
+	public static void main(String[] args) throws Exception {
+		LoadServer settings;
+		try {
+			settings = parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		settings.createDatabase();
+		DBController con = new DBController(URL, "sa", "");
+		if (!con.connect()) {
+			System.err.println("Could not connect to " + URL);
+			System.exit(1);
+		}
+
+		EKrutServer server = new EKrutServer(settings.port, con, settings.workers);
+		server.setEventLoops(settings.eventLoops);
+		server.listen();
+		System.out.printf("Listening on port %d with %d items in %s, press Enter to stop%n", settings.port,
+				settings.items, String.join(",", settings.locations));
+
+		System.in.read();
+		server.close();
+		con.close();
+		System.exit(0);
+	}
+
+	private static LoadServer parse(String[] args) {
+		HashMap<String, String> values = new HashMap<>();
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split <= 0)
+				throw new IllegalArgumentException("Expected name=value but got " + arg);
+			values.put(arg.substring(0, split), arg.substring(split + 1));
+		}
+
+		LoadServer settings = new LoadServer();
+		try {
+			for (String name : values.keySet()) {
+				String value = values.get(name);
+				switch (name) {
+				case "port": settings.port = Integer.parseInt(value); break;
+				case "schema": settings.schema = value; break;
+				case "items": settings.items = Integer.parseInt(value); break;
+				case "quantity": settings.quantity = Integer.parseInt(value); break;
+				case "locations": settings.locations = value.split(","); break;
+				case "workers": settings.workers = Integer.parseInt(value); break;
+				case "eventLoops": settings.eventLoops = Integer.parseInt(value); break;
+				default: throw new IllegalArgumentException("Unknown setting " + name);
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number: " + e.getMessage());
+		}
+
+		if (settings.items < 1 || settings.quantity < 0 || settings.workers < 1 || settings.eventLoops < 0)
+			throw new IllegalArgumentException("Settings out of range");
+		return settings;
+	}
+
+	private void createDatabase() throws IOException, SQLException {
+		String script = new String(Files.readAllBytes(Paths.get(schema)), StandardCharsets.UTF_8);
+		try (Connection conn = DriverManager.getConnection(URL, "sa", "");
+				Statement st = conn.createStatement()) {
+			st.execute("DROP ALL OBJECTS");
+			// The script holds only comment lines and statements ending with ;
+			for (String sql : script.replaceAll("(?m)^--.*$", "").split(";"))
+				if (!sql.trim().isEmpty())
+					st.execute(sql);
+
+			try (PreparedStatement location = conn.prepareStatement("INSERT INTO ekrut_location VALUES (?, ?)");
+					PreparedStatement item = conn.prepareStatement("INSERT INTO item VALUES (?, ?, ?, ?)");
+					PreparedStatement inventory = conn.prepareStatement(
+							"INSERT INTO inventory_item VALUES (?, ?, ?, ?)")) {
+				for (String ekrutLocation : locations) {
+					location.setString(1, ekrutLocation);
+					location.setString(2, AREA);
+					location.addBatch();
+				}
+				location.executeBatch();
+
+				for (int i = 1; i <= items; i++) {
+					item.setInt(1, i);
+					item.setString(2, "Item " + i);
+					item.setString(3, "Description of item " + i);
+					item.setInt(4, 5 + i % 30);
+					item.addBatch();
+
+					for (String ekrutLocation : locations) {
+						inventory.setInt(1, i);
+						inventory.setString(2, ekrutLocation);
+						inventory.setInt(3, quantity);
+						inventory.setInt(4, THRESHOLD);
+						inventory.addBatch();
+					}
+				}
+				item.executeBatch();
+				inventory.executeBatch();
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package ekrut.bench.load;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import ekrut.client.EKrutClient;
+import ekrut.client.RequestFailedException;
+import ekrut.client.managers.ClientInventoryManager;
+import ekrut.client.managers.ClientOrderManager;
+import ekrut.entity.InventoryItem;
+import ekrut.entity.Item;
+import ekrut.entity.OrderItem;
+import ekrut.net.OrderRequest;
+import ekrut.net.OrderRequestType;
+import ekrut.net.OrderResponse;
+
+/**
+ * A single simulated vending machine with its own connection to the server.
+ * The machine sends requests at a fixed rate, picking the type of each one by
+ * the configured mix, until it is stopped.
+ * 
+ * Requests are due at fixed times; when the server falls behind, the next
+ * requests are sent right away and their latency is measured from when they
+ * were due, so a slow server is not hidden by the machine waiting for it.
+ */
+public class MachineSimulator implements Runnable {
+
+	private final String ekrutLocation;
+	private final EKrutClient client;
+	private final ClientInventoryManager inventoryManager;
+	private final ClientOrderManager[] customers;
+	private final LoadConfig config;
+	private final LatencyStats stats;
+	private final Random random;
+
+	private Item[] items = new Item[0];
+	private volatile boolean stopped = false;
+
+	/**
+	 * @param ekrutLocation the location of the machine
+	 * @param client        a connected client used by this machine only
+	 * @param customerCount the number of customers using this machine
+	 * @param config        the load settings
+	 * @param stats         collects the latencies
+	 * @param seed          the seed of the random choices of this machine
+	 */
+	public MachineSimulator(String ekrutLocation, EKrutClient client, int customerCount, LoadConfig config,
+			LatencyStats stats, long seed) {
+		this.ekrutLocation = ekrutLocation;
+		this.client = client;
+		this.inventoryManager = new ClientInventoryManager(client);
+		this.customers = new ClientOrderManager[customerCount];
+		for (int i = 0; i < customerCount; i++)
+			customers[i] = new ClientOrderManager();
+		this.config = config;
+		this.stats = stats;
+		this.random = new Random(seed);
+	}
+
+	public void stop() {
+		stopped = true;
+	}
+
+	@Override
+	public void run() {
+		long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / config.getRatePerMachine());
+		long due = System.nanoTime();
+
+		// The machine must know its items before it can order or restock them
+		send(RequestType.FETCH, due);
+
+		while (!stopped) {
+			due += intervalNanos;
+			long wait = due - System.nanoTime();
+			if (wait > 0)
+				LockSupport.parkNanos(wait);
+			if (stopped)
+				break;
+			send(nextRequestType(), due);
+		}
+
+		inventoryManager.close();
+		try {
+			client.closeConnection();
+		} catch (Exception e) {
+			// Closing anyway
+		}
+	}
+
+	private RequestType nextRequestType() {
+		if (items.length == 0)
+			return RequestType.FETCH;
+
+		int roll = random.nextInt(config.getTotalWeight());
+		if (roll < config.getOrderWeight())
+			return customers.length > 0 ? RequestType.ORDER : RequestType.FETCH;
+		if (roll < config.getOrderWeight() + config.getFetchWeight())
+			return RequestType.FETCH;
+		return RequestType.RESTOCK;
+	}
+
+	private void send(RequestType type, long due) {
+		try {
+			switch (type) {
+			case ORDER:
+				order();
+				break;
+			case FETCH:
+				fetch();
+				break;
+			case RESTOCK:
+				restock();
+				break;
+			}
+			stats.record(type, System.nanoTime() - due);
+		} catch (Exception e) {
+			stats.recordError(type);
+		}
+	}
+
+	private void fetch() throws Exception {
+		InventoryItem[] inventoryItems = inventoryManager.getItems(ekrutLocation);
+		Item[] fetched = new Item[inventoryItems.length];
+		for (int i = 0; i < inventoryItems.length; i++)
+			fetched[i] = inventoryItems[i].getItem();
+		items = fetched;
+	}
+
+	/**
+	 * A random customer builds an order of a few items, and the machine sends it
+	 * to the server, which reserves the items and commits the order. Its
+	 * latency is measured until the order is committed. An order refused for
+	 * lack of stock is an answer like any other, the machine is restocked later.
+	 */
+	private void order() throws Exception {
+		ClientOrderManager customer = customers[random.nextInt(customers.length)];
+		customer.createOrder(ekrutLocation);
+		try {
+			int itemCount = 1 + random.nextInt(config.getMaxItemsPerOrder());
+			for (int i = 0; i < itemCount; i++)
+				customer.addItemToOrder(new OrderItem(items[random.nextInt(items.length)], 1 + random.nextInt(2)));
+
+			Object response = client.sendAsync(new OrderRequest(OrderRequestType.CREATE, 0, customer.getActiveOrder()))
+					.get();
+			if (!(response instanceof OrderResponse))
+				throw new IOException("Unexpected response from the server: " + response);
+			int resultCode = ((OrderResponse) response).getResultCode();
+			if (resultCode != OrderResponse.OK && resultCode != OrderResponse.OUT_OF_STOCK)
+				throw new RequestFailedException(String.valueOf(resultCode));
+		} finally {
+			customer.cancelOrder();
+		}
+	}
+
+	private void restock() throws Exception {
+		int count = Math.min(items.length, 1 + random.nextInt(config.getMaxItemsPerRestock()));
+		Item[] restocked = new Item[count];
+		int[] newQuantities = new int[count];
+		int first = random.nextInt(items.length);
+		for (int i = 0; i < count; i++) {
+			restocked[i] = items[(first + i) % items.length];
+			newQuantities[i] = config.getRestockQuantity();
+		}
+
+		inventoryManager.updateInventoryQuantities(restocked, ekrutLocation, newQuantities);
+	}
+}
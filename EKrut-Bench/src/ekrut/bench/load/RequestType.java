@@ -0,0 +1,23 @@
+package ekrut.bench.load;
+
+/**
+ * The kinds of requests a simulated machine sends.
+ */
+public enum RequestType {
+
+	/**
+	 * A customer builds an order at the machine and the machine sends it to
+	 * the server, which commits it.
+	 */
+	ORDER,
+
+	/**
+	 * The machine fetches its inventory, e.g. to refresh its screen.
+	 */
+	FETCH,
+
+	/**
+	 * A worker restocks some of the items of the machine.
+	 */
+	RESTOCK
+}
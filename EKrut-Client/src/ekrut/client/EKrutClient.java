@@ -0,0 +1,233 @@
+package ekrut.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import ekrut.net.BinaryCodec;
+import ekrut.net.CodecNegotiation;
+import ekrut.net.CorrelatedMessage;
+import ekrut.net.UserResponse;
+import ekrut.net.WireFormat;
+import ocsf.client.AbstractClient;
+
+/**
+ * The connection of a client to the EKrut server. Right after connecting, the
+ * client offers the binary codec and falls back to Java serialization if the
+ * server does not accept it or does not answer in time.
+ *
+ * Requests are sent with a correlation ID (see {@link CorrelatedMessage}), so
+ * many requests can be in flight on the connection at once and their responses
+ * may arrive in any order. The futures returned by {@link #sendAsync(Object)}
+ * are completed on the thread reading from the server; callbacks that take time
+ * should run on another executor.
+ *
+ * Messages the server sends on its own, without a correlation ID, are handed
+ * to the push listeners (see {@link #addPushListener(Consumer)}).
+ *
+ * Once a user logged in, every request carries the token of the session (see
+ * {@link #setSessionToken(String)}). A request the server refuses because the
+ * session expired fails with a {@link RequestFailedException} whose result code
+ * is "SESSION_EXPIRED".
+ */
+public class EKrutClient extends AbstractClient {
+
+	public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+	public static final long NEGOTIATION_TIMEOUT_MILLIS = 2_000;
+
+	private final ConcurrentHashMap<Integer, CompletableFuture<Object>> pending = new ConcurrentHashMap<>();
+	private final AtomicInteger nextCorrelationId = new AtomicInteger();
+	private final Object sendLock = new Object();
+	private final CopyOnWriteArrayList<Consumer<Object>> pushListeners = new CopyOnWriteArrayList<>();
+	private volatile CompletableFuture<CodecNegotiation> negotiation;
+	private volatile WireFormat wireFormat = WireFormat.JAVA_SERIALIZATION;
+	private volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+	private volatile String sessionToken;
+
+	public EKrutClient(String host, int port) {
+		super(host, port);
+	}
+
+	/**
+	 * Connects to the server and agrees on the wire format.
+	 *
+	 * @throws IOException if the connection could not be opened
+	 */
+	public void connect() throws IOException {
+		openConnection();
+		negotiate();
+	}
+
+	private void negotiate() throws IOException {
+		CompletableFuture<CodecNegotiation> answer = new CompletableFuture<>();
+		negotiation = answer;
+		try {
+			send(new CodecNegotiation(BinaryCodec.VERSION));
+			wireFormat = answer.get(NEGOTIATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getWireFormat();
+		} catch (TimeoutException | ExecutionException e) {
+			wireFormat = WireFormat.JAVA_SERIALIZATION;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while connecting to the server", e);
+		} finally {
+			// An answer arriving after the timeout is ignored, the client stays with Java serialization
+			negotiation = null;
+		}
+	}
+
+	/**
+	 * Sends a request without waiting for its response.
+	 *
+	 * @param request the request to send
+	 * @return        a future completed with the response of the server, or
+	 *                failed with an IOException if the request could not be
+	 *                sent or the connection was lost, or with a TimeoutException
+	 *                if no response arrived in time
+	 */
+	public CompletableFuture<Object> sendAsync(Object request) {
+		return sendAsync(request, timeoutMillis);
+	}
+
+	/**
+	 * Sends a request without waiting for its response.
+	 *
+	 * @param request       the request to send
+	 * @param timeoutMillis how long to wait for the response
+	 * @return              a future completed with the response, see {@link #sendAsync(Object)}
+	 */
+	public CompletableFuture<Object> sendAsync(Object request, long timeoutMillis) {
+		int correlationId = nextCorrelationId.getAndIncrement() & Integer.MAX_VALUE;
+		CompletableFuture<Object> response = new CompletableFuture<>();
+		pending.put(correlationId, response);
+		response.whenComplete((r, e) -> pending.remove(correlationId));
+
+		try {
+			send(wireFormat.encode(new CorrelatedMessage(correlationId, request, sessionToken)));
+		} catch (IOException e) {
+			response.completeExceptionally(e);
+			return response;
+		}
+		return response.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sends a request and waits for its response.
+	 *
+	 * @param request the request to send
+	 * @return        the response of the server
+	 * @throws IOException if the request could not be sent or no response arrived in time
+	 */
+	public Object sendRequest(Object request) throws IOException {
+		try {
+			return sendAsync(request).get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof TimeoutException)
+				throw new IOException("No response from the server within " + timeoutMillis + " ms", cause);
+			throw new IOException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the server", e);
+		}
+	}
+
+	private void send(Object msg) throws IOException {
+		// The object stream of the connection must not be written by two threads at once
+		synchronized (sendLock) {
+			sendToServer(msg);
+		}
+	}
+
+	/**
+	 * @return the number of requests still waiting for their response
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Registers a listener for the messages the server pushes on its own. The
+	 * listener is called on the thread reading from the server.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addPushListener(Consumer<Object> listener) {
+		pushListeners.add(listener);
+	}
+
+	public void removePushListener(Consumer<Object> listener) {
+		pushListeners.remove(listener);
+	}
+
+	public WireFormat getWireFormat() {
+		return wireFormat;
+	}
+
+	public void setTimeoutMillis(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * @param sessionToken the token sent with every request, or null once logged out
+	 */
+	public void setSessionToken(String sessionToken) {
+		this.sessionToken = sessionToken;
+	}
+
+	public String getSessionToken() {
+		return sessionToken;
+	}
+
+	@Override
+	protected void handleMessageFromServer(Object msg) {
+		if (msg instanceof CodecNegotiation) {
+			CompletableFuture<CodecNegotiation> answer = negotiation;
+			if (answer != null)
+				answer.complete((CodecNegotiation) msg);
+			return;
+		}
+
+		Object decoded = WireFormat.decode(msg);
+		if (!(decoded instanceof CorrelatedMessage)) {
+			for (Consumer<Object> listener : pushListeners)
+				listener.accept(decoded);
+			return;
+		}
+
+		CorrelatedMessage response = (CorrelatedMessage) decoded;
+		CompletableFuture<Object> future = pending.get(response.getCorrelationId());
+		// Responses to requests that already timed out are dropped
+		if (future == null)
+			return;
+		Object message = response.getMessage();
+		if (message instanceof UserResponse
+				&& ((UserResponse) message).getResultCode() == UserResponse.SESSION_EXPIRED)
+			future.completeExceptionally(new RequestFailedException("SESSION_EXPIRED"));
+		else
+			future.complete(message);
+	}
+
+	@Override
+	protected void connectionClosed() {
+		failPending(new IOException("Connection to the server was closed"));
+	}
+
+	@Override
+	protected void connectionException(Exception exception) {
+		failPending(new IOException("Connection to the server was lost", exception));
+	}
+
+	private void failPending(IOException e) {
+		for (CompletableFuture<Object> future : new ArrayList<>(pending.values()))
+			future.completeExceptionally(e);
+	}
+}
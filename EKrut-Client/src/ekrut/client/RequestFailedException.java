@@ -0,0 +1,20 @@
+package ekrut.client;
+
+/**
+ * Thrown when the server handled a request but refused it, e.g. because the
+ * item does not exist at the given location. The message is the result code
+ * sent by the server.
+ */
+public class RequestFailedException extends Exception {
+	private static final long serialVersionUID = 6031598851452316632L;
+	private final String resultCode;
+
+	public RequestFailedException(String resultCode) {
+		super(resultCode);
+		this.resultCode = resultCode;
+	}
+
+	public String getResultCode() {
+		return resultCode;
+	}
+}
@@ -1,71 +1,276 @@
 package ekrut.client.managers;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import ekrut.client.EKrutClient;
+import ekrut.client.RequestFailedException;
 import ekrut.entity.InventoryItem;
 import ekrut.entity.Item;
 import ekrut.net.InventoryItemRequest;
+import ekrut.net.InventoryItemRequestType;
 import ekrut.net.InventoryItemResponse;
+import ekrut.net.InventoryUpdateNotification;
+import ekrut.net.LowStockAlert;
+
+/**
+ * This class manages inventory on the client side.
+ *
+ * Every operation comes in two forms: one that waits for the server, and an
+ * <i>Async</i> one that returns right away so the UI thread is never blocked
+ * and several requests can be in flight at once. The futures of the async
+ * methods fail with:
+ * <ul>
+ * <li>{@link RequestFailedException} if the server refused the request</li>
+ * <li>{@link java.util.concurrent.TimeoutException} if the server did not answer in time</li>
+ * <li>{@link IOException} if the connection failed or the server sent an unexpected response</li>
+ * </ul>
+ * The waiting methods throw the same exceptions. Invalid arguments are
+ * rejected right away with an IllegalArgumentException.
+ *
+ * Instead of polling {@link #getItems(String)}, a client can keep an
+ * {@link InventoryView} of a location, which is refreshed with only the items
+ * that changed, and can subscribe to a location to be told about every change
+ * of its inventory. A manager that is no longer used must be closed, so the
+ * client stops handing it the messages pushed by the server.
+ */
+public class ClientInventoryManager implements AutoCloseable {
 
-public class ClientInventoryManager {
+	private EKrutClient client;
+	private long timeoutMillis;
+	private final Consumer<Object> pushListener = this::handlePush;
+	private final ConcurrentHashMap<String, CopyOnWriteArrayList<InventoryUpdateListener>> updateListeners =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * @param client the connection to the server used to send the requests
+	 */
+	public ClientInventoryManager(EKrutClient client) {
+		this(client, 0);
+	}
+
+	/**
+	 * @param client        the connection to the server used to send the requests
+	 * @param timeoutMillis how long to wait for each response, 0 to use the timeout of the client
+	 */
+	public ClientInventoryManager(EKrutClient client, long timeoutMillis) {
+		this.client = client;
+		this.timeoutMillis = timeoutMillis;
+		client.addPushListener(pushListener);
+	}
 
 	public void updateInventoryQuantity(Item item, String ekrutLocation, int quantity) throws Exception {
+		await(updateInventoryQuantityAsync(item, ekrutLocation, quantity));
+	}
+
+	public CompletableFuture<Void> updateInventoryQuantityAsync(Item item, String ekrutLocation, int quantity) {
 		if (item == null)
 			throw new IllegalArgumentException("null Item was provided.");
 		if (quantity < 0)
 			throw new IllegalArgumentException("Quantity must be a non-negative number.");
-		
+
 		// Prepare a InventoryItemRequest to send to server.
-		InventoryItemRequest inventoryUpdateItemRequest = 
+		InventoryItemRequest inventoryUpdateItemRequest =
 				new InventoryItemRequest(item.getItemId(), quantity, ekrutLocation);
-		
-		// Sending InventoryItemRequest and receiving InventoryItemResponse.
-		InventoryItemResponse inventoryItemUpdateResponse = sendRequest(inventoryUpdateItemRequest);
-		if (inventoryItemUpdateResponse.getResultCode().equals("OK")) return;
-		
-		// ResultCode is not "OK" meaning we encountered an error.
-		throw new Exception(inventoryItemUpdateResponse.getResultCode()); // TBD CHANGE TO SPESIFIC EXCEPTION
-	}
-	
-	
+
+		// Sending InventoryItemRequest and checking the InventoryItemResponse.
+		return sendRequest(inventoryUpdateItemRequest).thenApply(response -> null);
+	}
+
+
+	// Updates the quantities of many items in one message, e.g. when restocking a machine.
+	public void updateInventoryQuantities(Item[] items, String ekrutLocation, int[] quantities) throws Exception {
+		await(updateInventoryQuantitiesAsync(items, ekrutLocation, quantities));
+	}
+
+	public CompletableFuture<Void> updateInventoryQuantitiesAsync(Item[] items, String ekrutLocation,
+			int[] quantities) {
+		if (items == null || quantities == null)
+			throw new IllegalArgumentException("null Items or quantities were provided.");
+		if (items.length != quantities.length)
+			throw new IllegalArgumentException("Every item must have exactly one quantity.");
+
+		int[] itemIds = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			if (items[i] == null)
+				throw new IllegalArgumentException("null Item was provided.");
+			if (quantities[i] < 0)
+				throw new IllegalArgumentException("Quantity must be a non-negative number.");
+			itemIds[i] = items[i].getItemId();
+		}
+
+		// Prepare a single InventoryItemRequest for all the items.
+		InventoryItemRequest inventoryUpdateItemsRequest =
+				new InventoryItemRequest(ekrutLocation, itemIds, quantities);
+
+		// Sending InventoryItemRequest and checking the InventoryItemResponse.
+		return sendRequest(inventoryUpdateItemsRequest).thenApply(response -> null);
+	}
+
+
 	public InventoryItem[] getItems(String ekrutLocation) throws Exception {
+		return await(getItemsAsync(ekrutLocation));
+	}
+
+	public CompletableFuture<InventoryItem[]> getItemsAsync(String ekrutLocation) {
 		// Prepare a InventoryItemRequest to send to server.
-		InventoryItemRequest inventoryGetItemsRequest = 
+		InventoryItemRequest inventoryGetItemsRequest =
 				new InventoryItemRequest(ekrutLocation);
-		
-		// Sending InventoryItemRequest and receiving InventoryItemResponse.
-		InventoryItemResponse inventoryGetItemsResponse = sendRequest(inventoryGetItemsRequest);
-		
-		// ResultCode is not "OK" meaning we encountered an error.
-		String resultCode = inventoryGetItemsResponse.getResultCode();
-		if (!resultCode.equals("OK"))
-			throw new Exception(resultCode); // TBD CHANGE TO SPESIFIC EXCEPTION
-		
+
 		// return the InventoryItem(s) attached to the response.
-		return inventoryGetItemsResponse.getInventoryItems();
+		return sendRequest(inventoryGetItemsRequest).thenApply(InventoryItemResponse::getInventoryItems);
+	}
+
+
+	/**
+	 * Brings a view up to date, fetching only what changed since its version.
+	 *
+	 * @param view the view to refresh
+	 */
+	public void refresh(InventoryView view) throws Exception {
+		await(refreshAsync(view));
+	}
+
+	public CompletableFuture<InventoryView> refreshAsync(InventoryView view) {
+		if (view == null)
+			throw new IllegalArgumentException("null view was provided.");
+
+		// Prepare a InventoryItemRequest asking for the changes since the version of the view.
+		InventoryItemRequest inventoryGetChangesRequest =
+				new InventoryItemRequest(view.getEkrutLocation(), view.getVersion());
+
+		return sendRequest(inventoryGetChangesRequest).thenApply(response -> {
+			view.apply(response);
+			return view;
+		});
 	}
-	
-	
+
+
 	public void updateItemThreshold(Item item, String ekrutLocation, int threshold) throws Exception {
+		await(updateItemThresholdAsync(item, ekrutLocation, threshold));
+	}
+
+	public CompletableFuture<Void> updateItemThresholdAsync(Item item, String ekrutLocation, int threshold) {
 		if (item == null)
 			throw new IllegalArgumentException("null Item was provided.");
 		if (threshold < 0)
 			throw new IllegalArgumentException("Threshold must be a non-negative number.");
-		
+
 		// Prepare a InventoryItemRequest to send to server.
-		InventoryItemRequest inventoryUpdateItemThresholdRequest = 
+		InventoryItemRequest inventoryUpdateItemThresholdRequest =
 				new InventoryItemRequest(item.getItemId(), ekrutLocation, threshold);
-		
-		// Sending InventoryItemRequest and receiving InventoryItemResponse.
-		InventoryItemResponse inventoryUpdateItemThresholdResponse = sendRequest(inventoryUpdateItemThresholdRequest);
-		
-		// ResultCode is not "OK" meaning we encountered an error.
-		String resultCode = inventoryUpdateItemThresholdResponse.getResultCode();
-		if (!resultCode.equals("OK"))
-			throw new Exception(resultCode); // TBD CHANGE TO SPESIFIC EXCEPTION
-	}
-	
-	@SuppressWarnings("unused")
-	private InventoryItemResponse sendRequest(InventoryItemRequest request) {
-		// TBD Implementation will be added later.
-		return null;
+
+		// Sending InventoryItemRequest and checking the InventoryItemResponse.
+		return sendRequest(inventoryUpdateItemThresholdRequest).thenApply(response -> null);
+	}
+
+	public void subscribe(String ekrutLocation, InventoryUpdateListener listener) throws Exception {
+		await(subscribeAsync(ekrutLocation, listener));
+	}
+
+	/**
+	 * Subscribes to the inventory changes of a location. The listener is called
+	 * with every change made after the returned future completes.
+	 *
+	 * @param ekrutLocation the machine whose changes are wanted
+	 * @param listener      receives the changes
+	 * @return              a future completed once the server registered the subscription
+	 */
+	public CompletableFuture<Void> subscribeAsync(String ekrutLocation, InventoryUpdateListener listener) {
+		if (listener == null)
+			throw new IllegalArgumentException("null listener was provided.");
+
+		updateListeners.computeIfAbsent(ekrutLocation, location -> new CopyOnWriteArrayList<>()).add(listener);
+		return sendRequest(new InventoryItemRequest(InventoryItemRequestType.SUBSCRIBE, ekrutLocation))
+				.thenApply(response -> null);
+	}
+
+	public void unsubscribe(String ekrutLocation) throws Exception {
+		await(unsubscribeAsync(ekrutLocation));
+	}
+
+	/**
+	 * Stops receiving the inventory changes of a location, for every listener
+	 * subscribed to it.
+	 *
+	 * @param ekrutLocation the machine whose changes are no longer wanted
+	 * @return              a future completed once the server dropped the subscription
+	 */
+	public CompletableFuture<Void> unsubscribeAsync(String ekrutLocation) {
+		updateListeners.remove(ekrutLocation);
+		return sendRequest(new InventoryItemRequest(InventoryItemRequestType.UNSUBSCRIBE, ekrutLocation))
+				.thenApply(response -> null);
+	}
+
+	/**
+	 * Stops listening to the messages pushed by the server and drops every
+	 * update listener. The subscriptions held by the server end with the
+	 * connection, or can be dropped first with {@link #unsubscribe(String)}.
+	 */
+	@Override
+	public void close() {
+		client.removePushListener(pushListener);
+		updateListeners.clear();
+	}
+
+	private void handlePush(Object msg) {
+		if (msg instanceof LowStockAlert) {
+			InventoryItem item = ((LowStockAlert) msg).getInventoryItem();
+			CopyOnWriteArrayList<InventoryUpdateListener> listeners = updateListeners.get(item.getEkrutLocation());
+			if (listeners != null)
+				for (InventoryUpdateListener listener : listeners)
+					listener.stockLow(item);
+			return;
+		}
+		if (!(msg instanceof InventoryUpdateNotification))
+			return;
+
+		InventoryUpdateNotification notification = (InventoryUpdateNotification) msg;
+		CopyOnWriteArrayList<InventoryUpdateListener> listeners = updateListeners.get(notification.getEkrutLocation());
+		if (listeners == null)
+			return;
+		for (InventoryUpdateListener listener : listeners)
+			listener.inventoryUpdated(notification.getEkrutLocation(), notification.getPreviousVersion(),
+					notification.getVersion(), notification.getUpdates());
+	}
+
+	/**
+	 * Sends a request and checks its response.
+	 *
+	 * @param request the request to send
+	 * @return        a future completed with the response if its result code is "OK"
+	 */
+	private CompletableFuture<InventoryItemResponse> sendRequest(InventoryItemRequest request) {
+		CompletableFuture<Object> response = timeoutMillis > 0 ? client.sendAsync(request, timeoutMillis)
+				: client.sendAsync(request);
+		return response.thenApply(msg -> {
+			if (!(msg instanceof InventoryItemResponse))
+				throw new CompletionException(new IOException("Unexpected response from the server: " + msg));
+
+			// ResultCode is not "OK" meaning we encountered an error.
+			InventoryItemResponse inventoryItemResponse = (InventoryItemResponse) msg;
+			if (!inventoryItemResponse.getResultCode().equals("OK"))
+				throw new CompletionException(new RequestFailedException(inventoryItemResponse.getResultCode()));
+			return inventoryItemResponse;
+		});
+	}
+
+	/**
+	 * Waits for a future and throws the exception it failed with.
+	 */
+	private static <T> T await(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			throw e;
+		}
 	}
 }
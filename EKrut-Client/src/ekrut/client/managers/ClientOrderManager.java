@@ -64,6 +64,15 @@ public class ClientOrderManager {
 		activeOrder = null;
 	}
 	
+	/**
+	 * Returns the active order.
+	 * 
+	 * @return the active order, or null if there is none
+	 */
+	public Order getActiveOrder() {
+		return activeOrder;
+	}
+	
 	/**
 	 * Returns whether or not there is an active order
 	 * 
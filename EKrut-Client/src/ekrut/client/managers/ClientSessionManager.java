@@ -1,5 +1,214 @@
-package ekrut.client.managers;
-
-public class ClientSessionManager {
-
-}
+package ekrut.client.managers;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import ekrut.client.EKrutClient;
+import ekrut.client.RequestFailedException;
+import ekrut.net.UserRequest;
+import ekrut.net.UserRequestType;
+import ekrut.net.UserResponse;
+
+/**
+ * This class manages the session of the user on the client side: logging in
+ * and out, and asking the server whether a user is logged in.
+ *
+ * Like {@link ClientInventoryManager}, every operation comes in a waiting form
+ * and an <i>Async</i> form, failing the same way. A refused login fails with a
+ * {@link RequestFailedException} whose result code is one of
+ * "WRONG_CREDENTIALS", "ALREADY_CONNECTED", "NOT_CONNECTED",
+ * "SESSION_EXPIRED", "INVALID_REQUEST" or "ERROR".
+ *
+ * Logging in hands the token of the session to the {@link EKrutClient}, which
+ * sends it with every request. After reconnecting, {@link #resumeAsync()} takes
+ * the session over on the new connection without sending the password again.
+ * If the session is gone by then, logging in again with the same password is
+ * cheap for the server, as the token of the lost session is sent along.
+ */
+public class ClientSessionManager {
+
+	private EKrutClient client;
+	private long timeoutMillis;
+	private volatile String username;
+	private volatile String token;
+
+	/**
+	 * @param client the connection to the server used to send the requests
+	 */
+	public ClientSessionManager(EKrutClient client) {
+		this(client, 0);
+	}
+
+	/**
+	 * @param client        the connection to the server used to send the requests
+	 * @param timeoutMillis how long to wait for each response, 0 to use the timeout of the client
+	 */
+	public ClientSessionManager(EKrutClient client, long timeoutMillis) {
+		this.client = client;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public void connect(String username, String password) throws Exception {
+		await(connectAsync(username, password));
+	}
+
+	public CompletableFuture<Void> connectAsync(String username, String password) {
+		if (username == null || password == null)
+			throw new IllegalArgumentException("null username or password was provided.");
+
+		// The token of a lost session, if any, spares the server a full check of the password
+		UserRequest request = new UserRequest(UserRequestType.CONNECT, username, password, token);
+		return sendRequest(request).thenApply(response -> {
+			this.username = username;
+			this.token = response.getToken();
+			client.setSessionToken(token);
+			return null;
+		});
+	}
+
+	public void resume() throws Exception {
+		await(resumeAsync());
+	}
+
+	/**
+	 * Resumes the session of the user logged in with
+	 * {@link #connectAsync(String, String)}, e.g. after the connection was lost
+	 * and opened again. Fails with "SESSION_EXPIRED" if the server no longer
+	 * knows the session, in which case the user has to log in again.
+	 */
+	public CompletableFuture<Void> resumeAsync() {
+		String token = this.token;
+		if (token == null)
+			throw new IllegalStateException("No user is logged in.");
+
+		return sendRequest(new UserRequest(token)).handle((response, e) -> {
+			if (e != null) {
+				if (e.getCause() instanceof RequestFailedException
+						&& "SESSION_EXPIRED".equals(((RequestFailedException) e.getCause()).getResultCode()))
+					forget(false);
+				throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+			}
+			client.setSessionToken(token);
+			return null;
+		});
+	}
+
+	public void disconnect() throws Exception {
+		await(disconnectAsync());
+	}
+
+	/**
+	 * Logs out the user logged in with {@link #connectAsync(String, String)}.
+	 */
+	public CompletableFuture<Void> disconnectAsync() {
+		String username = this.username;
+		if (username == null)
+			throw new IllegalStateException("No user is logged in.");
+
+		return sendRequest(new UserRequest(UserRequestType.DISCONNECT, username, null)).thenApply(response -> {
+			forget(true);
+			return null;
+		});
+	}
+
+	/**
+	 * @param loggedOut false to keep the token for the next login
+	 */
+	private void forget(boolean loggedOut) {
+		username = null;
+		if (loggedOut)
+			token = null;
+		client.setSessionToken(null);
+	}
+
+	public boolean isConnected(String username) throws Exception {
+		return await(isConnectedAsync(username));
+	}
+
+	/**
+	 * Asks whether a user is logged in, on any connection. Asking about the
+	 * user logged in here also keeps its session from expiring.
+	 *
+	 * @param username the user to look for
+	 * @return         a future completed with true if the user is logged in
+	 */
+	public CompletableFuture<Boolean> isConnectedAsync(String username) {
+		if (username == null)
+			throw new IllegalArgumentException("null username was provided.");
+
+		return send(new UserRequest(UserRequestType.IS_CONNECTED, username, null)).thenApply(userResponse -> {
+			if (userResponse.getResultCode() == UserResponse.OK)
+				return true;
+			if (userResponse.getResultCode() == UserResponse.NOT_CONNECTED)
+				return false;
+			throw new CompletionException(new RequestFailedException(resultName(userResponse.getResultCode())));
+		});
+	}
+
+	/**
+	 * @return the user logged in on this connection, or null
+	 */
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * Sends a request and checks its response.
+	 *
+	 * @param request the request to send
+	 * @return        a future completed with the response if its result code is OK
+	 */
+	private CompletableFuture<UserResponse> sendRequest(UserRequest request) {
+		return send(request).thenApply(userResponse -> {
+			if (userResponse.getResultCode() != UserResponse.OK)
+				throw new CompletionException(new RequestFailedException(resultName(userResponse.getResultCode())));
+			return userResponse;
+		});
+	}
+
+	/**
+	 * Sends a request without checking its result code.
+	 */
+	private CompletableFuture<UserResponse> send(UserRequest request) {
+		CompletableFuture<Object> response = timeoutMillis > 0 ? client.sendAsync(request, timeoutMillis)
+				: client.sendAsync(request);
+		return response.thenApply(msg -> {
+			if (!(msg instanceof UserResponse))
+				throw new CompletionException(new IOException("Unexpected response from the server: " + msg));
+			return (UserResponse) msg;
+		});
+	}
+
+	private static String resultName(int resultCode) {
+		switch (resultCode) {
+		case UserResponse.INVALID_REQUEST:
+			return "INVALID_REQUEST";
+		case UserResponse.WRONG_CREDENTIALS:
+			return "WRONG_CREDENTIALS";
+		case UserResponse.ALREADY_CONNECTED:
+			return "ALREADY_CONNECTED";
+		case UserResponse.NOT_CONNECTED:
+			return "NOT_CONNECTED";
+		case UserResponse.SESSION_EXPIRED:
+			return "SESSION_EXPIRED";
+		default:
+			return "ERROR";
+		}
+	}
+
+	/**
+	 * Waits for a future and throws the exception it failed with.
+	 */
+	private static <T> T await(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			throw e;
+		}
+	}
+}
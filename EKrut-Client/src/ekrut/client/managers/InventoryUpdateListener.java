@@ -0,0 +1,31 @@
+package ekrut.client.managers;
+
+import ekrut.entity.InventoryItem;
+import ekrut.entity.InventoryItemUpdate;
+
+/**
+ * Receives the inventory changes of a subscribed location, see
+ * {@link ClientInventoryManager#subscribeAsync(String, InventoryUpdateListener)}.
+ */
+public interface InventoryUpdateListener {
+
+	/**
+	 * Called on the thread reading from the server when the available quantity
+	 * of some items changed.
+	 *
+	 * @param ekrutLocation   the machine holding the items
+	 * @param previousVersion the version of the location's inventory before the changes
+	 * @param version         the version of the location's inventory after the changes
+	 * @param updates         the old and new available quantity of each changed item
+	 */
+	void inventoryUpdated(String ekrutLocation, long previousVersion, long version, InventoryItemUpdate[] updates);
+
+	/**
+	 * Called on the thread reading from the server when an item fell below its
+	 * threshold and a restock ticket was opened for it.
+	 *
+	 * @param item the item, with its available quantity when it fell below the threshold
+	 */
+	default void stockLow(InventoryItem item) {
+	}
+}
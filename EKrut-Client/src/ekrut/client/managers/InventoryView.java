@@ -0,0 +1,103 @@
+package ekrut.client.managers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import ekrut.entity.InventoryItem;
+import ekrut.entity.InventoryItemUpdate;
+import ekrut.net.InventoryItemResponse;
+
+/**
+ * A copy of the inventory of one location kept on the client. Refreshing it
+ * with {@link ClientInventoryManager#refresh(InventoryView)} fetches only the
+ * items that changed since the version of the copy, or the whole inventory the
+ * first time and whenever the copy is too old.
+ *
+ * A view can also be subscribed to its location, so it follows the changes
+ * pushed by the server between refreshes. A push that does not continue from
+ * the version of the view is ignored, and the next refresh catches up.
+ */
+public class InventoryView implements InventoryUpdateListener {
+
+	private final String ekrutLocation;
+	private final LinkedHashMap<Integer, InventoryItem> items = new LinkedHashMap<>();
+	private long version;
+
+	/**
+	 * @param ekrutLocation the machine whose inventory is copied
+	 */
+	public InventoryView(String ekrutLocation) {
+		this.ekrutLocation = ekrutLocation;
+	}
+
+	/**
+	 * Applies the answer to a FETCH_CHANGES request. Answers older than the
+	 * view, e.g. overtaken by a push, are ignored.
+	 */
+	synchronized void apply(InventoryItemResponse response) {
+		if (version != 0 && response.getVersion() <= version)
+			return;
+
+		if (response.isDelta()) {
+			applyUpdates(response.getInventoryItemUpdates());
+		} else {
+			items.clear();
+			for (InventoryItem item : response.getInventoryItems())
+				items.put(item.getItem().getItemId(), item);
+		}
+		version = response.getVersion();
+	}
+
+	@Override
+	public synchronized void inventoryUpdated(String ekrutLocation, long previousVersion, long version,
+			InventoryItemUpdate[] updates) {
+		if (this.version == 0 || previousVersion > this.version || version <= this.version)
+			return;
+
+		applyUpdates(updates);
+		this.version = version;
+	}
+
+	private void applyUpdates(InventoryItemUpdate[] updates) {
+		for (InventoryItemUpdate update : updates) {
+			InventoryItem item = items.get(update.getItemId());
+			if (item != null)
+				item.setItemQuantity(update.getItemNewQuantity());
+		}
+	}
+
+	public String getEkrutLocation() {
+		return ekrutLocation;
+	}
+
+	/**
+	 * @return the version of the copy, 0 if it was never refreshed
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return a copy of every inventory item of the location
+	 */
+	public synchronized InventoryItem[] getItems() {
+		ArrayList<InventoryItem> result = new ArrayList<>(items.size());
+		for (InventoryItem item : items.values())
+			result.add(copy(item));
+		return result.toArray(new InventoryItem[0]);
+	}
+
+	/**
+	 * @param itemId the ID of the item
+	 * @return       a copy of the inventory item, or null if the location does not hold it
+	 */
+	public synchronized InventoryItem getItem(int itemId) {
+		InventoryItem item = items.get(itemId);
+		return item == null ? null : copy(item);
+	}
+
+	private static InventoryItem copy(InventoryItem item) {
+		return new InventoryItem(item.getItem(), item.getItemQuantity(), item.getEkrutLocation(),
+				item.getItemThreshold());
+	}
+}
@@ -1,9 +1,29 @@
 package ekrut.entity;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
 
-public class CreditCard {
+public class CreditCard implements Serializable {
+	private static final long serialVersionUID = 3307318765470524519L;
 	private String cardNumber;
 	private LocalDateTime cardExpiration;
 	private String cvv;
+	
+	public CreditCard(String cardNumber, LocalDateTime cardExpiration, String cvv) {
+		this.cardNumber = cardNumber;
+		this.cardExpiration = cardExpiration;
+		this.cvv = cvv;
+	}
+	
+	public String getCardNumber() {
+		return cardNumber;
+	}
+	
+	public LocalDateTime getCardExpiration() {
+		return cardExpiration;
+	}
+	
+	public String getCvv() {
+		return cvv;
+	}
 }
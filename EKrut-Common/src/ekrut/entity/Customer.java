@@ -1,10 +1,47 @@
 package ekrut.entity;
 
-public class Customer {
+import java.io.Serializable;
+
+public class Customer implements Serializable {
+	private static final long serialVersionUID = -6513493402862717530L;
 	private int membershipNumber;
 	private int id;
 	private String firstName;
 	private String lastName;
 	private String phoneNumber;
 	private String email;
+	
+	public Customer(int membershipNumber, int id, String firstName, String lastName, String phoneNumber,
+			String email) {
+		this.membershipNumber = membershipNumber;
+		this.id = id;
+		this.firstName = firstName;
+		this.lastName = lastName;
+		this.phoneNumber = phoneNumber;
+		this.email = email;
+	}
+	
+	public int getMembershipNumber() {
+		return membershipNumber;
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public String getFirstName() {
+		return firstName;
+	}
+	
+	public String getLastName() {
+		return lastName;
+	}
+	
+	public String getPhoneNumber() {
+		return phoneNumber;
+	}
+	
+	public String getEmail() {
+		return email;
+	}
 }
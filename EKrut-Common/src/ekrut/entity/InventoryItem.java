@@ -1,6 +1,10 @@
 package ekrut.entity;
 
-public class InventoryItem {
+import java.io.Serializable;
+
+public class InventoryItem implements Serializable {
+	
+	private static final long serialVersionUID = -2193427780245395612L;
 	
 	private Item item;
 	private int itemQuantity;
@@ -1,11 +1,21 @@
 package ekrut.entity;
 
-public class InventoryItemUpdate {
+import java.io.Serializable;
+
+public class InventoryItemUpdate implements Serializable {
+	
+	private static final long serialVersionUID = -4203583402577961528L;
 	
 	private int itemId;
 	private int itemOldQuantity;
 	private int itemNewQuantity;
 	
+	public InventoryItemUpdate(int itemId, int itemOldQuantity, int itemNewQuantity) {
+		this.itemId = itemId;
+		this.itemOldQuantity = itemOldQuantity;
+		this.itemNewQuantity = itemNewQuantity;
+	}
+	
 	public int getItemId() {
 		return itemId;
 	}
@@ -1,12 +1,23 @@
 package ekrut.entity;
 
-public class Item {
+import java.io.Serializable;
+
+public class Item implements Serializable {
+	
+	private static final long serialVersionUID = 4606410218383364528L;
 	
 	private int itemId;
 	private String itemName;
 	private String itemDescription;
 	private int itemPrice;
 	
+	public Item(int itemId, String itemName, String itemDescription, int itemPrice) {
+		this.itemId = itemId;
+		this.itemName = itemName;
+		this.itemDescription = itemDescription;
+		this.itemPrice = itemPrice;
+	}
+	
 	public int getItemId() {
 		return itemId;
 	}
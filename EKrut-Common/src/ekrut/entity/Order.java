@@ -28,6 +28,22 @@ public class Order implements Serializable {
 		this.ekrutLocation = ekrutLocation;
 		this.items = new ArrayList<>();
 	}
+	
+	// Restores an order with all of its fields, e.g. when it is received or loaded.
+	public Order(Integer orderId, LocalDate date, OrderStatus status, OrderType type, LocalDate dueDate,
+			String clientAddress, String ekrutLocation, ArrayList<OrderItem> items) {
+		if (orderId != null) {
+			this.orderId = orderId;
+			this.isValidId = true;
+		}
+		this.date = date;
+		this.status = status;
+		this.type = type;
+		this.dueDate = dueDate;
+		this.clientAddress = clientAddress;
+		this.ekrutLocation = ekrutLocation;
+		this.items = items;
+	}
 
 	public Integer getOrderId() {
 		if (isValidId)
@@ -1,10 +1,35 @@
 package ekrut.entity;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
 
-public class Report {
+public class Report implements Serializable {
+	private static final long serialVersionUID = 8154027365928104125L;
 	private String reportType;
 	private LocalDateTime date;
 	private String area;
 	private String content; // TBD: content type may be changed
+	
+	public Report(String reportType, LocalDateTime date, String area, String content) {
+		this.reportType = reportType;
+		this.date = date;
+		this.area = area;
+		this.content = content;
+	}
+	
+	public String getReportType() {
+		return reportType;
+	}
+	
+	public LocalDateTime getDate() {
+		return date;
+	}
+	
+	public String getArea() {
+		return area;
+	}
+	
+	public String getContent() {
+		return content;
+	}
 }
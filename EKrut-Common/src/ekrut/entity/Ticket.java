@@ -7,4 +7,22 @@ public class Ticket implements Serializable{
 	private int ticketId;
 	private String status;
 	private String ekrutLocation;
+	
+	public Ticket(int ticketId, String status, String ekrutLocation) {
+		this.ticketId = ticketId;
+		this.status = status;
+		this.ekrutLocation = ekrutLocation;
+	}
+	
+	public int getTicketId() {
+		return ticketId;
+	}
+	
+	public String getStatus() {
+		return status;
+	}
+	
+	public String getEkrutLocation() {
+		return ekrutLocation;
+	}
 }
@@ -1,8 +1,34 @@
 package ekrut.entity;
 
-public class User {
+import java.io.Serializable;
+
+public class User implements Serializable {
+	private static final long serialVersionUID = 2049738156404183297L;
 	private String username;
 	private String password;
 	private UserType userType;
 	private String area;
+	
+	public User(String username, String password, UserType userType, String area) {
+		this.username = username;
+		this.password = password;
+		this.userType = userType;
+		this.area = area;
+	}
+	
+	public String getUsername() {
+		return username;
+	}
+	
+	public String getPassword() {
+		return password;
+	}
+	
+	public UserType getUserType() {
+		return userType;
+	}
+	
+	public String getArea() {
+		return area;
+	}
 }
@@ -0,0 +1,506 @@
+package ekrut.net;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import ekrut.entity.CreditCard;
+import ekrut.entity.Customer;
+import ekrut.entity.InventoryItem;
+import ekrut.entity.InventoryItemUpdate;
+import ekrut.entity.Item;
+import ekrut.entity.Order;
+import ekrut.entity.OrderItem;
+import ekrut.entity.OrderStatus;
+import ekrut.entity.OrderType;
+import ekrut.entity.Report;
+import ekrut.entity.Ticket;
+import ekrut.entity.User;
+import ekrut.entity.UserType;
+
+/**
+ * A compact binary encoding of the messages in ekrut.net and the entities they
+ * carry, used instead of Java serialization once both sides agreed on it (see
+ * {@link CodecNegotiation}).
+ *
+ * An encoded message starts with the codec version, followed by the message
+ * itself. Every object is written as a type tag followed by its fields in a
+ * fixed order, without any field names or class descriptors. See
+ * {@link WireWriter} for the encoding of the fields.
+ *
+ * @see WireFormat
+ */
+public class BinaryCodec {
+
+	/**
+	 * The version of the encoding, bumped whenever a message changes.
+	 */
+	public static final int VERSION = 6;
+
+	// Type tags, 0 stands for null
+	private static final int NULL = 0;
+	private static final int ITEM = 1;
+	private static final int INVENTORY_ITEM = 2;
+	private static final int INVENTORY_ITEM_UPDATE = 3;
+	private static final int ORDER_ITEM = 4;
+	private static final int ORDER = 5;
+	private static final int REPORT = 6;
+	private static final int TICKET = 7;
+	private static final int USER = 8;
+	private static final int CUSTOMER = 9;
+	private static final int CREDIT_CARD = 10;
+	private static final int INVENTORY_ITEM_REQUEST = 20;
+	private static final int INVENTORY_ITEM_RESPONSE = 21;
+	private static final int ORDER_REQUEST = 22;
+	private static final int ORDER_RESPONSE = 23;
+	private static final int REPORT_REQUEST = 24;
+	private static final int REPORT_RESPONSE = 25;
+	private static final int TICKET_REQUEST = 26;
+	private static final int TICKET_RESPONSE = 27;
+	private static final int USER_REQUEST = 28;
+	private static final int USER_RESPONSE = 29;
+	private static final int CORRELATED_MESSAGE = 30;
+	private static final int INVENTORY_UPDATE_NOTIFICATION = 31;
+	private static final int LOW_STOCK_ALERT = 32;
+
+	/**
+	 * The deepest nesting of objects accepted when decoding. Real messages nest
+	 * a handful of objects; the limit keeps a crafted message from overflowing
+	 * the stack of the thread decoding it.
+	 */
+	private static final int MAX_DEPTH = 32;
+
+	private static final HashMap<Class<?>, Integer> TAGS = new HashMap<>();
+
+	static {
+		TAGS.put(Item.class, ITEM);
+		TAGS.put(InventoryItem.class, INVENTORY_ITEM);
+		TAGS.put(InventoryItemUpdate.class, INVENTORY_ITEM_UPDATE);
+		TAGS.put(OrderItem.class, ORDER_ITEM);
+		TAGS.put(Order.class, ORDER);
+		TAGS.put(Report.class, REPORT);
+		TAGS.put(Ticket.class, TICKET);
+		TAGS.put(User.class, USER);
+		TAGS.put(Customer.class, CUSTOMER);
+		TAGS.put(CreditCard.class, CREDIT_CARD);
+		TAGS.put(InventoryItemRequest.class, INVENTORY_ITEM_REQUEST);
+		TAGS.put(InventoryItemResponse.class, INVENTORY_ITEM_RESPONSE);
+		TAGS.put(OrderRequest.class, ORDER_REQUEST);
+		TAGS.put(OrderResponse.class, ORDER_RESPONSE);
+		TAGS.put(ReportRequest.class, REPORT_REQUEST);
+		TAGS.put(ReportResponse.class, REPORT_RESPONSE);
+		TAGS.put(TicketRequest.class, TICKET_REQUEST);
+		TAGS.put(TicketResponse.class, TICKET_RESPONSE);
+		TAGS.put(UserRequest.class, USER_REQUEST);
+		TAGS.put(UserResponse.class, USER_RESPONSE);
+		TAGS.put(CorrelatedMessage.class, CORRELATED_MESSAGE);
+		TAGS.put(InventoryUpdateNotification.class, INVENTORY_UPDATE_NOTIFICATION);
+		TAGS.put(LowStockAlert.class, LOW_STOCK_ALERT);
+	}
+
+	/**
+	 * Returns whether a message can be encoded by this codec.
+	 *
+	 * @param msg the message
+	 * @return    true if the class of the message is supported
+	 */
+	public static boolean canEncode(Object msg) {
+		if (msg instanceof CorrelatedMessage) {
+			Object message = ((CorrelatedMessage) msg).getMessage();
+			return message == null || canEncode(message);
+		}
+		return msg != null && TAGS.containsKey(msg.getClass());
+	}
+
+	/**
+	 * Encodes a message.
+	 *
+	 * @param msg the message to encode
+	 * @return    the encoded message
+	 * @throws IllegalArgumentException if the message or one of its fields is of an unsupported class
+	 */
+	public static byte[] encode(Object msg) {
+		WireWriter out = new WireWriter();
+		out.writeVarInt(VERSION);
+		writeObject(out, msg);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a message encoded by {@link #encode(Object)}.
+	 *
+	 * @param bytes the encoded message
+	 * @return      the message
+	 * @throws IllegalArgumentException if the bytes are not a valid encoded message
+	 */
+	public static Object decode(byte[] bytes) {
+		WireReader in = new WireReader(bytes);
+		int version = in.readVarInt();
+		if (version != VERSION)
+			throw new IllegalArgumentException("Unsupported codec version " + version);
+
+		Object msg = readObject(in);
+		if (in.hasRemaining())
+			throw new IllegalArgumentException("Trailing bytes after message");
+		return msg;
+	}
+
+	private static void writeObject(WireWriter out, Object o) {
+		if (o == null) {
+			out.writeVarInt(NULL);
+			return;
+		}
+
+		Integer tag = TAGS.get(o.getClass());
+		if (tag == null)
+			throw new IllegalArgumentException("Cannot encode " + o.getClass().getName());
+		out.writeVarInt(tag);
+
+		switch (tag) {
+		case ITEM:
+			Item item = (Item) o;
+			out.writeInt(item.getItemId());
+			out.writeString(item.getItemName());
+			out.writeString(item.getItemDescription());
+			out.writeInt(item.getItemPrice());
+			break;
+		case INVENTORY_ITEM:
+			InventoryItem inventoryItem = (InventoryItem) o;
+			writeObject(out, inventoryItem.getItem());
+			out.writeInt(inventoryItem.getItemQuantity());
+			out.writeString(inventoryItem.getEkrutLocation());
+			out.writeInt(inventoryItem.getItemThreshold());
+			break;
+		case INVENTORY_ITEM_UPDATE:
+			InventoryItemUpdate update = (InventoryItemUpdate) o;
+			out.writeInt(update.getItemId());
+			out.writeInt(update.getItemOldQuantity());
+			out.writeInt(update.getItemNewQuantity());
+			break;
+		case ORDER_ITEM:
+			OrderItem orderItem = (OrderItem) o;
+			writeObject(out, orderItem.getItem());
+			out.writeInt(orderItem.getItemQuantity());
+			break;
+		case ORDER:
+			Order order = (Order) o;
+			Integer orderId = order.getOrderId();
+			out.writeBoolean(orderId != null);
+			if (orderId != null)
+				out.writeInt(orderId);
+			writeDate(out, order.getDate());
+			out.writeEnum(order.getStatus());
+			out.writeEnum(order.getType());
+			writeDate(out, order.getDueDate());
+			out.writeString(order.getClientAddress());
+			out.writeString(order.getEkrutLocation());
+			writeList(out, order.getItems());
+			break;
+		case REPORT:
+			Report report = (Report) o;
+			out.writeString(report.getReportType());
+			writeDateTime(out, report.getDate());
+			out.writeString(report.getArea());
+			out.writeString(report.getContent());
+			break;
+		case TICKET:
+			Ticket ticket = (Ticket) o;
+			out.writeInt(ticket.getTicketId());
+			out.writeString(ticket.getStatus());
+			out.writeString(ticket.getEkrutLocation());
+			break;
+		case USER:
+			User user = (User) o;
+			out.writeString(user.getUsername());
+			out.writeString(user.getPassword());
+			out.writeEnum(user.getUserType());
+			out.writeString(user.getArea());
+			break;
+		case CUSTOMER:
+			Customer customer = (Customer) o;
+			out.writeInt(customer.getMembershipNumber());
+			out.writeInt(customer.getId());
+			out.writeString(customer.getFirstName());
+			out.writeString(customer.getLastName());
+			out.writeString(customer.getPhoneNumber());
+			out.writeString(customer.getEmail());
+			break;
+		case CREDIT_CARD:
+			CreditCard card = (CreditCard) o;
+			out.writeString(card.getCardNumber());
+			writeDateTime(out, card.getCardExpiration());
+			out.writeString(card.getCvv());
+			break;
+		case INVENTORY_ITEM_REQUEST:
+			InventoryItemRequest inventoryRequest = (InventoryItemRequest) o;
+			out.writeEnum(inventoryRequest.getAction());
+			out.writeInt(inventoryRequest.getItemId());
+			out.writeInt(inventoryRequest.getQuantity());
+			out.writeString(inventoryRequest.getEkrutLocation());
+			out.writeInt(inventoryRequest.getThreshold());
+			out.writeIntArray(inventoryRequest.getItemIds());
+			out.writeIntArray(inventoryRequest.getQuantities());
+			out.writeVarLong(inventoryRequest.getSinceVersion());
+			break;
+		case INVENTORY_ITEM_RESPONSE:
+			InventoryItemResponse inventoryResponse = (InventoryItemResponse) o;
+			out.writeString(inventoryResponse.getResultCode());
+			writeArray(out, inventoryResponse.getInventoryItems());
+			out.writeVarLong(inventoryResponse.getVersion());
+			writeUpdates(out, inventoryResponse.getInventoryItemUpdates());
+			break;
+		case ORDER_REQUEST:
+			OrderRequest orderRequest = (OrderRequest) o;
+			out.writeEnum(orderRequest.getAction());
+			out.writeInt(orderRequest.getOrderId());
+			writeObject(out, orderRequest.getOrder());
+			break;
+		case ORDER_RESPONSE:
+			OrderResponse orderResponse = (OrderResponse) o;
+			out.writeInt(orderResponse.getResultCode());
+			out.writeVarInt(orderResponse.getOrderId());
+			writeList(out, orderResponse.getReportsList());
+			break;
+		case REPORT_REQUEST:
+			ReportRequest reportRequest = (ReportRequest) o;
+			out.writeString(reportRequest.getArea());
+			out.writeString(reportRequest.getReportType());
+			writeDateTime(out, reportRequest.getDate());
+			break;
+		case REPORT_RESPONSE:
+			ReportResponse reportResponse = (ReportResponse) o;
+			out.writeInt(reportResponse.getResultCode());
+			writeObject(out, reportResponse.getReport());
+			writeList(out, reportResponse.getReports());
+			break;
+		case TICKET_REQUEST:
+			TicketRequest ticketRequest = (TicketRequest) o;
+			out.writeEnum(ticketRequest.getAction());
+			out.writeInt(ticketRequest.getTicketId());
+			out.writeString(ticketRequest.getStatus());
+			out.writeString(ticketRequest.getEkrutLocation());
+			break;
+		case TICKET_RESPONSE:
+			out.writeInt(((TicketResponse) o).getResultCode());
+			break;
+		case USER_REQUEST:
+			UserRequest userRequest = (UserRequest) o;
+			out.writeEnum(userRequest.getAction());
+			out.writeString(userRequest.getUsername());
+			out.writeString(userRequest.getPassword());
+			out.writeString(userRequest.getToken());
+			break;
+		case USER_RESPONSE:
+			UserResponse userResponse = (UserResponse) o;
+			out.writeInt(userResponse.getResultCode());
+			out.writeString(userResponse.getToken());
+			break;
+		case CORRELATED_MESSAGE:
+			CorrelatedMessage correlated = (CorrelatedMessage) o;
+			out.writeVarInt(correlated.getCorrelationId());
+			writeObject(out, correlated.getMessage());
+			out.writeString(correlated.getSessionToken());
+			break;
+		case INVENTORY_UPDATE_NOTIFICATION:
+			InventoryUpdateNotification notification = (InventoryUpdateNotification) o;
+			out.writeString(notification.getEkrutLocation());
+			out.writeVarLong(notification.getPreviousVersion());
+			out.writeVarLong(notification.getVersion());
+			writeUpdates(out, notification.getUpdates());
+			break;
+		case LOW_STOCK_ALERT:
+			writeObject(out, ((LowStockAlert) o).getInventoryItem());
+			break;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T readObject(WireReader in, Class<T> type) {
+		Object o = readObject(in);
+		if (o != null && !type.isInstance(o))
+			throw new IllegalArgumentException("Expected " + type.getSimpleName() + " but got "
+					+ o.getClass().getSimpleName());
+		return (T) o;
+	}
+
+	private static Object readObject(WireReader in) {
+		in.enterObject(MAX_DEPTH);
+		Object o = readFields(in, in.readVarInt());
+		in.leaveObject();
+		return o;
+	}
+
+	private static Object readFields(WireReader in, int tag) {
+		switch (tag) {
+		case NULL:
+			return null;
+		case ITEM:
+			return new Item(in.readInt(), in.readString(), in.readString(), in.readInt());
+		case INVENTORY_ITEM:
+			return new InventoryItem(readObject(in, Item.class), in.readInt(), in.readString(), in.readInt());
+		case INVENTORY_ITEM_UPDATE:
+			return new InventoryItemUpdate(in.readInt(), in.readInt(), in.readInt());
+		case ORDER_ITEM:
+			return new OrderItem(readObject(in, Item.class), in.readInt());
+		case ORDER:
+			Integer orderId = in.readBoolean() ? in.readInt() : null;
+			return new Order(orderId, readDate(in), in.readEnum(OrderStatus.values()),
+					in.readEnum(OrderType.values()), readDate(in), in.readString(), in.readString(),
+					readList(in, OrderItem.class));
+		case REPORT:
+			return new Report(in.readString(), readDateTime(in), in.readString(), in.readString());
+		case TICKET:
+			return new Ticket(in.readInt(), in.readString(), in.readString());
+		case USER:
+			return new User(in.readString(), in.readString(), in.readEnum(UserType.values()), in.readString());
+		case CUSTOMER:
+			return new Customer(in.readInt(), in.readInt(), in.readString(), in.readString(), in.readString(),
+					in.readString());
+		case CREDIT_CARD:
+			return new CreditCard(in.readString(), readDateTime(in), in.readString());
+		case INVENTORY_ITEM_REQUEST:
+			return new InventoryItemRequest(in.readEnum(InventoryItemRequestType.values()), in.readInt(),
+					in.readInt(), in.readString(), in.readInt(), in.readIntArray(), in.readIntArray(),
+					in.readVarLong());
+		case INVENTORY_ITEM_RESPONSE:
+			String resultCode = in.readString();
+			ArrayList<InventoryItem> items = readList(in, InventoryItem.class);
+			long version = in.readVarLong();
+			InventoryItemUpdate[] updates = readUpdates(in);
+			if (updates != null)
+				return new InventoryItemResponse(resultCode, version, updates);
+			return new InventoryItemResponse(resultCode, version,
+					items == null ? null : items.toArray(new InventoryItem[0]));
+		case ORDER_REQUEST:
+			return new OrderRequest(in.readEnum(OrderRequestType.values()), in.readInt(),
+					readObject(in, Order.class));
+		case ORDER_RESPONSE:
+			int orderResult = in.readInt();
+			int createdOrderId = in.readVarInt();
+			OrderResponse orderResponse = new OrderResponse(orderResult, readList(in, Report.class));
+			orderResponse.setOrderId(createdOrderId);
+			return orderResponse;
+		case REPORT_REQUEST:
+			ReportRequest reportRequest = new ReportRequest();
+			reportRequest.setArea(in.readString());
+			reportRequest.setReportType(in.readString());
+			reportRequest.setDate(readDateTime(in));
+			return reportRequest;
+		case REPORT_RESPONSE:
+			ReportResponse reportResponse = new ReportResponse();
+			reportResponse.setResultCode(in.readInt());
+			reportResponse.setReport(readObject(in, Report.class));
+			reportResponse.setReports(readList(in, Report.class));
+			return reportResponse;
+		case TICKET_REQUEST:
+			return new TicketRequest(in.readEnum(TicketRequestType.values()), in.readInt(), in.readString(),
+					in.readString());
+		case TICKET_RESPONSE:
+			return new TicketResponse(in.readInt());
+		case USER_REQUEST:
+			return new UserRequest(in.readEnum(UserRequestType.values()), in.readString(), in.readString(),
+					in.readString());
+		case USER_RESPONSE:
+			return new UserResponse(in.readInt(), in.readString());
+		case CORRELATED_MESSAGE:
+			return new CorrelatedMessage(in.readVarInt(), readObject(in), in.readString());
+		case INVENTORY_UPDATE_NOTIFICATION:
+			return new InventoryUpdateNotification(in.readString(), in.readVarLong(), in.readVarLong(),
+					readUpdates(in));
+		case LOW_STOCK_ALERT:
+			return new LowStockAlert(readObject(in, InventoryItem.class));
+		default:
+			throw new IllegalArgumentException("Unknown type tag " + tag);
+		}
+	}
+
+	private static void writeList(WireWriter out, ArrayList<?> list) {
+		if (list == null) {
+			out.writeVarInt(0);
+			return;
+		}
+
+		out.writeVarInt(list.size() + 1);
+		for (Object o : list)
+			writeObject(out, o);
+	}
+
+	private static void writeArray(WireWriter out, Object[] array) {
+		if (array == null) {
+			out.writeVarInt(0);
+			return;
+		}
+
+		out.writeVarInt(array.length + 1);
+		for (Object o : array)
+			writeObject(out, o);
+	}
+
+	private static <T> ArrayList<T> readList(WireReader in, Class<T> type) {
+		int length = in.readLength();
+		if (length < 0)
+			return null;
+
+		ArrayList<T> list = new ArrayList<>(length);
+		for (int i = 0; i < length; i++)
+			list.add(readObject(in, type));
+		return list;
+	}
+
+	/**
+	 * Writes updates without a type tag per update, as a notification or a
+	 * delta may carry many of them.
+	 */
+	private static void writeUpdates(WireWriter out, InventoryItemUpdate[] updates) {
+		if (updates == null) {
+			out.writeVarInt(0);
+			return;
+		}
+
+		out.writeVarInt(updates.length + 1);
+		for (InventoryItemUpdate update : updates) {
+			out.writeInt(update.getItemId());
+			out.writeInt(update.getItemOldQuantity());
+			out.writeInt(update.getItemNewQuantity());
+		}
+	}
+
+	private static InventoryItemUpdate[] readUpdates(WireReader in) {
+		int length = in.readLength();
+		if (length < 0)
+			return null;
+
+		InventoryItemUpdate[] updates = new InventoryItemUpdate[length];
+		for (int i = 0; i < length; i++)
+			updates[i] = new InventoryItemUpdate(in.readInt(), in.readInt(), in.readInt());
+		return updates;
+	}
+
+	private static void writeDate(WireWriter out, LocalDate date) {
+		out.writeBoolean(date != null);
+		if (date != null)
+			out.writeLong(date.toEpochDay());
+	}
+
+	private static LocalDate readDate(WireReader in) {
+		return in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+	}
+
+	private static void writeDateTime(WireWriter out, LocalDateTime dateTime) {
+		out.writeBoolean(dateTime != null);
+		if (dateTime != null) {
+			out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+			out.writeVarInt(dateTime.getNano());
+		}
+	}
+
+	private static LocalDateTime readDateTime(WireReader in) {
+		if (!in.readBoolean())
+			return null;
+		Instant instant = Instant.ofEpochSecond(in.readLong(), in.readVarInt());
+		return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+	}
+}
@@ -0,0 +1,35 @@
+package ekrut.net;
+
+import java.io.Serializable;
+
+/**
+ * The first message a client sends after connecting, offering the binary codec
+ * version it supports. The server answers with the same message, holding the
+ * version it accepted or 0 if both sides should stay with Java serialization.
+ * This message itself is always sent using Java serialization.
+ */
+public class CodecNegotiation implements Serializable {
+	private static final long serialVersionUID = 4410391528766254316L;
+	private int version;
+
+	public CodecNegotiation(int version) {
+		this.version = version;
+	}
+
+	/**
+	 * Builds the answer of the server to this offer.
+	 * 
+	 * @return the answer, accepting the offered version if this side supports it
+	 */
+	public CodecNegotiation accept() {
+		return new CodecNegotiation(version == BinaryCodec.VERSION ? version : 0);
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public WireFormat getWireFormat() {
+		return WireFormat.forVersion(version);
+	}
+}
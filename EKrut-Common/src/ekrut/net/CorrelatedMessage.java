@@ -0,0 +1,48 @@
+package ekrut.net;
+
+import java.io.Serializable;
+
+/**
+ * Wraps a request or response with the ID that ties them together. A client
+ * can send many requests on one connection without waiting; the server answers
+ * each with a response carrying the same correlation ID, in whatever order the
+ * responses are ready.
+ * 
+ * A response holding a null message means the server does not handle that
+ * kind of request.
+ *
+ * A request may also carry the token of the session it is sent in, see
+ * {@link UserResponse#getToken()}, so the server finds the user with a single
+ * lookup instead of checking credentials again.
+ */
+public class CorrelatedMessage implements Serializable {
+	private static final long serialVersionUID = -2386213302964725047L;
+	private int correlationId;
+	private Object message;
+	private String sessionToken;
+
+	public CorrelatedMessage(int correlationId, Object message) {
+		this.correlationId = correlationId;
+		this.message = message;
+	}
+
+	public CorrelatedMessage(int correlationId, Object message, String sessionToken) {
+		this(correlationId, message);
+		this.sessionToken = sessionToken;
+	}
+
+	public int getCorrelationId() {
+		return correlationId;
+	}
+
+	public Object getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return the token of the session the request is sent in, or null
+	 */
+	public String getSessionToken() {
+		return sessionToken;
+	}
+}
@@ -10,6 +10,9 @@ public class InventoryItemRequest implements Serializable{
 	private int quantity;
 	private String ekrutLocation;
 	private int threshold;
+	private int[] itemIds;
+	private int[] quantities;
+	private long sinceVersion;
 	
 	// Update inventory item request.
 	public InventoryItemRequest(int itemId, int quantity, String ekrutLocation) {
@@ -33,6 +36,44 @@ public class InventoryItemRequest implements Serializable{
 		this.threshold = threshold;
 	}
 
+	// Update quantities of many items in one location (e.g. restock) request.
+	public InventoryItemRequest(String ekrutLocation, int[] itemIds, int[] quantities) {
+		if (itemIds.length != quantities.length)
+			throw new IllegalArgumentException("Every item must have exactly one quantity.");
+		this.action = InventoryItemRequestType.UPDATE_ITEMS_QUANTITY;
+		this.ekrutLocation = ekrutLocation;
+		this.itemIds = itemIds;
+		this.quantities = quantities;
+	}
+
+	// Subscribe to (or unsubscribe from) the inventory changes of a location request.
+	public InventoryItemRequest(InventoryItemRequestType action, String ekrutLocation) {
+		if (action != InventoryItemRequestType.SUBSCRIBE && action != InventoryItemRequestType.UNSUBSCRIBE)
+			throw new IllegalArgumentException("Only SUBSCRIBE and UNSUBSCRIBE take just a location.");
+		this.action = action;
+		this.ekrutLocation = ekrutLocation;
+	}
+
+	// Get the changes made since a version request, 0 to get every item.
+	public InventoryItemRequest(String ekrutLocation, long sinceVersion) {
+		this.action = InventoryItemRequestType.FETCH_CHANGES;
+		this.ekrutLocation = ekrutLocation;
+		this.sinceVersion = sinceVersion;
+	}
+
+	// Restores a request with all of its fields, used by BinaryCodec.
+	InventoryItemRequest(InventoryItemRequestType action, int itemId, int quantity, String ekrutLocation,
+			int threshold, int[] itemIds, int[] quantities, long sinceVersion) {
+		this.action = action;
+		this.itemId = itemId;
+		this.quantity = quantity;
+		this.ekrutLocation = ekrutLocation;
+		this.threshold = threshold;
+		this.itemIds = itemIds;
+		this.quantities = quantities;
+		this.sinceVersion = sinceVersion;
+	}
+
 	public InventoryItemRequestType getAction() {
 		return action;
 	}
@@ -52,4 +93,16 @@ public class InventoryItemRequest implements Serializable{
 	public int getThreshold() {
 		return threshold;
 	}
+	
+	public int[] getItemIds() {
+		return itemIds;
+	}
+	
+	public int[] getQuantities() {
+		return quantities;
+	}
+	
+	public long getSinceVersion() {
+		return sinceVersion;
+	}
 }
@@ -3,5 +3,9 @@ package ekrut.net;
 public enum InventoryItemRequestType {
 	UPDATE_ITEM_QUANTITY,
 	FETCH_ITEM,
-	UPDATE_ITEM_THRESHOLD
+	UPDATE_ITEM_THRESHOLD,
+	UPDATE_ITEMS_QUANTITY,
+	SUBSCRIBE,
+	UNSUBSCRIBE,
+	FETCH_CHANGES
 }
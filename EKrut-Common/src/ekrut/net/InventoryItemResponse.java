@@ -3,11 +3,37 @@ package ekrut.net;
 import java.io.Serializable;
 
 import ekrut.entity.InventoryItem;
+import ekrut.entity.InventoryItemUpdate;
 
 public class InventoryItemResponse implements Serializable{
 	private static final long serialVersionUID = -1415270822049012022L;
 	private String resultCode;
 	private InventoryItem[] inventoryItems;
+	private long version;
+	private InventoryItemUpdate[] inventoryItemUpdates;
+	
+	public InventoryItemResponse(String resultCode) {
+		this.resultCode = resultCode;
+	}
+	
+	public InventoryItemResponse(String resultCode, InventoryItem[] inventoryItems) {
+		this.resultCode = resultCode;
+		this.inventoryItems = inventoryItems;
+	}
+	
+	// Answer to FETCH_CHANGES holding every item of the location.
+	public InventoryItemResponse(String resultCode, long version, InventoryItem[] inventoryItems) {
+		this.resultCode = resultCode;
+		this.version = version;
+		this.inventoryItems = inventoryItems;
+	}
+	
+	// Answer to FETCH_CHANGES holding only the items that changed.
+	public InventoryItemResponse(String resultCode, long version, InventoryItemUpdate[] inventoryItemUpdates) {
+		this.resultCode = resultCode;
+		this.version = version;
+		this.inventoryItemUpdates = inventoryItemUpdates;
+	}
 	
 	// TBD Anything BUT resultCode = "OK" means some sort of an error!
 	public String getResultCode() {
@@ -18,5 +44,19 @@ public class InventoryItemResponse implements Serializable{
 		return inventoryItems;
 	}
 	
+	// The version of the location's inventory, 0 if the request was not FETCH_CHANGES.
+	public long getVersion() {
+		return version;
+	}
+	
+	// The items that changed, null unless only the changes were sent.
+	public InventoryItemUpdate[] getInventoryItemUpdates() {
+		return inventoryItemUpdates;
+	}
+	
+	public boolean isDelta() {
+		return inventoryItemUpdates != null;
+	}
+	
 	
 }
@@ -0,0 +1,49 @@
+package ekrut.net;
+
+import java.io.Serializable;
+
+import ekrut.entity.InventoryItemUpdate;
+
+/**
+ * Pushed by the server to the clients subscribed to a location (see
+ * {@link InventoryItemRequestType#SUBSCRIBE}) when the available quantity of
+ * some of its items changed. Changes made in quick succession may be merged
+ * into a single update per item.
+ *
+ * The notification takes the location's inventory from the previous version
+ * to the version. A client holding a copy of the inventory (see
+ * {@link InventoryItemRequestType#FETCH_CHANGES}) can apply it only if its copy
+ * is at least at the previous version, and can ignore it if its copy is already
+ * at the version.
+ */
+public class InventoryUpdateNotification implements Serializable {
+	private static final long serialVersionUID = 3326178014947260393L;
+	private String ekrutLocation;
+	private long previousVersion;
+	private long version;
+	private InventoryItemUpdate[] updates;
+
+	public InventoryUpdateNotification(String ekrutLocation, long previousVersion, long version,
+			InventoryItemUpdate[] updates) {
+		this.ekrutLocation = ekrutLocation;
+		this.previousVersion = previousVersion;
+		this.version = version;
+		this.updates = updates;
+	}
+
+	public String getEkrutLocation() {
+		return ekrutLocation;
+	}
+
+	public long getPreviousVersion() {
+		return previousVersion;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public InventoryItemUpdate[] getUpdates() {
+		return updates;
+	}
+}
@@ -0,0 +1,26 @@
+package ekrut.net;
+
+import java.io.Serializable;
+
+import ekrut.entity.InventoryItem;
+
+/**
+ * Pushed by the server to the clients subscribed to a location (see
+ * {@link InventoryItemRequestType#SUBSCRIBE}) when the available quantity of
+ * one of its items fell below its threshold. A restock ticket is opened for the
+ * item at the same time. An item is reported again only after it was
+ * restocked.
+ */
+public class LowStockAlert implements Serializable {
+	private static final long serialVersionUID = -6871548932670118842L;
+	private InventoryItem inventoryItem;
+
+	public LowStockAlert(InventoryItem inventoryItem) {
+		this.inventoryItem = inventoryItem;
+	}
+
+	// The item, its location and threshold, with the available quantity when it fell below the threshold.
+	public InventoryItem getInventoryItem() {
+		return inventoryItem;
+	}
+}
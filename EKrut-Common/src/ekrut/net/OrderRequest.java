@@ -8,4 +8,22 @@ public class OrderRequest implements Serializable{
 	private OrderRequestType action;
 	private int orderId;
 	private Order order;
+	
+	public OrderRequest(OrderRequestType action, int orderId, Order order) {
+		this.action = action;
+		this.orderId = orderId;
+		this.order = order;
+	}
+	
+	public OrderRequestType getAction() {
+		return action;
+	}
+	
+	public int getOrderId() {
+		return orderId;
+	}
+	
+	public Order getOrder() {
+		return order;
+	}
 }
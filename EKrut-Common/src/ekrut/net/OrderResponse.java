@@ -5,6 +5,45 @@ import java.util.ArrayList;
 
 public class OrderResponse implements Serializable{
 	private static final long serialVersionUID = 738294735018991515L;
+	
+	// Result codes
+	public static final int OK = 0;
+	public static final int INVALID_REQUEST = 1;
+	public static final int ERROR = 2;
+	public static final int OUT_OF_STOCK = 3;
+	
 	private int resultCode;
+	// The ID the server gave to a created order.
+	private int orderId;
 	private ArrayList<Report> reportsList = new ArrayList<Report>();
+	
+	public OrderResponse(int resultCode) {
+		this.resultCode = resultCode;
+	}
+	
+	public OrderResponse(int resultCode, int orderId) {
+		this.resultCode = resultCode;
+		this.orderId = orderId;
+	}
+	
+	public OrderResponse(int resultCode, ArrayList<Report> reportsList) {
+		this.resultCode = resultCode;
+		this.reportsList = reportsList;
+	}
+	
+	public int getResultCode() {
+		return resultCode;
+	}
+	
+	public int getOrderId() {
+		return orderId;
+	}
+	
+	public void setOrderId(int orderId) {
+		this.orderId = orderId;
+	}
+	
+	public ArrayList<Report> getReportsList() {
+		return reportsList;
+	}
 }
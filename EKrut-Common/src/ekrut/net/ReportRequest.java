@@ -5,6 +5,10 @@ import java.time.LocalDateTime;
 
 public class ReportRequest implements Serializable{
 	private static final long serialVersionUID = -7271037236386122944L;
+	
+	// Used as the area and/or the report type to request every area and/or type at once (CEO view).
+	public static final String ALL = "ALL";
+	
 	private String area;
 	private String reportType;
 	private LocalDateTime date;
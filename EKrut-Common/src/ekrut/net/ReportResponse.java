@@ -1,12 +1,23 @@
 package ekrut.net;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+
 import ekrut.entity.Report;
 
 public class ReportResponse implements Serializable{
 	private static final long serialVersionUID = -3756403993356581023L;
+	
+	// Result codes
+	public static final int OK = 0;
+	public static final int INVALID_REQUEST = 1;
+	public static final int ERROR = 2;
+	public static final int UNAUTHORIZED = 3;
+	
 	private int resultCode;
 	private Report report;
+	// Set instead of report when the request asked for ReportRequest.ALL areas or types.
+	private ArrayList<Report> reports;
 	
 	public int getResultCode() {
 		return resultCode;
@@ -20,5 +31,11 @@ public class ReportResponse implements Serializable{
 	public void setReport(Report report) {
 		this.report = report;
 	}
+	public ArrayList<Report> getReports() {
+		return reports;
+	}
+	public void setReports(ArrayList<Report> reports) {
+		this.reports = reports;
+	}
 	
 }
@@ -8,4 +8,27 @@ public class TicketRequest implements Serializable{
 	private int ticketId;
 	private String status;
 	private String ekrutLocation;
+	
+	public TicketRequest(TicketRequestType action, int ticketId, String status, String ekrutLocation) {
+		this.action = action;
+		this.ticketId = ticketId;
+		this.status = status;
+		this.ekrutLocation = ekrutLocation;
+	}
+	
+	public TicketRequestType getAction() {
+		return action;
+	}
+	
+	public int getTicketId() {
+		return ticketId;
+	}
+	
+	public String getStatus() {
+		return status;
+	}
+	
+	public String getEkrutLocation() {
+		return ekrutLocation;
+	}
 }
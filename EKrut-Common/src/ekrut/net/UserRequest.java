@@ -7,4 +7,41 @@ public class UserRequest implements Serializable{
 	private UserRequestType action;
 	private String username;
 	private String password;
+	private String token;
+	
+	public UserRequest(UserRequestType action, String username, String password) {
+		this.action = action;
+		this.username = username;
+		this.password = password;
+	}
+	
+	/**
+	 * A RESUME request, taking over the session of a token on a new connection
+	 * without sending the credentials again.
+	 */
+	public UserRequest(String token) {
+		this.action = UserRequestType.RESUME;
+		this.token = token;
+	}
+	
+	public UserRequest(UserRequestType action, String username, String password, String token) {
+		this(action, username, password);
+		this.token = token;
+	}
+	
+	public UserRequestType getAction() {
+		return action;
+	}
+	
+	public String getUsername() {
+		return username;
+	}
+	
+	public String getPassword() {
+		return password;
+	}
+	
+	public String getToken() {
+		return token;
+	}
 }
@@ -3,5 +3,6 @@ package ekrut.net;
 public enum UserRequestType {
 	CONNECT,
 	DISCONNECT,
-	IS_CONNECTED
+	IS_CONNECTED,
+	RESUME
 }
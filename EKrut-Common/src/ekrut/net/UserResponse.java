@@ -4,5 +4,35 @@ import java.io.Serializable;
 
 public class UserResponse implements Serializable{
 	private static final long serialVersionUID = 7315210241925632873L;
+	
+	// Result codes
+	public static final int OK = 0;
+	public static final int INVALID_REQUEST = 1;
+	public static final int ERROR = 2;
+	public static final int WRONG_CREDENTIALS = 3;
+	public static final int ALREADY_CONNECTED = 4;
+	public static final int NOT_CONNECTED = 5;
+	// Sent in place of the response to any request whose session token is unknown or expired.
+	public static final int SESSION_EXPIRED = 6;
+	
 	private int resultCode;
+	// The token of the session, returned by CONNECT and RESUME.
+	private String token;
+	
+	public UserResponse(int resultCode) {
+		this.resultCode = resultCode;
+	}
+	
+	public UserResponse(int resultCode, String token) {
+		this.resultCode = resultCode;
+		this.token = token;
+	}
+	
+	public int getResultCode() {
+		return resultCode;
+	}
+	
+	public String getToken() {
+		return token;
+	}
 }
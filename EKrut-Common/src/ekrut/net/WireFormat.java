@@ -0,0 +1,54 @@
+package ekrut.net;
+
+/**
+ * The ways a message can be sent between a client and the server. The format
+ * of a connection is agreed on right after connecting, see
+ * {@link CodecNegotiation}.
+ */
+public enum WireFormat {
+
+	/**
+	 * Messages are sent as they are, using Java serialization.
+	 */
+	JAVA_SERIALIZATION,
+
+	/**
+	 * Messages are encoded by {@link BinaryCodec} and sent as a byte array.
+	 */
+	BINARY;
+
+	/**
+	 * Prepares a message to be sent in this format. Messages the binary codec
+	 * does not support are sent as they are.
+	 * 
+	 * @param msg the message to send
+	 * @return    the object to pass to the connection
+	 */
+	public Object encode(Object msg) {
+		if (this == BINARY && BinaryCodec.canEncode(msg))
+			return BinaryCodec.encode(msg);
+		return msg;
+	}
+
+	/**
+	 * Turns a received object back into a message, whichever format it was sent in.
+	 * 
+	 * @param received the object received from the connection
+	 * @return         the message
+	 */
+	public static Object decode(Object received) {
+		if (received instanceof byte[])
+			return BinaryCodec.decode((byte[]) received);
+		return received;
+	}
+
+	/**
+	 * Returns the format matching a version accepted in a {@link CodecNegotiation}.
+	 * 
+	 * @param version the accepted binary codec version, 0 for Java serialization
+	 * @return        the wire format
+	 */
+	public static WireFormat forVersion(int version) {
+		return version == BinaryCodec.VERSION ? BINARY : JAVA_SERIALIZATION;
+	}
+}
@@ -0,0 +1,132 @@
+package ekrut.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Reads the primitive fields written by {@link WireWriter}.
+ */
+class WireReader {
+	
+	private final byte[] buf;
+	private int position;
+	private final ArrayList<String> strings = new ArrayList<>();
+	private int depth;
+	
+	WireReader(byte[] buf) {
+		this.buf = buf;
+	}
+	
+	int readByte() {
+		if (position >= buf.length)
+			throw new IllegalArgumentException("Unexpected end of message");
+		return buf[position++] & 0xFF;
+	}
+	
+	int readVarInt() {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Malformed variable-length integer");
+	}
+	
+	long readVarLong() {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Malformed variable-length integer");
+	}
+	
+	int readInt() {
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	long readLong() {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	boolean readBoolean() {
+		return readByte() != 0;
+	}
+	
+	String readString() {
+		int header = readVarInt();
+		if (header == 0)
+			return null;
+		if (header > 1) {
+			if (header - 2 >= strings.size())
+				throw new IllegalArgumentException("Unknown string reference " + (header - 2));
+			return strings.get(header - 2);
+		}
+		
+		int length = readVarInt();
+		if (length < 0 || length > buf.length - position)
+			throw new IllegalArgumentException("Unexpected end of message");
+		String value = new String(buf, position, length, StandardCharsets.UTF_8);
+		position += length;
+		strings.add(value);
+		return value;
+	}
+	
+	<E extends Enum<E>> E readEnum(E[] values) {
+		int ordinal = readVarInt();
+		if (ordinal == 0)
+			return null;
+		if (ordinal < 0 || ordinal > values.length)
+			throw new IllegalArgumentException("Unknown enum constant " + (ordinal - 1));
+		return values[ordinal - 1];
+	}
+	
+	int[] readIntArray() {
+		int length = readVarInt() - 1;
+		if (length < 0)
+			return null;
+		if (length > buf.length - position)
+			throw new IllegalArgumentException("Unexpected end of message");
+		
+		int[] values = new int[length];
+		for (int i = 0; i < length; i++)
+			values[i] = readInt();
+		return values;
+	}
+	
+	/**
+	 * Enters an object nested in the one being read, see {@link #leaveObject()}.
+	 *
+	 * @param maxDepth the deepest nesting allowed
+	 * @throws IllegalArgumentException if objects are nested deeper than maxDepth
+	 */
+	void enterObject(int maxDepth) {
+		if (++depth > maxDepth)
+			throw new IllegalArgumentException("Objects nested too deeply");
+	}
+	
+	void leaveObject() {
+		depth--;
+	}
+	
+	/**
+	 * Reads the length of a nullable collection or array, -1 for null.
+	 */
+	int readLength() {
+		int length = readVarInt() - 1;
+		// Every element takes at least one byte
+		if (length > buf.length - position)
+			throw new IllegalArgumentException("Unexpected end of message");
+		return length;
+	}
+	
+	boolean hasRemaining() {
+		return position < buf.length;
+	}
+}
@@ -0,0 +1,112 @@
+package ekrut.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Writes the primitive fields of the binary wire format used by {@link BinaryCodec}.
+ * 
+ * Integers are written as variable-length integers (7 bits per byte), signed
+ * ones after zigzag encoding so that small negative numbers stay short. Every
+ * distinct string is written once per message and referred to by its index
+ * in the message's string table afterwards.
+ */
+class WireWriter {
+	
+	private byte[] buf = new byte[256];
+	private int length;
+	private final HashMap<String, Integer> strings = new HashMap<>();
+	
+	void writeByte(int b) {
+		if (length == buf.length)
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		buf[length++] = (byte) b;
+	}
+	
+	/**
+	 * Writes a non-negative integer using as few bytes as possible.
+	 */
+	void writeVarInt(int value) {
+		while ((value & ~0x7F) != 0) {
+			writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		writeByte(value);
+	}
+	
+	void writeVarLong(long value) {
+		while ((value & ~0x7FL) != 0) {
+			writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		writeByte((int) value);
+	}
+	
+	/**
+	 * Writes a signed integer, zigzag encoded so that small magnitudes stay short.
+	 */
+	void writeInt(int value) {
+		writeVarInt((value << 1) ^ (value >> 31));
+	}
+	
+	void writeLong(long value) {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+	
+	void writeBoolean(boolean value) {
+		writeByte(value ? 1 : 0);
+	}
+	
+	/**
+	 * Writes a nullable string: 0 for null, 1 followed by the UTF-8 bytes for
+	 * a string seen for the first time, or 2 + its index in the string table.
+	 */
+	void writeString(String value) {
+		if (value == null) {
+			writeVarInt(0);
+			return;
+		}
+		
+		Integer index = strings.get(value);
+		if (index != null) {
+			writeVarInt(index + 2);
+			return;
+		}
+		
+		strings.put(value, strings.size());
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(1);
+		writeVarInt(bytes.length);
+		if (length + bytes.length > buf.length)
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, length + bytes.length));
+		System.arraycopy(bytes, 0, buf, length, bytes.length);
+		length += bytes.length;
+	}
+	
+	/**
+	 * Writes a nullable enum constant as its ordinal plus one, 0 for null.
+	 */
+	void writeEnum(Enum<?> value) {
+		writeVarInt(value == null ? 0 : value.ordinal() + 1);
+	}
+	
+	/**
+	 * Writes a nullable int array as its length plus one, 0 for null, followed
+	 * by its elements.
+	 */
+	void writeIntArray(int[] values) {
+		if (values == null) {
+			writeVarInt(0);
+			return;
+		}
+		
+		writeVarInt(values.length + 1);
+		for (int value : values)
+			writeInt(value);
+	}
+	
+	byte[] toByteArray() {
+		return Arrays.copyOf(buf, length);
+	}
+}
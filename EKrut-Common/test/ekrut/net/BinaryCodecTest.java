@@ -0,0 +1,204 @@
+package ekrut.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ekrut.entity.InventoryItemUpdate;
+import ekrut.entity.Item;
+import ekrut.entity.Order;
+import ekrut.entity.OrderItem;
+import ekrut.entity.OrderStatus;
+import ekrut.entity.OrderType;
+
+/**
+ * Tests that {@link BinaryCodec} decodes what it encodes, and rejects
+ * malformed messages with an IllegalArgumentException.
+ */
+public class BinaryCodecTest {
+
+	// Type tags of BinaryCodec
+	private static final int ORDER_REQUEST = 22;
+	private static final int CORRELATED_MESSAGE = 30;
+
+	private static Object roundTrip(Object msg) {
+		return BinaryCodec.decode(BinaryCodec.encode(msg));
+	}
+
+	private static void assertRejected(byte[] bytes) {
+		try {
+			BinaryCodec.decode(bytes);
+			fail("Malformed message was decoded");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void orderRequestRoundTrip() {
+		Item cola = new Item(1, "Cola", "Can", 5);
+		ArrayList<OrderItem> items = new ArrayList<>(Arrays.asList(new OrderItem(cola, 2),
+				new OrderItem(new Item(2, "Chips", null, 7), 1)));
+		Order order = new Order(42, LocalDate.of(2023, 1, 31), OrderStatus.SUBMITTED, OrderType.REMOTE,
+				LocalDate.of(2023, 2, 3), "Main St 1", "Haifa", items);
+
+		OrderRequest decoded = (OrderRequest) roundTrip(new OrderRequest(OrderRequestType.CREATE, 42, order));
+
+		assertEquals(OrderRequestType.CREATE, decoded.getAction());
+		assertEquals(42, decoded.getOrderId());
+		Order decodedOrder = decoded.getOrder();
+		assertEquals(Integer.valueOf(42), decodedOrder.getOrderId());
+		assertEquals(order.getDate(), decodedOrder.getDate());
+		assertEquals(OrderStatus.SUBMITTED, decodedOrder.getStatus());
+		assertEquals(OrderType.REMOTE, decodedOrder.getType());
+		assertEquals(order.getDueDate(), decodedOrder.getDueDate());
+		assertEquals("Main St 1", decodedOrder.getClientAddress());
+		assertEquals("Haifa", decodedOrder.getEkrutLocation());
+		assertEquals(2, decodedOrder.getItems().size());
+		OrderItem first = decodedOrder.getItems().get(0);
+		assertEquals(1, first.getItem().getItemId());
+		assertEquals("Cola", first.getItem().getItemName());
+		assertEquals("Can", first.getItem().getItemDescription());
+		assertEquals(5, first.getItem().getItemPrice());
+		assertEquals(2, first.getItemQuantity());
+		assertNull(decodedOrder.getItems().get(1).getItem().getItemDescription());
+	}
+
+	@Test
+	public void correlatedNotificationRoundTrip() {
+		InventoryItemUpdate[] updates = { new InventoryItemUpdate(1, 10, 9), new InventoryItemUpdate(2, 0, -1) };
+		CorrelatedMessage msg = new CorrelatedMessage(7,
+				new InventoryUpdateNotification("Haifa", 1L << 40, (1L << 40) + 1, updates), "token");
+
+		CorrelatedMessage decoded = (CorrelatedMessage) roundTrip(msg);
+
+		assertEquals(7, decoded.getCorrelationId());
+		assertEquals("token", decoded.getSessionToken());
+		InventoryUpdateNotification notification = (InventoryUpdateNotification) decoded.getMessage();
+		assertEquals("Haifa", notification.getEkrutLocation());
+		assertEquals(1L << 40, notification.getPreviousVersion());
+		assertEquals((1L << 40) + 1, notification.getVersion());
+		assertEquals(2, notification.getUpdates().length);
+		assertEquals(-1, notification.getUpdates()[1].getItemNewQuantity());
+	}
+
+	@Test
+	public void nullMessageRoundTrip() {
+		assertNull(roundTrip(null));
+	}
+
+	@Test
+	public void repeatedStringsAreWrittenOnce() {
+		Item item = new Item(1, "Same name", "Same name", 5);
+		byte[] once = BinaryCodec.encode(new Item(1, "Same name", "Other", 5));
+		byte[] twice = BinaryCodec.encode(item);
+
+		assertTrue(twice.length < once.length);
+		assertEquals("Same name", ((Item) BinaryCodec.decode(twice)).getItemDescription());
+	}
+
+	@Test
+	public void wrongVersionIsRejected() {
+		byte[] bytes = BinaryCodec.encode(null);
+		bytes[0]++;
+		assertRejected(bytes);
+	}
+
+	@Test
+	public void truncatedMessageIsRejected() {
+		byte[] bytes = BinaryCodec.encode(new Item(1, "Cola", "Can", 5));
+		for (int length = 1; length < bytes.length; length++)
+			assertRejected(Arrays.copyOf(bytes, length));
+	}
+
+	@Test
+	public void trailingBytesAreRejected() {
+		byte[] bytes = BinaryCodec.encode(new Item(1, "Cola", "Can", 5));
+		assertRejected(Arrays.copyOf(bytes, bytes.length + 1));
+	}
+
+	@Test
+	public void unknownTagIsRejected() {
+		WireWriter out = new WireWriter();
+		out.writeVarInt(BinaryCodec.VERSION);
+		out.writeVarInt(99);
+		assertRejected(out.toByteArray());
+	}
+
+	@Test
+	public void unknownStringReferenceIsRejected() {
+		WireWriter out = new WireWriter();
+		out.writeVarInt(BinaryCodec.VERSION);
+		out.writeVarInt(1);
+		out.writeInt(1);
+		// A reference to the third string read so far, when none was
+		out.writeVarInt(4);
+		assertRejected(out.toByteArray());
+	}
+
+	@Test
+	public void negativeEnumOrdinalIsRejected() {
+		WireWriter out = new WireWriter();
+		out.writeVarInt(BinaryCodec.VERSION);
+		out.writeVarInt(ORDER_REQUEST);
+		// Decodes to -1, which must not index the constants
+		out.writeVarInt(-1);
+		assertRejected(out.toByteArray());
+	}
+
+	@Test
+	public void enumOrdinalPastTheConstantsIsRejected() {
+		WireWriter out = new WireWriter();
+		out.writeVarInt(BinaryCodec.VERSION);
+		out.writeVarInt(ORDER_REQUEST);
+		out.writeVarInt(OrderRequestType.values().length + 1);
+		assertRejected(out.toByteArray());
+	}
+
+	@Test
+	public void deeplyNestedMessageIsRejected() {
+		WireWriter out = new WireWriter();
+		out.writeVarInt(BinaryCodec.VERSION);
+		// Correlated messages wrapping each other, far deeper than any real message
+		for (int i = 0; i < 100000; i++) {
+			out.writeVarInt(CORRELATED_MESSAGE);
+			out.writeVarInt(i);
+		}
+		assertRejected(out.toByteArray());
+	}
+
+	@Test
+	public void lengthLargerThanTheMessageIsRejected() {
+		WireWriter out = new WireWriter();
+		out.writeVarInt(BinaryCodec.VERSION);
+		out.writeVarInt(CORRELATED_MESSAGE);
+		out.writeVarInt(1);
+		out.writeVarInt(31);
+		out.writeString("Haifa");
+		out.writeVarLong(1);
+		out.writeVarLong(2);
+		// Claims a million updates
+		out.writeVarInt(1000001);
+		assertRejected(out.toByteArray());
+	}
+
+	@Test
+	public void intArraysRoundTrip() {
+		InventoryItemRequest request = new InventoryItemRequest("Haifa", new int[] { 1, -2, Integer.MAX_VALUE },
+				new int[] { 0, Integer.MIN_VALUE, 3 });
+
+		InventoryItemRequest decoded = (InventoryItemRequest) roundTrip(request);
+
+		assertArrayEquals(request.getItemIds(), decoded.getItemIds());
+		assertArrayEquals(request.getQuantities(), decoded.getQuantities());
+		assertEquals("Haifa", decoded.getEkrutLocation());
+	}
+}
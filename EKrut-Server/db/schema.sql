@@ -0,0 +1,104 @@
+-- Creates the tables the EKrut server reads and writes, in MySQL.
+-- Run once on an empty database; the server creates no tables itself.
+-- Items, locations and users are loaded by the operators, the rest is
+-- written by the server.
+
+-- The products sold by the machines (ItemDAO, ItemCatalog)
+CREATE TABLE item (
+	item_id INT NOT NULL,
+	item_name VARCHAR(45) NOT NULL,
+	item_description VARCHAR(255),
+	item_price INT NOT NULL,
+	PRIMARY KEY (item_id)
+);
+
+-- The facilities (machines) and the area each belongs to (ReportDAO)
+CREATE TABLE ekrut_location (
+	ekrut_location VARCHAR(45) NOT NULL,
+	area VARCHAR(45) NOT NULL,
+	PRIMARY KEY (ekrut_location),
+	KEY ekrut_location_area (area)
+);
+
+-- The stock of every item in every facility (InventoryItemDAO, InventoryCache)
+CREATE TABLE inventory_item (
+	item_id INT NOT NULL,
+	ekrut_location VARCHAR(45) NOT NULL,
+	item_quantity INT NOT NULL DEFAULT 0,
+	item_threshold INT NOT NULL DEFAULT 0,
+	PRIMARY KEY (item_id, ekrut_location),
+	KEY inventory_item_location (ekrut_location),
+	FOREIGN KEY (item_id) REFERENCES item (item_id),
+	FOREIGN KEY (ekrut_location) REFERENCES ekrut_location (ekrut_location)
+);
+
+-- The users; password holds a PasswordHasher hash, or a legacy plain text
+-- password until its owner logs in (UserDAO)
+CREATE TABLE users (
+	username VARCHAR(45) NOT NULL,
+	password VARCHAR(255) NOT NULL,
+	user_type VARCHAR(20) NOT NULL,
+	area VARCHAR(45),
+	PRIMARY KEY (username)
+);
+
+-- The orders, written a group per transaction (OrderDAO)
+CREATE TABLE orders (
+	order_id INT NOT NULL,
+	order_date DATE NOT NULL,
+	status VARCHAR(20) NOT NULL,
+	order_type VARCHAR(20) NOT NULL,
+	due_date DATE,
+	client_address VARCHAR(255),
+	ekrut_location VARCHAR(45) NOT NULL,
+	PRIMARY KEY (order_id),
+	KEY orders_location_date (ekrut_location, order_date)
+);
+
+CREATE TABLE order_item (
+	order_id INT NOT NULL,
+	item_id INT NOT NULL,
+	quantity INT NOT NULL,
+	PRIMARY KEY (order_id, item_id),
+	FOREIGN KEY (order_id) REFERENCES orders (order_id),
+	FOREIGN KEY (item_id) REFERENCES item (item_id)
+);
+
+-- A single row holding the next order ID to reserve a block from; created
+-- by the server on its first reservation (OrderDAO.reserveOrderIds)
+CREATE TABLE order_id_block (
+	id INT NOT NULL,
+	next_order_id INT NOT NULL,
+	PRIMARY KEY (id)
+);
+
+-- The orders of every facility per day, added to in the transaction of the
+-- orders (ReportDAO.addDailyOrderStats)
+CREATE TABLE daily_order_stats (
+	ekrut_location VARCHAR(45) NOT NULL,
+	order_date DATE NOT NULL,
+	number_of_orders INT NOT NULL DEFAULT 0,
+	items_sold INT NOT NULL DEFAULT 0,
+	total_amount BIGINT NOT NULL DEFAULT 0,
+	PRIMARY KEY (ekrut_location, order_date)
+);
+
+-- The monthly reports rolled up once their month is over; report_date is
+-- the first day of the month (ReportDAO)
+CREATE TABLE report (
+	report_type VARCHAR(20) NOT NULL,
+	area VARCHAR(45) NOT NULL,
+	report_date DATETIME NOT NULL,
+	content MEDIUMTEXT,
+	PRIMARY KEY (report_type, area, report_date)
+);
+
+-- The restock tickets opened for items running low (TicketDAO)
+CREATE TABLE ticket (
+	ticket_id INT NOT NULL AUTO_INCREMENT,
+	status VARCHAR(20) NOT NULL,
+	ekrut_location VARCHAR(45) NOT NULL,
+	item_id INT NOT NULL,
+	PRIMARY KEY (ticket_id),
+	KEY ticket_location_item (ekrut_location, item_id, status)
+);
@@ -0,0 +1,377 @@
+package ekrut.server;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import ekrut.net.CodecNegotiation;
+import ekrut.net.CorrelatedMessage;
+import ekrut.net.InventoryItemRequest;
+import ekrut.net.InventoryItemRequestType;
+import ekrut.net.InventoryItemResponse;
+import ekrut.net.OrderRequest;
+import ekrut.net.OrderResponse;
+import ekrut.net.ReportRequest;
+import ekrut.net.ReportResponse;
+import ekrut.net.UserRequest;
+import ekrut.net.UserResponse;
+import ekrut.net.WireFormat;
+import ekrut.server.db.DBController;
+import ekrut.server.db.ItemCatalog;
+import ekrut.server.db.ItemDAO;
+import ekrut.server.db.TicketDAO;
+import ekrut.server.db.UserDAO;
+import ekrut.server.managers.ServerInventoryManager;
+import ekrut.server.managers.ServerOrderManager;
+import ekrut.server.managers.ServerReportManager;
+import ekrut.server.managers.ServerSessionManager;
+import ekrut.server.managers.Session;
+import ocsf.server.AbstractServer;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * The EKrut server. Receives requests from the clients and hands them to the
+ * server managers.
+ *
+ * Every client first negotiates the wire format of its connection (see
+ * {@link CodecNegotiation}); clients that never do are answered using Java
+ * serialization.
+ *
+ * Requests sent with a correlation ID (see {@link CorrelatedMessage}) are
+ * handled on a pool of worker threads, so a slow request does not hold back
+ * the requests sent after it on the same connection. Their responses are sent
+ * as soon as they are ready, which for new orders is once their group is
+ * committed (see {@link ServerOrderManager}), without holding a worker
+ * meanwhile. Requests without an ID are handled on the workers too, never
+ * on the thread reading from the client: in non-blocking mode that thread
+ * serves every connection of its event loop, and a database call or password
+ * check there would stall them all. They are handled one after the other, in
+ * the order the client sent them, and answered in that order, each response
+ * waiting for the ones before it. A request whose handling fails is answered
+ * with the error response of its kind.
+ *
+ * A correlated request may carry the token of a user session (see
+ * {@link ServerSessionManager}); the user is then found with one lookup, and a
+ * request with an unknown or expired token is answered with
+ * {@link UserResponse#SESSION_EXPIRED} instead of being handled. Other
+ * requests are tied to the user logged in on their connection, if any.
+ *
+ * Clients may subscribe to the inventory changes of a location, which are then
+ * pushed to them by the {@link InventoryFeed}, along with the low stock alerts
+ * of the {@link LowStockMonitor}.
+ */
+public class EKrutServer extends AbstractServer {
+
+	public static final int DEFAULT_WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+
+	private static final String WIRE_FORMAT = "wireFormat";
+
+	private ItemCatalog itemCatalog;
+	private ServerInventoryManager serverInventoryManager;
+	private ServerReportManager serverReportManager;
+	private ServerOrderManager serverOrderManager;
+	private ServerSessionManager serverSessionManager;
+	private InventoryFeed inventoryFeed;
+	private LowStockMonitor lowStockMonitor;
+	private ExecutorService workers;
+	// The last request not handled yet of each client, for requests without a correlation ID
+	private final ConcurrentHashMap<ConnectionToClient, CompletableFuture<?>> handlingChains = new ConcurrentHashMap<>();
+	// The last response not sent yet to each client, for requests without a correlation ID
+	private final ConcurrentHashMap<ConnectionToClient, CompletableFuture<?>> replyChains = new ConcurrentHashMap<>();
+
+	/**
+	 * @param port the port to listen on
+	 * @param con  the controller used to access the database
+	 */
+	public EKrutServer(int port, DBController con) {
+		this(port, con, DEFAULT_WORKER_COUNT);
+	}
+
+	/**
+	 * @param port        the port to listen on
+	 * @param con         the controller used to access the database
+	 * @param workerCount the number of threads handling requests
+	 */
+	public EKrutServer(int port, DBController con, int workerCount) {
+		super(port);
+		this.itemCatalog = new ItemCatalog(new ItemDAO(con));
+		itemCatalog.reload();
+		this.serverInventoryManager = new ServerInventoryManager(con);
+		this.serverReportManager = new ServerReportManager(con);
+		this.serverOrderManager = new ServerOrderManager(con, itemCatalog, serverInventoryManager, serverReportManager);
+		this.serverSessionManager = new ServerSessionManager(new UserDAO(con));
+		this.inventoryFeed = new InventoryFeed(this);
+		serverInventoryManager.addInventoryChangeListener(inventoryFeed);
+		this.lowStockMonitor = new LowStockMonitor(new TicketDAO(con), inventoryFeed);
+		serverInventoryManager.addLowStockListener(lowStockMonitor);
+
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(workerCount, task -> {
+			Thread thread = new Thread(task, "EKrut worker " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	protected void handleMessageFromClient(Object msg, ConnectionToClient client) {
+		try {
+			if (msg instanceof CodecNegotiation) {
+				CodecNegotiation answer = ((CodecNegotiation) msg).accept();
+				// The answer still goes out using Java serialization
+				client.sendToClient(answer);
+				client.setInfo(WIRE_FORMAT, answer.getWireFormat());
+				return;
+			}
+
+			Object request = WireFormat.decode(msg);
+			if (request instanceof CorrelatedMessage) {
+				CorrelatedMessage correlated = (CorrelatedMessage) request;
+				workers.execute(() -> handleCorrelated(correlated, client));
+				return;
+			}
+
+			replyInOrder(client, handleInOrder(request, client));
+		} catch (IllegalArgumentException e) {
+			// The client sent bytes the codec could not decode
+			closeClient(client);
+		} catch (RejectedExecutionException e) {
+			// The server is closing
+			closeClient(client);
+		} catch (IOException e) {
+			closeClient(client);
+		}
+	}
+
+	/**
+	 * Hands a request without a correlation ID to the workers, once the requests
+	 * the client sent earlier are handled. Handling ends when the handler
+	 * returns, so a new order waiting for its group to be committed does not hold
+	 * back the next requests.
+	 *
+	 * @return a future of the response
+	 */
+	private CompletableFuture<Object> handleInOrder(Object request, ConnectionToClient client) {
+		Supplier<CompletableFuture<Object>> task = () -> handleSafely(request,
+				() -> handleRequest(request, client, serverSessionManager.getSession(client)));
+		CompletableFuture<?> previous = handlingChains.get(client);
+		CompletableFuture<CompletableFuture<Object>> handled = previous == null
+				? CompletableFuture.supplyAsync(task, workers)
+				: previous.handle((r, e) -> null).thenApplyAsync(r -> task.get(), workers);
+		// Only the thread reading from the client adds to its chain
+		handlingChains.put(client, handled);
+		handled.whenComplete((r, e) -> handlingChains.remove(client, handled));
+		return handled.thenCompose(response -> response);
+	}
+
+	/**
+	 * Sends the response to a request without a correlation ID once it is ready,
+	 * but never before the responses to the requests the client sent earlier.
+	 * Never waits for the response, so the thread reading from the client goes
+	 * on with the next requests meanwhile.
+	 */
+	private void replyInOrder(ConnectionToClient client, CompletableFuture<Object> response) {
+		CompletableFuture<?> previous = replyChains.get(client);
+		CompletableFuture<Object> next = previous == null ? response
+				: previous.handle((r, e) -> null).thenCompose(r -> response);
+		CompletableFuture<?> sent = next.thenAccept(r -> {
+			try {
+				if (r != null)
+					send(client, r);
+			} catch (IOException e) {
+				closeClient(client);
+			}
+		});
+		// Only the thread reading from the client adds to its chain
+		replyChains.put(client, sent);
+		sent.whenComplete((r, e) -> replyChains.remove(client, sent));
+	}
+
+	private void handleCorrelated(CorrelatedMessage request, ConnectionToClient client) {
+		handleSafely(request.getMessage(), () -> dispatchCorrelated(request, client))
+				.thenAccept(r -> reply(request, r, client));
+	}
+
+	private Object dispatchCorrelated(CorrelatedMessage request, ConnectionToClient client) {
+		if (request.getSessionToken() == null)
+			return handleRequest(request.getMessage(), client, serverSessionManager.getSession(client));
+		if (request.getMessage() instanceof UserRequest)
+			// Logging in and resuming must work whatever token the client still holds
+			return handleRequest(request.getMessage(), client, null);
+
+		Session session = serverSessionManager.getSession(request.getSessionToken(), client);
+		return session == null ? new UserResponse(UserResponse.SESSION_EXPIRED)
+				: handleRequest(request.getMessage(), client, session);
+	}
+
+	/**
+	 * Runs a request handler without waiting for its response. A handler that
+	 * throws, or a response that completes exceptionally, is answered with the
+	 * error response of the request's kind, so the client is never left waiting
+	 * for a response that will not come.
+	 *
+	 * @param request the request being handled
+	 * @param handler returns the response, or a future of it
+	 * @return        a future of the response, never completing exceptionally
+	 */
+	private CompletableFuture<Object> handleSafely(Object request, Supplier<Object> handler) {
+		Object response;
+		try {
+			response = handler.get();
+		} catch (RuntimeException e) {
+			return CompletableFuture.completedFuture(errorResponse(request));
+		}
+
+		if (!(response instanceof CompletableFuture))
+			return CompletableFuture.completedFuture(response);
+		return ((CompletableFuture<?>) response).handle((r, e) -> e == null ? r : errorResponse(request));
+	}
+
+	/**
+	 * @param request the request that failed
+	 * @return        the response telling the client the request failed, or null
+	 *                if the request is not supported
+	 */
+	private static Object errorResponse(Object request) {
+		if (request instanceof InventoryItemRequest)
+			return new InventoryItemResponse("Server error.");
+		if (request instanceof OrderRequest)
+			return new OrderResponse(OrderResponse.ERROR);
+		if (request instanceof ReportRequest) {
+			ReportResponse response = new ReportResponse();
+			response.setResultCode(ReportResponse.ERROR);
+			return response;
+		}
+		if (request instanceof UserRequest)
+			return new UserResponse(UserResponse.ERROR);
+		return null;
+	}
+
+	private void reply(CorrelatedMessage request, Object response, ConnectionToClient client) {
+		try {
+			send(client, new CorrelatedMessage(request.getCorrelationId(), response));
+		} catch (IOException e) {
+			closeClient(client);
+		}
+	}
+
+	/**
+	 * Hands a request to the matching server manager.
+	 *
+	 * @param request the decoded request
+	 * @param client  the client that sent the request
+	 * @param session the session of the user sending the request, or null
+	 * @return        the response to send back, a future of it if it is not ready yet,
+	 *                or null if the request is not supported
+	 */
+	private Object handleRequest(Object request, ConnectionToClient client, Session session) {
+		if (request instanceof InventoryItemRequest)
+			return handleInventoryRequest((InventoryItemRequest) request, client);
+		if (request instanceof OrderRequest)
+			return serverOrderManager.handleRequest((OrderRequest) request);
+		if (request instanceof ReportRequest)
+			return serverReportManager.handleRequest((ReportRequest) request,
+					session == null ? null : session.getUser());
+		if (request instanceof UserRequest)
+			return serverSessionManager.handleRequest((UserRequest) request, client);
+		return null;
+	}
+
+	private InventoryItemResponse handleInventoryRequest(InventoryItemRequest request, ConnectionToClient client) {
+		if (request.getAction() == InventoryItemRequestType.SUBSCRIBE) {
+			inventoryFeed.subscribe(client, request.getEkrutLocation());
+			return new InventoryItemResponse("OK");
+		}
+		if (request.getAction() == InventoryItemRequestType.UNSUBSCRIBE) {
+			inventoryFeed.unsubscribe(client, request.getEkrutLocation());
+			return new InventoryItemResponse("OK");
+		}
+		return serverInventoryManager.handleRequest(request);
+	}
+
+	/**
+	 * Sends a message to a client in the wire format the client agreed on.
+	 *
+	 * @param client the client to send to
+	 * @param msg    the message
+	 * @throws IOException if the message could not be sent
+	 */
+	void send(ConnectionToClient client, Object msg) throws IOException {
+		client.sendToClient(wireFormatOf(client).encode(msg));
+	}
+
+	/**
+	 * @return the catalog of items, loaded when the server is created. Its
+	 *         {@link ItemCatalog#reload()} must be called whenever items are
+	 *         added or changed, or orders of new items are refused.
+	 */
+	public ItemCatalog getItemCatalog() {
+		return itemCatalog;
+	}
+
+	public InventoryFeed getInventoryFeed() {
+		return inventoryFeed;
+	}
+
+	public ServerOrderManager getServerOrderManager() {
+		return serverOrderManager;
+	}
+
+	public ServerReportManager getServerReportManager() {
+		return serverReportManager;
+	}
+
+	public ServerSessionManager getServerSessionManager() {
+		return serverSessionManager;
+	}
+
+	public LowStockMonitor getLowStockMonitor() {
+		return lowStockMonitor;
+	}
+
+	private WireFormat wireFormatOf(ConnectionToClient client) {
+		WireFormat format = (WireFormat) client.getInfo(WIRE_FORMAT);
+		return format == null ? WireFormat.JAVA_SERIALIZATION : format;
+	}
+
+	private void closeClient(ConnectionToClient client) {
+		try {
+			client.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+	}
+
+	@Override
+	protected void clientDisconnected(ConnectionToClient client) {
+		handlingChains.remove(client);
+		replyChains.remove(client);
+		inventoryFeed.removeClient(client);
+		serverSessionManager.clientDisconnected(client);
+	}
+
+	@Override
+	protected void clientException(ConnectionToClient client, Throwable exception) {
+		handlingChains.remove(client);
+		replyChains.remove(client);
+		inventoryFeed.removeClient(client);
+		serverSessionManager.clientDisconnected(client);
+	}
+
+	@Override
+	protected void serverClosed() {
+		inventoryFeed.close();
+		lowStockMonitor.close();
+		workers.shutdown();
+		// Committing the queued orders still takes their stock and adds them to the reports
+		serverOrderManager.close();
+		serverInventoryManager.close();
+		serverReportManager.close();
+		serverSessionManager.close();
+	}
+}
@@ -0,0 +1,267 @@
+package ekrut.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import ekrut.entity.InventoryItemUpdate;
+import ekrut.net.InventoryUpdateNotification;
+import ekrut.server.db.InventoryChangeListener;
+import ekrut.server.db.InventoryChanges;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * Pushes inventory changes to the clients subscribed to their location, so
+ * dashboards do not have to poll.
+ *
+ * Changes are queued by the inventory cache and picked up by a single feed
+ * thread, so a slow client never holds up an order. When changes pile up
+ * faster than they are picked up, the queued changes of a location are merged
+ * into a single notification holding one update per item, from its oldest to
+ * its newest quantity, going from the first previous version to the last
+ * version.
+ *
+ * Every subscribed client then has its own bounded outbox, sent from by a
+ * small pool of sender threads, one outbox at a time per client so its
+ * messages keep their order. A slow client only delays its own messages. A
+ * client whose outbox overflows is dropped: its subscriptions are removed and
+ * its connection is closed, so it fetches the inventory again when it
+ * reconnects instead of silently missing changes. When the server runs
+ * event loops, sends never wait and the outbox rarely fills; the connection
+ * then closes itself once too many bytes are queued for the client, and the
+ * failed send drops the subscriber the same way.
+ */
+public class InventoryFeed implements InventoryChangeListener {
+
+	public static final int DEFAULT_SENDER_COUNT = 4;
+	public static final int DEFAULT_OUTBOX_SIZE = 256;
+
+	/**
+	 * The messages waiting to be sent to a single client.
+	 */
+	private static class Outbox {
+		final ConnectionToClient client;
+		final ArrayBlockingQueue<Object> messages;
+		final AtomicBoolean sendScheduled = new AtomicBoolean();
+
+		Outbox(ConnectionToClient client, int size) {
+			this.client = client;
+			this.messages = new ArrayBlockingQueue<>(size);
+		}
+	}
+
+	private final EKrutServer server;
+	private final int outboxSize;
+	private final ConcurrentHashMap<String, Set<ConnectionToClient>> subscribers = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<ConnectionToClient, Outbox> outboxes = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedQueue<InventoryUpdateNotification> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+	private final ExecutorService feed;
+	private final ExecutorService senders;
+
+	// Statistics
+	private final LongAdder droppedClients = new LongAdder();
+
+	/**
+	 * @param server the server used to send the notifications in the format of each client
+	 */
+	InventoryFeed(EKrutServer server) {
+		this(server, DEFAULT_SENDER_COUNT, DEFAULT_OUTBOX_SIZE);
+	}
+
+	/**
+	 * @param server      the server used to send the notifications in the format of each client
+	 * @param senderCount the number of threads sending to the clients
+	 * @param outboxSize  the number of messages a client may fall behind before it is dropped
+	 */
+	InventoryFeed(EKrutServer server, int senderCount, int outboxSize) {
+		this.server = server;
+		this.outboxSize = outboxSize;
+		this.feed = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "Inventory feed");
+			t.setDaemon(true);
+			return t;
+		});
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.senders = Executors.newFixedThreadPool(senderCount, r -> {
+			Thread t = new Thread(r, "Inventory feed sender " + threadNumber.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Starts sending the changes of a location to a client.
+	 *
+	 * @param client        the subscribing client
+	 * @param ekrutLocation the machine whose changes are sent
+	 */
+	public void subscribe(ConnectionToClient client, String ekrutLocation) {
+		outboxes.computeIfAbsent(client, c -> new Outbox(c, outboxSize));
+		subscribers.computeIfAbsent(ekrutLocation, location -> ConcurrentHashMap.newKeySet()).add(client);
+	}
+
+	/**
+	 * Stops sending the changes of a location to a client.
+	 *
+	 * @param client        the subscribed client
+	 * @param ekrutLocation the machine whose changes are no longer sent
+	 */
+	public void unsubscribe(ConnectionToClient client, String ekrutLocation) {
+		Set<ConnectionToClient> clients = subscribers.get(ekrutLocation);
+		if (clients != null)
+			clients.remove(client);
+	}
+
+	/**
+	 * Drops every subscription of a client, e.g. when it disconnects.
+	 *
+	 * @param client the client to forget
+	 */
+	public void removeClient(ConnectionToClient client) {
+		for (Set<ConnectionToClient> clients : subscribers.values())
+			clients.remove(client);
+		outboxes.remove(client);
+	}
+
+	/**
+	 * @param ekrutLocation a machine location
+	 * @return              the number of clients subscribed to it
+	 */
+	public int getSubscriberCount(String ekrutLocation) {
+		Set<ConnectionToClient> clients = subscribers.get(ekrutLocation);
+		return clients == null ? 0 : clients.size();
+	}
+
+	@Override
+	public void inventoryChanged(String ekrutLocation, long previousVersion, long version,
+			InventoryItemUpdate[] updates) {
+		Set<ConnectionToClient> clients = subscribers.get(ekrutLocation);
+		if (clients == null || clients.isEmpty())
+			return;
+
+		queue.add(new InventoryUpdateNotification(ekrutLocation, previousVersion, version, updates));
+		if (drainScheduled.compareAndSet(false, true))
+			feed.execute(this::drain);
+	}
+
+	/**
+	 * Sends everything queued, merged per location.
+	 */
+	private void drain() {
+		drainScheduled.set(false);
+
+		LinkedHashMap<String, ArrayList<InventoryUpdateNotification>> queued = new LinkedHashMap<>();
+		InventoryUpdateNotification notification;
+		while ((notification = queue.poll()) != null)
+			queued.computeIfAbsent(notification.getEkrutLocation(), location -> new ArrayList<>()).add(notification);
+
+		for (ArrayList<InventoryUpdateNotification> notifications : queued.values()) {
+			InventoryUpdateNotification first = notifications.get(0);
+			InventoryUpdateNotification last = notifications.get(notifications.size() - 1);
+			if (notifications.size() == 1) {
+				publish(last.getEkrutLocation(), last);
+				continue;
+			}
+
+			ArrayList<InventoryItemUpdate[]> changes = new ArrayList<>(notifications.size());
+			for (InventoryUpdateNotification n : notifications)
+				changes.add(n.getUpdates());
+			// Sent even if nothing is left after merging, so clients still move to the last version
+			publish(last.getEkrutLocation(), new InventoryUpdateNotification(last.getEkrutLocation(),
+					first.getPreviousVersion(), last.getVersion(), InventoryChanges.merge(changes)));
+		}
+	}
+
+	/**
+	 * Queues a message for every client subscribed to a location. Never waits
+	 * for a client.
+	 *
+	 * @param ekrutLocation the machine the message is about
+	 * @param msg           the message
+	 */
+	void publish(String ekrutLocation, Object msg) {
+		Set<ConnectionToClient> clients = subscribers.get(ekrutLocation);
+		if (clients == null)
+			return;
+
+		for (ConnectionToClient client : clients) {
+			Outbox outbox = outboxes.get(client);
+			if (outbox == null)
+				continue;
+			if (!outbox.messages.offer(msg)) {
+				drop(outbox.client);
+				continue;
+			}
+			if (outbox.sendScheduled.compareAndSet(false, true)) {
+				try {
+					senders.execute(() -> send(outbox));
+				} catch (RejectedExecutionException e) {
+					// The feed is closing
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the messages queued for a client, on a sender thread. Only one
+	 * sender works on an outbox at a time.
+	 */
+	private void send(Outbox outbox) {
+		do {
+			Object msg;
+			while ((msg = outbox.messages.poll()) != null) {
+				try {
+					server.send(outbox.client, msg);
+				} catch (IOException e) {
+					// The connection is gone, its disconnect hook may not have run yet
+					removeClient(outbox.client);
+					return;
+				}
+			}
+			outbox.sendScheduled.set(false);
+			// A message queued after the last poll found the send still scheduled
+		} while (!outbox.messages.isEmpty() && outbox.sendScheduled.compareAndSet(false, true));
+	}
+
+	/**
+	 * Drops a client that fell too far behind.
+	 */
+	private void drop(ConnectionToClient client) {
+		if (outboxes.remove(client) == null)
+			return;
+
+		droppedClients.increment();
+		removeClient(client);
+		try {
+			client.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+	}
+
+	/**
+	 * @return the number of clients dropped for falling behind
+	 */
+	public long getDroppedClientCount() {
+		return droppedClients.sum();
+	}
+
+	/**
+	 * Stops the feed and sender threads. Changes still queued are not sent.
+	 */
+	void close() {
+		feed.shutdownNow();
+		senders.shutdownNow();
+	}
+}
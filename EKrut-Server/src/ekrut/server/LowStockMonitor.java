@@ -0,0 +1,92 @@
+package ekrut.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import ekrut.entity.InventoryItem;
+import ekrut.net.LowStockAlert;
+import ekrut.server.db.LowStockListener;
+import ekrut.server.db.TicketDAO;
+
+/**
+ * Acts on the items the inventory cache reports below their threshold: opens a
+ * restock ticket for the item, unless one is still open, and alerts the
+ * clients watching its location, such as the dashboard of the area manager.
+ *
+ * The cache reports each item once until it is restocked, so an item selling
+ * around its threshold raises a single alert. The database work runs on the
+ * monitor's own thread, never on the thread that changed the stock.
+ */
+public class LowStockMonitor implements LowStockListener {
+
+	private final TicketDAO ticketDAO;
+	private final InventoryFeed feed;
+	private final ExecutorService worker;
+
+	// Statistics
+	private final LongAdder alerts = new LongAdder();
+	private final LongAdder createdTickets = new LongAdder();
+	private final LongAdder failedTickets = new LongAdder();
+
+	/**
+	 * @param ticketDAO the DAO used to open the restock tickets
+	 * @param feed      the feed used to alert the clients watching a location
+	 */
+	LowStockMonitor(TicketDAO ticketDAO, InventoryFeed feed) {
+		this.ticketDAO = ticketDAO;
+		this.feed = feed;
+		this.worker = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "Low stock monitor");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void stockLow(InventoryItem item) {
+		alerts.increment();
+		worker.execute(() -> handleLowStock(item));
+	}
+
+	private void handleLowStock(InventoryItem item) {
+		try {
+			// A ticket may be left open from before a restart or a reload of the location
+			if (!ticketDAO.hasOpenTicket(item.getEkrutLocation(), item.getItem().getItemId())
+					&& ticketDAO.createRestockTicket(item.getEkrutLocation(), item.getItem().getItemId()))
+				createdTickets.increment();
+		} catch (RuntimeException e) {
+			failedTickets.increment();
+		}
+
+		feed.publish(item.getEkrutLocation(), new LowStockAlert(item));
+	}
+
+	/**
+	 * @return the number of items reported below their threshold
+	 */
+	public long getAlertCount() {
+		return alerts.sum();
+	}
+
+	/**
+	 * @return the number of restock tickets opened
+	 */
+	public long getCreatedTicketCount() {
+		return createdTickets.sum();
+	}
+
+	/**
+	 * @return the number of restock tickets that failed to be opened
+	 */
+	public long getFailedTicketCount() {
+		return failedTickets.sum();
+	}
+
+	/**
+	 * Stops the monitor thread. Alerts still queued are dropped.
+	 */
+	void close() {
+		worker.shutdownNow();
+	}
+}
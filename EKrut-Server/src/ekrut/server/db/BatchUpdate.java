@@ -0,0 +1,39 @@
+package ekrut.server.db;
+
+import java.util.Collection;
+
+/**
+ * An update statement and the rows to execute it for, one of the batches run
+ * together by {@link DBController#executeInTransaction(BatchUpdate...)}.
+ *
+ * @param <T> the type of the rows
+ */
+public class BatchUpdate<T> {
+
+	private final String query;
+	private final Collection<T> rows;
+	private final ParameterBinder<T> binder;
+
+	/**
+	 * @param query  the SQL update to use as a template for the statement
+	 * @param rows   the rows to update
+	 * @param binder sets the parameters of the statement from a single row
+	 */
+	public BatchUpdate(String query, Collection<T> rows, ParameterBinder<T> binder) {
+		this.query = query;
+		this.rows = rows;
+		this.binder = binder;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public Collection<T> getRows() {
+		return rows;
+	}
+
+	public ParameterBinder<T> getBinder() {
+		return binder;
+	}
+}
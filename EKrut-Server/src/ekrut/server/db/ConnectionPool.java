@@ -0,0 +1,408 @@
+package ekrut.server.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of JDBC connections to a MySQL database.
+ *
+ * At most {@code maxSize} connections are lent out at any time, callers beyond
+ * that wait up to the borrow timeout for one to be released. Connections that
+ * sat idle for longer than the idle timeout are closed by a background task,
+ * as long as at least {@code minSize} connections remain open. Connections that
+ * were idle for a while are validated before being handed out again.
+ *
+ * Each connection keeps its own {@link StatementCache} so that frequently used
+ * queries are only prepared once per connection.
+ *
+ * The pool tracks which connections are lent out and which statements are
+ * handed out on them, so releasing a connection or handing back a statement a
+ * second time has no effect. A double release would otherwise give the same
+ * connection to two borrowers and let more than {@code maxSize} out at once.
+ */
+public class ConnectionPool {
+
+	// Connections that were idle for less than this are not re-validated on borrow
+	private static final long VALIDATION_INTERVAL_MILLIS = 5000;
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	private final String url, username, password;
+	private final int minSize, maxSize;
+	private final long idleTimeoutMillis, borrowTimeoutMillis;
+	private final int statementCacheSize;
+
+	private final Semaphore permits;
+	private final ConcurrentLinkedDeque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+	private final ConcurrentHashMap<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+	private final Set<Connection> leased = ConcurrentHashMap.newKeySet();
+	// The connection of every statement handed out and not handed back yet
+	private final ConcurrentHashMap<PreparedStatement, Connection> statementConnections = new ConcurrentHashMap<>();
+	private final AtomicInteger openCount = new AtomicInteger();
+	private final AtomicInteger activeCount = new AtomicInteger();
+	private final AtomicInteger peakActiveCount = new AtomicInteger();
+	private ScheduledExecutorService evictor;
+	private volatile boolean closed;
+
+	// Statistics
+	private final LongAdder borrowCount = new LongAdder();
+	private final LongAdder waitCount = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final LongAdder timeoutCount = new LongAdder();
+	private final LongAdder statementHits = new LongAdder();
+	private final LongAdder statementMisses = new LongAdder();
+	private final LongAdder statementEvictions = new LongAdder();
+
+	/**
+	 * An idle connection along with the time it was returned to the pool.
+	 */
+	private static class IdleConnection {
+		final Connection conn;
+		final long idleSince;
+
+		IdleConnection(Connection conn) {
+			this.conn = conn;
+			this.idleSince = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Constructs a new connection pool. Does not open any connection until
+	 * {@link #start()} is called.
+	 *
+	 * @param url                 the URL of the database
+	 * @param username            the username to use for the login
+	 * @param password            the password to use for the login
+	 * @param minSize             the number of connections kept open even when idle
+	 * @param maxSize             the maximum number of connections open at once
+	 * @param idleTimeoutMillis   how long a connection above minSize may stay idle before it is closed
+	 * @param borrowTimeoutMillis how long {@link #borrow()} waits for a free connection
+	 * @param statementCacheSize  the number of prepared statements cached per connection, 0 to disable caching
+	 */
+	public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+			long idleTimeoutMillis, long borrowTimeoutMillis, int statementCacheSize) {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Opens the minimum number of connections and starts the idle evictor.
+	 *
+	 * @throws SQLException if a connection could not be opened
+	 */
+	public void start() throws SQLException {
+		closed = false;
+		try {
+			for (int i = 0; i < minSize; i++)
+				idle.push(new IdleConnection(open()));
+		} catch (SQLException e) {
+			close();
+			throw e;
+		}
+
+		evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ConnectionPool evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1000, idleTimeoutMillis / 2);
+		evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Closes all idle connections and stops the idle evictor. Connections that
+	 * are currently borrowed are closed when they are released.
+	 */
+	public void close() {
+		closed = true;
+		if (evictor != null) {
+			evictor.shutdownNow();
+			evictor = null;
+		}
+
+		IdleConnection c;
+		while ((c = idle.poll()) != null)
+			discard(c.conn);
+	}
+
+	/**
+	 * Borrows a connection from the pool, waiting up to the borrow timeout for
+	 * one to become available. The connection must be given back through
+	 * {@link #release(Connection)}.
+	 *
+	 * @return an open connection
+	 * @throws SQLException if the pool is closed, the timeout expired or a new
+	 *                      connection could not be opened
+	 */
+	public Connection borrow() throws SQLException {
+		if (closed)
+			throw new SQLException("Connection pool is closed");
+
+		if (!permits.tryAcquire()) {
+			long start = System.nanoTime();
+			boolean acquired;
+			try {
+				acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for a connection", e);
+			}
+			waitCount.increment();
+			waitNanos.add(System.nanoTime() - start);
+			if (!acquired) {
+				timeoutCount.increment();
+				throw new SQLException("Timed out waiting for a connection after " + borrowTimeoutMillis + "ms");
+			}
+		}
+
+		try {
+			Connection conn = takeIdle();
+			if (conn == null)
+				conn = open();
+
+			leased.add(conn);
+			borrowCount.increment();
+			int active = activeCount.incrementAndGet();
+			peakActiveCount.accumulateAndGet(active, Math::max);
+			return conn;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a borrowed connection to the pool. Does nothing if the connection
+	 * is not currently borrowed, e.g. when it was already released.
+	 *
+	 * @param conn the connection previously returned by {@link #borrow()}, or null
+	 */
+	public void release(Connection conn) {
+		if (conn == null || !leased.remove(conn))
+			return;
+
+		activeCount.decrementAndGet();
+		try {
+			if (closed || conn.isClosed())
+				discard(conn);
+			else
+				idle.push(new IdleConnection(conn));
+		} catch (SQLException e) {
+			discard(conn);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Prepares a statement on a borrowed connection, reusing a cached statement
+	 * for the same SQL text when there is one. The statement must be handed back
+	 * through {@link #releaseStatement(PreparedStatement)}.
+	 *
+	 * @param conn a connection currently borrowed from this pool
+	 * @param sql  the SQL query to use as a template for the statement
+	 * @return     the prepared statement representing the SQL query
+	 * @throws SQLException if the statement could not be prepared
+	 */
+	public PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+		StatementCache cache = statementCaches.get(conn);
+		PreparedStatement p = cache == null ? conn.prepareStatement(sql) : cache.get(sql);
+		statementConnections.put(p, conn);
+		return p;
+	}
+
+	/**
+	 * Hands back a statement obtained from {@link #prepareStatement(Connection, String)}.
+	 * Cached statements are kept open for reuse, others are closed. Does nothing
+	 * if the statement was already handed back.
+	 *
+	 * @param p the statement to hand back
+	 * @return  the connection the statement was prepared on, or null if it was
+	 *          already handed back
+	 */
+	public Connection releaseStatement(PreparedStatement p) {
+		Connection conn = statementConnections.remove(p);
+		if (conn == null)
+			return null;
+
+		StatementCache cache = statementCaches.get(conn);
+		if (cache != null) {
+			cache.release(p);
+		} else {
+			try {
+				p.close();
+			} catch (SQLException e) {}
+		}
+		return conn;
+	}
+
+	/**
+	 * Takes the most recently used idle connection, skipping over connections
+	 * that fail validation.
+	 *
+	 * @return a valid idle connection, or null if there is none
+	 */
+	private Connection takeIdle() {
+		IdleConnection c;
+		while ((c = idle.poll()) != null) {
+			if (System.currentTimeMillis() - c.idleSince < VALIDATION_INTERVAL_MILLIS)
+				return c.conn;
+
+			try {
+				if (c.conn.isValid(VALIDATION_TIMEOUT_SECONDS))
+					return c.conn;
+			} catch (SQLException e) {}
+			discard(c.conn);
+		}
+		return null;
+	}
+
+	/**
+	 * Closes connections that have been idle for longer than the idle timeout,
+	 * leaving at least minSize connections open.
+	 */
+	private void evictIdle() {
+		long now = System.currentTimeMillis();
+		// The oldest idle connections are at the tail of the deque
+		Iterator<IdleConnection> it = idle.descendingIterator();
+		while (it.hasNext() && openCount.get() > minSize) {
+			IdleConnection c = it.next();
+			if (now - c.idleSince < idleTimeoutMillis)
+				break;
+			if (idle.removeLastOccurrence(c))
+				discard(c.conn);
+		}
+	}
+
+	private Connection open() throws SQLException {
+		Connection conn = DriverManager.getConnection(url, username, password);
+		openCount.incrementAndGet();
+		if (statementCacheSize > 0)
+			statementCaches.put(conn,
+					new StatementCache(conn, statementCacheSize, statementHits, statementMisses, statementEvictions));
+		return conn;
+	}
+
+	private void discard(Connection conn) {
+		openCount.decrementAndGet();
+		// Closing the connection also closes its cached statements
+		statementCaches.remove(conn);
+		try {
+			conn.close();
+		} catch (SQLException e) {}
+	}
+
+	/**
+	 * @return the number of connections currently open, borrowed or idle
+	 */
+	public int getOpenCount() {
+		return openCount.get();
+	}
+
+	/**
+	 * @return the number of connections currently borrowed
+	 */
+	public int getActiveCount() {
+		return activeCount.get();
+	}
+
+	/**
+	 * @return the highest number of connections that were borrowed at once
+	 */
+	public int getPeakActiveCount() {
+		return peakActiveCount.get();
+	}
+
+	/**
+	 * @return the number of idle connections
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * @return the fraction of the maximum pool size currently borrowed, between 0 and 1
+	 */
+	public double getUtilization() {
+		return (double) activeCount.get() / maxSize;
+	}
+
+	/**
+	 * @return the total number of successful borrows
+	 */
+	public long getBorrowCount() {
+		return borrowCount.sum();
+	}
+
+	/**
+	 * @return the number of borrows that had to wait for a connection to be released
+	 */
+	public long getWaitCount() {
+		return waitCount.sum();
+	}
+
+	/**
+	 * @return the total time spent waiting for a connection, in milliseconds
+	 */
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+	}
+
+	/**
+	 * @return the number of borrows that timed out
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.sum();
+	}
+
+	/**
+	 * @return the number of statements served from a statement cache
+	 */
+	public long getStatementCacheHits() {
+		return statementHits.sum();
+	}
+
+	/**
+	 * @return the number of statements that had to be prepared
+	 */
+	public long getStatementCacheMisses() {
+		return statementMisses.sum();
+	}
+
+	/**
+	 * @return the number of cached statements closed to make room for others
+	 */
+	public long getStatementCacheEvictions() {
+		return statementEvictions.sum();
+	}
+
+	/**
+	 * @return the fraction of statements served from a statement cache, between 0 and 1
+	 */
+	public double getStatementCacheHitRate() {
+		long hits = statementHits.sum();
+		long total = hits + statementMisses.sum();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+}
@@ -1,33 +1,79 @@
 package ekrut.server.db;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
 
 /**
- * Database controller that manages the connection to a MySQL database.
+ * Database controller that manages the connections to a MySQL database.
+ * 
+ * Connections are taken from a bounded {@link ConnectionPool}, so queries
+ * coming from different clients can run in parallel. Each prepared statement
+ * holds on to its connection until it is executed or closed through this
+ * controller.
+ * 
+ * The tables read and written by the DAOs are created by db/schema.sql.
  * 
  * @author Almog Khaikin
  */
 public class DBController {
 	
-	private Connection conn;
-	private final String url, username, password;
+	public static final int DEFAULT_MIN_POOL_SIZE = 2;
+	public static final int DEFAULT_MAX_POOL_SIZE = 16;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+	public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 5_000;
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+	public static final int DEFAULT_BATCH_SIZE = 100;
 	
 	/**
-	 * Constructs a new DBController with the specified parameters. Does not connect
-	 * to the database.
+	 * Fetch size that makes MySQL Connector/J send the rows of a result one at a
+	 * time instead of loading the whole result into memory.
+	 */
+	public static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+	
+	private final ConnectionPool pool;
+	
+	/**
+	 * Constructs a new DBController with the specified parameters and the default
+	 * pool settings. Does not connect to the database.
 	 * 
 	 * @param url      the URL of the database
 	 * @param username the username to use for the login
 	 * @param password the password to use for the login
 	 */
 	public DBController(String url, String username, String password) {
-		this.url = url;
-		this.username = username;
-		this.password = password;
+		this(url, username, password, DEFAULT_MIN_POOL_SIZE, DEFAULT_MAX_POOL_SIZE,
+				DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_BORROW_TIMEOUT_MILLIS, DEFAULT_STATEMENT_CACHE_SIZE);
+	}
+	
+	/**
+	 * Constructs a new DBController with the specified parameters. Does not connect
+	 * to the database.
+	 * 
+	 * @param url                 the URL of the database
+	 * @param username            the username to use for the login
+	 * @param password            the password to use for the login
+	 * @param minPoolSize         the number of connections kept open even when idle
+	 * @param maxPoolSize         the maximum number of connections open at once
+	 * @param idleTimeoutMillis   how long an extra connection may stay idle before it is closed
+	 * @param borrowTimeoutMillis how long to wait for a free connection before failing
+	 * @param statementCacheSize  the number of prepared statements cached per connection, 0 to disable caching
+	 */
+	public DBController(String url, String username, String password, int minPoolSize, int maxPoolSize,
+			long idleTimeoutMillis, long borrowTimeoutMillis, int statementCacheSize) {
+		this.pool = new ConnectionPool(url, username, password, minPoolSize, maxPoolSize,
+				idleTimeoutMillis, borrowTimeoutMillis, statementCacheSize);
 	}
 	
 	/**
@@ -38,7 +84,7 @@ public class DBController {
 	 */
 	public boolean connect() {
 		try {
-			conn = DriverManager.getConnection(url, username, password);
+			pool.start();
 			return true;
 		} catch (SQLException e) {
 			return false;
@@ -46,45 +92,159 @@ public class DBController {
 	}
 	
 	/**
-	 * Closes the connection to the database.
+	 * Closes the connections to the database.
 	 */
 	public void close() {
-		try {
-			conn.close();
-			conn = null;
-		} catch (SQLException e) {}
+		pool.close();
+	}
+	
+	/**
+	 * Returns the connection pool used by this controller, mainly for its statistics.
+	 * 
+	 * @return the connection pool
+	 */
+	public ConnectionPool getPool() {
+		return pool;
 	}
 	
 	/**
 	 * Retrieves a PreparedStatement that can be used to send a query to the DB.
+	 * Statements are cached per connection by their SQL text, so the same query
+	 * is not prepared again every time. The statement must be passed to {@link #executeQuery(PreparedStatement)},
+	 * {@link #executeUpdate(PreparedStatement)} or {@link #closeStatement(PreparedStatement)}
+	 * so that its connection is returned to the pool.
 	 * 
 	 * @param query the SQL query to use as a template for the statement
 	 * @return      the prepared statement representing the SQL query
 	 */
 	public PreparedStatement getPreparedStatement(String query) {
+		Connection conn = null;
 		try {
-			return conn.prepareStatement(query);
+			conn = pool.borrow();
+			return pool.prepareStatement(conn, query);
 		} catch (SQLException e) {
+			pool.release(conn);
 			throw new RuntimeException(e);
 		}
 	}
 	
 	/**
-	 * Executes a PreparedStatement that is intended to return a result.
+	 * Hands back a PreparedStatement without executing it and returns its
+	 * connection to the pool. Cached statements are kept open for reuse. Closing
+	 * a statement that was already closed, or executed, has no effect.
+	 * 
+	 * @param p the prepared statement to close
+	 */
+	public void closeStatement(PreparedStatement p) {
+		pool.release(pool.releaseStatement(p));
+	}
+	
+	/**
+	 * Executes a PreparedStatement that is intended to return a result. The whole
+	 * result is loaded into memory so that it stays readable after the statement
+	 * is handed back, use {@link #stream(PreparedStatement, int, RowMapper)} for
+	 * large results.
 	 * 
 	 * @param p the prepared statement to execute
 	 * @return  ResultSet representing the result of the query
 	 */
 	public ResultSet executeQuery(PreparedStatement p) {
-		try {
-			ResultSet result = p.executeQuery();
-			p.close();
+		try (ResultSet rs = p.executeQuery()) {
+			CachedRowSet result = RowSetProvider.newFactory().createCachedRowSet();
+			result.populate(rs);
 			return result;
 		} catch (SQLException e) {
 			throw new RuntimeException(e);
+		} finally {
+			closeStatement(p);
 		}
 	}
 	
+	/**
+	 * Executes a PreparedStatement and maps every row of the result to an object.
+	 * 
+	 * @param <T>    the type of the objects the rows are mapped to
+	 * @param p      the prepared statement to execute
+	 * @param mapper maps a single row to an object
+	 * @return       the mapped rows, in the order they were returned
+	 */
+	public <T> ArrayList<T> query(PreparedStatement p, RowMapper<T> mapper) {
+		try (ResultSet rs = p.executeQuery()) {
+			ArrayList<T> result = new ArrayList<>();
+			while (rs.next())
+				result.add(mapper.mapRow(rs));
+			return result;
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		} finally {
+			closeStatement(p);
+		}
+	}
+	
+	/**
+	 * Executes a PreparedStatement and returns its result as a lazily populated
+	 * stream, so that large results can be processed one row at a time. The
+	 * statement and its connection are held until the stream is closed, so the
+	 * stream should be used in a try-with-resources block:
+	 * 
+	 * <pre>
+	 * try (Stream&lt;Integer&gt; ids = db.stream(p, DBController.STREAMING_FETCH_SIZE, rs -&gt; rs.getInt(1))) {
+	 *     ids.forEach(...);
+	 * }
+	 * </pre>
+	 * 
+	 * @param <T>       the type of the objects the rows are mapped to
+	 * @param p         the prepared statement to execute
+	 * @param fetchSize the number of rows to fetch at a time, see {@link #STREAMING_FETCH_SIZE}
+	 * @param mapper    maps a single row to an object
+	 * @return          a stream of the mapped rows that must be closed after use
+	 */
+	public <T> Stream<T> stream(PreparedStatement p, int fetchSize, RowMapper<T> mapper) {
+		ResultSet rs;
+		try {
+			p.setFetchSize(fetchSize);
+			rs = p.executeQuery();
+		} catch (SQLException e) {
+			resetFetchSize(p);
+			closeStatement(p);
+			throw new RuntimeException(e);
+		}
+		
+		Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action) {
+				try {
+					if (!rs.next())
+						return false;
+					action.accept(mapper.mapRow(rs));
+					return true;
+				} catch (SQLException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		
+		return StreamSupport.stream(rows, false).onClose(() -> {
+			try {
+				rs.close();
+			} catch (SQLException e) {
+			} finally {
+				resetFetchSize(p);
+				closeStatement(p);
+			}
+		});
+	}
+	
+	/**
+	 * Restores the default fetch size of a statement that may be cached and
+	 * reused by another query.
+	 */
+	private static void resetFetchSize(PreparedStatement p) {
+		try {
+			p.setFetchSize(0);
+		} catch (SQLException e) {}
+	}
+	
 	/**
 	 * Executes a PreparedStatement that is intended to update the database.
 	 * 
@@ -93,11 +253,152 @@ public class DBController {
 	 */
 	public int executeUpdate(PreparedStatement p) {
 		try {
-			int result = p.executeUpdate();
-			p.close();
-			return result;
+			return p.executeUpdate();
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		} finally {
+			closeStatement(p);
+		}
+	}
+	
+	/**
+	 * Executes an update statement once for every row, sending the rows to the DB
+	 * in batches of up to batchSize. Each batch runs in its own transaction, so a
+	 * failed batch is rolled back while earlier batches stay committed. Adding
+	 * {@code rewriteBatchedStatements=true} to the URL lets MySQL Connector/J send
+	 * each batch as a single statement.
+	 * 
+	 * @param <T>       the type of the rows
+	 * @param query     the SQL update to use as a template for the statement
+	 * @param rows      the rows to update
+	 * @param binder    sets the parameters of the statement from a single row
+	 * @param batchSize the maximum number of rows sent in a single batch
+	 * @return          The number of rows in the database that were updated
+	 */
+	public <T> int executeBatch(String query, Collection<T> rows, ParameterBinder<T> binder, int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+		if (rows.isEmpty())
+			return 0;
+		
+		PreparedStatement p = getPreparedStatement(query);
+		Connection conn = null;
+		try {
+			conn = p.getConnection();
+			conn.setAutoCommit(false);
+			
+			int updated = 0, pending = 0;
+			for (T row : rows) {
+				binder.bind(p, row);
+				p.addBatch();
+				if (++pending == batchSize) {
+					updated += commitBatch(conn, p);
+					pending = 0;
+				}
+			}
+			if (pending > 0)
+				updated += commitBatch(conn, p);
+			return updated;
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		} finally {
+			try {
+				if (conn != null)
+					conn.setAutoCommit(true);
+			} catch (SQLException e) {}
+			closeStatement(p);
+		}
+	}
+	
+	/**
+	 * Executes the pending batch of a statement and commits it, rolling it back
+	 * if it fails.
+	 * 
+	 * @return the number of rows updated by the batch
+	 */
+	private static int commitBatch(Connection conn, PreparedStatement p) throws SQLException {
+		try {
+			int[] counts = p.executeBatch();
+			conn.commit();
+			return countUpdated(counts);
+		} catch (SQLException e) {
+			p.clearBatch();
+			try {
+				conn.rollback();
+			} catch (SQLException ignored) {}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Executes several batches of updates in a single transaction on a single
+	 * connection, e.g. to insert rows into several tables at once. Either every
+	 * row of every batch is written or, if any statement fails, none is.
+	 * 
+	 * @param batches the batches to execute, in order
+	 * @return        The number of rows in the database that were updated
+	 */
+	public int executeInTransaction(BatchUpdate<?>... batches) {
+		Connection conn;
+		try {
+			conn = pool.borrow();
 		} catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
+		
+		try {
+			conn.setAutoCommit(false);
+			int updated = 0;
+			for (BatchUpdate<?> batch : batches)
+				updated += addAndExecute(conn, batch);
+			conn.commit();
+			return updated;
+		} catch (SQLException e) {
+			try {
+				conn.rollback();
+			} catch (SQLException ignored) {}
+			throw new RuntimeException(e);
+		} catch (RuntimeException e) {
+			try {
+				conn.rollback();
+			} catch (SQLException ignored) {}
+			throw e;
+		} finally {
+			try {
+				conn.setAutoCommit(true);
+			} catch (SQLException e) {}
+			pool.release(conn);
+		}
+	}
+	
+	private <T> int addAndExecute(Connection conn, BatchUpdate<T> batch) throws SQLException {
+		if (batch.getRows().isEmpty())
+			return 0;
+		
+		PreparedStatement p = pool.prepareStatement(conn, batch.getQuery());
+		try {
+			for (T row : batch.getRows()) {
+				batch.getBinder().bind(p, row);
+				p.addBatch();
+			}
+			return countUpdated(p.executeBatch());
+		} catch (SQLException e) {
+			p.clearBatch();
+			throw e;
+		} finally {
+			pool.releaseStatement(p);
+		}
+	}
+	
+	private static int countUpdated(int[] counts) {
+		int updated = 0;
+		for (int count : counts) {
+			// The driver may not report how many rows a successful statement changed
+			if (count == PreparedStatement.SUCCESS_NO_INFO)
+				updated++;
+			else if (count > 0)
+				updated += count;
+		}
+		return updated;
 	}
 }
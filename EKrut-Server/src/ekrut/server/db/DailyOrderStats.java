@@ -0,0 +1,78 @@
+package ekrut.server.db;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+import ekrut.entity.Order;
+import ekrut.entity.OrderItem;
+
+/**
+ * The orders a single facility (ekrutLocation) took on a single day. Instances
+ * are immutable; adding an order makes a new one.
+ */
+public class DailyOrderStats {
+
+	private final String ekrutLocation;
+	private final LocalDate date;
+	private final int numberOfOrders;
+	private final int itemsSold;
+	private final long totalAmount;
+
+	public DailyOrderStats(String ekrutLocation, LocalDate date, int numberOfOrders, int itemsSold,
+			long totalAmount) {
+		this.ekrutLocation = ekrutLocation;
+		this.date = date;
+		this.numberOfOrders = numberOfOrders;
+		this.itemsSold = itemsSold;
+		this.totalAmount = totalAmount;
+	}
+
+	/**
+	 * Sums up orders by facility and day.
+	 *
+	 * @param orders the orders, each with its date set
+	 * @return       the stats of every facility and day the orders were taken on
+	 */
+	public static Collection<DailyOrderStats> of(Collection<Order> orders) {
+		LinkedHashMap<String, DailyOrderStats> stats = new LinkedHashMap<>();
+		for (Order order : orders) {
+			int itemsSold = 0;
+			for (OrderItem item : order.getItems())
+				itemsSold += item.getItemQuantity();
+			stats.merge(order.getEkrutLocation() + '@' + order.getDate(), new DailyOrderStats(
+					order.getEkrutLocation(), order.getDate(), 1, itemsSold, order.getSumAmount()),
+					DailyOrderStats::plus);
+		}
+		return stats.values();
+	}
+
+	/**
+	 * @param other the stats of the same facility and day
+	 * @return      the stats of both together
+	 */
+	public DailyOrderStats plus(DailyOrderStats other) {
+		return new DailyOrderStats(ekrutLocation, date, numberOfOrders + other.numberOfOrders,
+				itemsSold + other.itemsSold, totalAmount + other.totalAmount);
+	}
+
+	public String getEkrutLocation() {
+		return ekrutLocation;
+	}
+
+	public LocalDate getDate() {
+		return date;
+	}
+
+	public int getNumberOfOrders() {
+		return numberOfOrders;
+	}
+
+	public int getItemsSold() {
+		return itemsSold;
+	}
+
+	public long getTotalAmount() {
+		return totalAmount;
+	}
+}
@@ -0,0 +1,673 @@
+package ekrut.server.db;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import ekrut.entity.InventoryItem;
+import ekrut.entity.InventoryItemUpdate;
+import ekrut.entity.Item;
+
+/**
+ * An in-memory cache of the inventory of every machine, keyed by ekrutLocation
+ * and itemId, in front of an {@link InventoryItemDAO}.
+ *
+ * The inventory of a location is loaded from the database the first time it is
+ * requested and is served from memory from then on. Quantity changes are applied
+ * in memory and written to the database in the background (write-behind), so
+ * several changes to the same item between two flushes cost a single update.
+ * The database never lags the cache by more than the maximum staleness window,
+ * and all pending changes are flushed when the cache is closed or the JVM shuts
+ * down.
+ *
+ * Orders take stock through {@link #reserve(String, int[], int[])}, which
+ * atomically holds the requested units so that concurrent orders for the last
+ * units of an item never oversell. Stock changes of a location are made one at
+ * a time under the lock of that location, so orders on different machines never
+ * wait for each other, and {@link InventoryChangeListener}s see the changes of
+ * a location in the order they were made. Plain reads never take the lock.
+ *
+ * Every change to the available quantities of a location gives it a new, higher
+ * version, and the latest changes are kept so that a client holding an older
+ * copy can be sent only what changed since its version (see
+ * {@link #getChanges(String, long)}) instead of the whole inventory.
+ *
+ * Each change is also checked against the threshold of the changed items, so
+ * {@link LowStockListener}s learn about low stock as it happens instead of by
+ * scanning the inventory. An item is low once its available quantity is below
+ * its threshold, and is restored only once it is back at the threshold plus a
+ * margin, so a machine selling and cancelling around the threshold is reported
+ * once.
+ *
+ * The server must be the only writer of the inventory table while the cache is
+ * in use.
+ */
+public class InventoryCache {
+
+	public static final long DEFAULT_MAX_STALENESS_MILLIS = 2000;
+
+	/**
+	 * The number of changes kept per location to answer {@link #getChanges(String, long)}.
+	 */
+	public static final int CHANGE_LOG_SIZE = 256;
+
+	/**
+	 * How far above its threshold, in percent of the threshold and at least one
+	 * unit, a low item must be restocked before it is considered restored.
+	 */
+	public static final int LOW_STOCK_HYSTERESIS_PERCENT = 20;
+
+	private final InventoryItemDAO dao;
+	private final long maxStalenessMillis;
+	private final ConcurrentHashMap<String, LocationInventory> locations = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService flusher;
+	private final Thread shutdownHook;
+	private final CopyOnWriteArrayList<InventoryChangeListener> listeners = new CopyOnWriteArrayList<>();
+	private final CopyOnWriteArrayList<LowStockListener> lowStockListeners = new CopyOnWriteArrayList<>();
+	// Starts from the clock, so versions handed out before a restart are older
+	// than any handed out after it
+	private final AtomicLong versions = new AtomicLong(System.currentTimeMillis() << 16);
+
+	// Statistics
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder flushedItems = new LongAdder();
+	private final LongAdder failedFlushes = new LongAdder();
+	private final LongAdder rejectedReservations = new LongAdder();
+
+	/**
+	 * A cached inventory item. The quantity is changed in memory, the rest is
+	 * written through to the database.
+	 *
+	 * The stock is a single long holding both the units available for new orders
+	 * (low 32 bits) and the units reserved by orders not committed yet (high 32
+	 * bits), so both can be changed together with one compare-and-set. The
+	 * quantity physically in the machine is their sum.
+	 */
+	static class Entry {
+		final Item item;
+		final AtomicLong stock;
+		volatile int threshold;
+		// Whether the item was reported low, guarded by the lock of the location
+		boolean low;
+
+		Entry(InventoryItem inventoryItem) {
+			this.item = inventoryItem.getItem();
+			this.stock = new AtomicLong(stock(inventoryItem.getItemQuantity(), 0));
+			this.threshold = inventoryItem.getItemThreshold();
+		}
+
+		int available() {
+			return available(stock.get());
+		}
+
+		int physical() {
+			long s = stock.get();
+			return available(s) + reserved(s);
+		}
+
+		/**
+		 * Sets the quantity physically in the machine, keeping the units that are
+		 * currently reserved.
+		 */
+		void setPhysical(int quantity) {
+			long s;
+			do {
+				s = stock.get();
+			} while (!stock.compareAndSet(s, stock(Math.max(0, quantity - reserved(s)), reserved(s))));
+		}
+
+		/**
+		 * Moves units from available to reserved.
+		 *
+		 * @return false if fewer units are available
+		 */
+		boolean reserve(int units) {
+			long s;
+			do {
+				s = stock.get();
+				if (available(s) < units)
+					return false;
+			} while (!stock.compareAndSet(s, stock(available(s) - units, reserved(s) + units)));
+			return true;
+		}
+
+		/**
+		 * Drops reserved units, either because they were sold or because they
+		 * are returned to the available units.
+		 */
+		void unreserve(int units, boolean sold) {
+			long s;
+			do {
+				s = stock.get();
+			} while (!stock.compareAndSet(s, stock(available(s) + (sold ? 0 : units), reserved(s) - units)));
+		}
+
+		static long stock(int available, int reserved) {
+			return ((long) reserved << 32) | (available & 0xFFFFFFFFL);
+		}
+
+		static int available(long stock) {
+			return (int) stock;
+		}
+
+		static int reserved(long stock) {
+			return (int) (stock >>> 32);
+		}
+	}
+
+	/**
+	 * A change made to the available quantities of a location.
+	 */
+	static class Change {
+		final long version;
+		final InventoryItemUpdate[] updates;
+
+		Change(long version, InventoryItemUpdate[] updates) {
+			this.version = version;
+			this.updates = updates;
+		}
+	}
+
+	/**
+	 * The cached inventory of a single location along with the items whose
+	 * quantity was changed since the last flush. Stock changes are made while
+	 * holding the lock of this object.
+	 *
+	 * The change log holds the changes made after oldestVersion, so the changes
+	 * since any version from oldestVersion on can be computed from it.
+	 */
+	static class LocationInventory {
+		final String ekrutLocation;
+		final ConcurrentHashMap<Integer, Entry> items = new ConcurrentHashMap<>();
+		final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+		final ArrayDeque<Change> changeLog = new ArrayDeque<>();
+		volatile long version;
+		long oldestVersion;
+
+		LocationInventory(String ekrutLocation, InventoryItem[] inventoryItems, long version) {
+			this.ekrutLocation = ekrutLocation;
+			this.version = version;
+			this.oldestVersion = version;
+			for (InventoryItem inventoryItem : inventoryItems)
+				items.put(inventoryItem.getItem().getItemId(), new Entry(inventoryItem));
+		}
+	}
+
+	public InventoryCache(InventoryItemDAO dao) {
+		this(dao, DEFAULT_MAX_STALENESS_MILLIS);
+	}
+
+	/**
+	 * Constructs a new inventory cache and starts flushing changes in the background.
+	 *
+	 * @param dao                the DAO used to load and store the inventory
+	 * @param maxStalenessMillis the longest time a change may stay in memory before it is written to the database
+	 */
+	public InventoryCache(InventoryItemDAO dao, long maxStalenessMillis) {
+		if (maxStalenessMillis < 1)
+			throw new IllegalArgumentException("Maximum staleness must be positive");
+
+		this.dao = dao;
+		this.maxStalenessMillis = maxStalenessMillis;
+		this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "InventoryCache flusher");
+			t.setDaemon(true);
+			return t;
+		});
+		flusher.scheduleWithFixedDelay(this::flushQuietly, maxStalenessMillis, maxStalenessMillis,
+				TimeUnit.MILLISECONDS);
+
+		// Make sure changes held in memory reach the database when the server is stopped
+		shutdownHook = new Thread(this::flushQuietly, "InventoryCache shutdown flush");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Returns the inventory of a location, loading it from the database if it
+	 * is not cached yet.
+	 *
+	 * @param ekrutLocation the machine whose inventory is requested
+	 * @return              a copy of every inventory item in the location
+	 */
+	public InventoryItem[] getItems(String ekrutLocation) {
+		LocationInventory inventory = getLocation(ekrutLocation);
+		ArrayList<InventoryItem> result = new ArrayList<>(inventory.items.size());
+		for (Entry e : inventory.items.values())
+			result.add(toInventoryItem(e, ekrutLocation));
+		return result.toArray(new InventoryItem[0]);
+	}
+
+	/**
+	 * Returns a single inventory item.
+	 *
+	 * @param ekrutLocation the machine holding the item
+	 * @param itemId        the ID of the item
+	 * @return              a copy of the inventory item, or null if the location does not hold the item
+	 */
+	public InventoryItem getItem(String ekrutLocation, int itemId) {
+		Entry e = getLocation(ekrutLocation).items.get(itemId);
+		return e == null ? null : toInventoryItem(e, ekrutLocation);
+	}
+
+	/**
+	 * Sets the quantity of an item in memory. The change is written to the
+	 * database by the next flush.
+	 *
+	 * @param ekrutLocation the machine holding the item
+	 * @param itemId        the ID of the item
+	 * @param quantity      the new quantity
+	 * @return              true if the location holds the item, false otherwise
+	 */
+	public boolean setQuantity(String ekrutLocation, int itemId, int quantity) {
+		LocationInventory inventory = getLocation(ekrutLocation);
+		Entry e = inventory.items.get(itemId);
+		if (e == null)
+			return false;
+
+		synchronized (inventory) {
+			int old = e.available();
+			e.setPhysical(quantity);
+			inventory.dirty.add(itemId);
+			recordChanged(inventory, new InventoryItemUpdate[] { new InventoryItemUpdate(itemId, old, e.available()) });
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the quantities of many items in the same location in memory.
+	 *
+	 * @param ekrutLocation the machine holding the items
+	 * @param itemIds       the IDs of the items
+	 * @param quantities    the new quantity of each item, in the same order as itemIds
+	 * @return              true if the location holds every item, false otherwise
+	 */
+	public boolean setQuantities(String ekrutLocation, int[] itemIds, int[] quantities) {
+		if (itemIds.length != quantities.length)
+			throw new IllegalArgumentException("Every item must have exactly one quantity.");
+
+		LocationInventory inventory = getLocation(ekrutLocation);
+		for (int itemId : itemIds)
+			if (!inventory.items.containsKey(itemId))
+				return false;
+
+		synchronized (inventory) {
+			InventoryItemUpdate[] updates = new InventoryItemUpdate[itemIds.length];
+			for (int i = 0; i < itemIds.length; i++) {
+				Entry e = inventory.items.get(itemIds[i]);
+				int old = e.available();
+				e.setPhysical(quantities[i]);
+				inventory.dirty.add(itemIds[i]);
+				updates[i] = new InventoryItemUpdate(itemIds[i], old, e.available());
+			}
+			recordChanged(inventory, updates);
+		}
+		return true;
+	}
+
+	/**
+	 * Atomically reserves stock for an order. Either every item is reserved or,
+	 * if any item does not have enough units available, nothing is. The reserved
+	 * units are no longer available to other orders until the reservation is
+	 * released.
+	 *
+	 * @param ekrutLocation the machine the order is taken from
+	 * @param itemIds       the IDs of the ordered items
+	 * @param quantities    the ordered quantity of each item, in the same order as itemIds
+	 * @return              the reservation, or null if there is not enough stock
+	 */
+	public StockReservation reserve(String ekrutLocation, int[] itemIds, int[] quantities) {
+		if (itemIds.length != quantities.length)
+			throw new IllegalArgumentException("Every item must have exactly one quantity.");
+
+		LocationInventory inventory = getLocation(ekrutLocation);
+		Entry[] entries = new Entry[itemIds.length];
+		for (int i = 0; i < itemIds.length; i++) {
+			if (quantities[i] < 0)
+				throw new IllegalArgumentException("Quantity must be a non-negative number.");
+			entries[i] = inventory.items.get(itemIds[i]);
+			if (entries[i] == null) {
+				rejectedReservations.increment();
+				return null;
+			}
+		}
+
+		synchronized (inventory) {
+			InventoryItemUpdate[] updates = new InventoryItemUpdate[entries.length];
+			for (int i = 0; i < entries.length; i++) {
+				int old = entries[i].available();
+				if (!entries[i].reserve(quantities[i])) {
+					// Give back what was already taken
+					for (int j = 0; j < i; j++)
+						entries[j].unreserve(quantities[j], false);
+					rejectedReservations.increment();
+					return null;
+				}
+				updates[i] = new InventoryItemUpdate(itemIds[i], old, entries[i].available());
+			}
+			recordChanged(inventory, updates);
+		}
+		return new StockReservation(this, inventory, itemIds.clone(), quantities.clone());
+	}
+
+	/**
+	 * Completes or cancels a reservation, called by {@link StockReservation}.
+	 */
+	void unreserve(LocationInventory inventory, int[] itemIds, int[] quantities, boolean sold) {
+		synchronized (inventory) {
+			InventoryItemUpdate[] updates = new InventoryItemUpdate[itemIds.length];
+			for (int i = 0; i < itemIds.length; i++) {
+				Entry e = inventory.items.get(itemIds[i]);
+				int old = e.available();
+				e.unreserve(quantities[i], sold);
+				if (sold)
+					inventory.dirty.add(itemIds[i]);
+				updates[i] = new InventoryItemUpdate(itemIds[i], old, e.available());
+			}
+			// Sold units were already not available, only released ones change what clients see
+			if (!sold)
+				recordChanged(inventory, updates);
+		}
+	}
+
+	/**
+	 * Registers a listener told about every change of an available quantity.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addChangeListener(InventoryChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeChangeListener(InventoryChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Gives the location a new version for the items whose available quantity
+	 * actually changed, logs the change and tells the listeners about it. Must
+	 * be called while holding the lock of the location.
+	 */
+	private void recordChanged(LocationInventory inventory, InventoryItemUpdate[] updates) {
+		ArrayList<InventoryItemUpdate> changed = new ArrayList<>(updates.length);
+		for (InventoryItemUpdate update : updates)
+			if (update.getItemOldQuantity() != update.getItemNewQuantity())
+				changed.add(update);
+		if (changed.isEmpty())
+			return;
+
+		InventoryItemUpdate[] result = changed.toArray(new InventoryItemUpdate[0]);
+		for (InventoryItemUpdate update : result)
+			checkThreshold(inventory, inventory.items.get(update.getItemId()));
+
+		long previousVersion = inventory.version;
+		long version = versions.incrementAndGet();
+		inventory.changeLog.addLast(new Change(version, result));
+		if (inventory.changeLog.size() > CHANGE_LOG_SIZE)
+			inventory.oldestVersion = inventory.changeLog.removeFirst().version;
+		inventory.version = version;
+
+		for (InventoryChangeListener listener : listeners)
+			listener.inventoryChanged(inventory.ekrutLocation, previousVersion, version, result);
+	}
+
+	/**
+	 * Checks an item against its threshold and tells the low stock listeners if
+	 * it became low or was restored. Must be called while holding the lock of
+	 * the location.
+	 */
+	private void checkThreshold(LocationInventory inventory, Entry e) {
+		int available = e.available();
+		if (!e.low && available < e.threshold) {
+			e.low = true;
+			InventoryItem item = toInventoryItem(e, inventory.ekrutLocation);
+			for (LowStockListener listener : lowStockListeners)
+				listener.stockLow(item);
+		} else if (e.low && available >= restoredLevel(e.threshold)) {
+			e.low = false;
+			InventoryItem item = toInventoryItem(e, inventory.ekrutLocation);
+			for (LowStockListener listener : lowStockListeners)
+				listener.stockRestored(item);
+		}
+	}
+
+	private static int restoredLevel(int threshold) {
+		return threshold + Math.max(1, threshold * LOW_STOCK_HYSTERESIS_PERCENT / 100);
+	}
+
+	/**
+	 * Registers a listener told when items fall below their threshold.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addLowStockListener(LowStockListener listener) {
+		lowStockListeners.add(listener);
+	}
+
+	public void removeLowStockListener(LowStockListener listener) {
+		lowStockListeners.remove(listener);
+	}
+
+	/**
+	 * Returns what changed in the available quantities of a location since a
+	 * version the caller got from an earlier call. If that version is too old,
+	 * unknown, or 0, the whole inventory is returned instead.
+	 *
+	 * @param ekrutLocation the machine whose changes are requested
+	 * @param sinceVersion  the version the caller already has, 0 if none
+	 * @return              the changes along with the current version
+	 */
+	public InventoryChanges getChanges(String ekrutLocation, long sinceVersion) {
+		LocationInventory inventory = getLocation(ekrutLocation);
+		synchronized (inventory) {
+			if (sinceVersion < inventory.oldestVersion || sinceVersion > inventory.version) {
+				ArrayList<InventoryItem> items = new ArrayList<>(inventory.items.size());
+				for (Entry e : inventory.items.values())
+					items.add(toInventoryItem(e, ekrutLocation));
+				return InventoryChanges.snapshot(inventory.version, items.toArray(new InventoryItem[0]));
+			}
+
+			ArrayList<InventoryItemUpdate[]> changes = new ArrayList<>();
+			for (Change change : inventory.changeLog)
+				if (change.version > sinceVersion)
+					changes.add(change.updates);
+			return InventoryChanges.delta(inventory.version, InventoryChanges.merge(changes));
+		}
+	}
+
+	/**
+	 * @param ekrutLocation a machine location
+	 * @return              the current version of its inventory
+	 */
+	public long getVersion(String ekrutLocation) {
+		return getLocation(ekrutLocation).version;
+	}
+
+	/**
+	 * Updates the threshold of an item. Thresholds change rarely, so they are
+	 * written to the database right away.
+	 *
+	 * @param ekrutLocation the machine holding the item
+	 * @param itemId        the ID of the item
+	 * @param threshold     the new threshold
+	 * @return              true if the location holds the item, false otherwise
+	 */
+	public boolean setThreshold(String ekrutLocation, int itemId, int threshold) {
+		LocationInventory inventory = getLocation(ekrutLocation);
+		Entry e = inventory.items.get(itemId);
+		if (e == null || !dao.updateItemThreshold(itemId, ekrutLocation, threshold))
+			return false;
+
+		synchronized (inventory) {
+			e.threshold = threshold;
+			// Updates only carry quantities, so clients behind this version need the whole inventory
+			inventory.version = versions.incrementAndGet();
+			inventory.oldestVersion = inventory.version;
+			inventory.changeLog.clear();
+			checkThreshold(inventory, e);
+		}
+		return true;
+	}
+
+	/**
+	 * Writes every pending quantity change to the database, one batch per
+	 * location. Changes that fail to be written are kept for the next flush.
+	 */
+	public synchronized void flush() {
+		RuntimeException failure = null;
+		for (LocationInventory inventory : locations.values()) {
+			try {
+				flush(inventory);
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+		}
+
+		if (failure != null)
+			throw failure;
+	}
+
+	private void flush(LocationInventory inventory) {
+		if (inventory.dirty.isEmpty())
+			return;
+
+		// Take the dirty items before reading their quantities, so a change made
+		// while flushing marks the item dirty again and is written next time
+		ArrayList<Integer> ids = new ArrayList<>();
+		for (Iterator<Integer> it = inventory.dirty.iterator(); it.hasNext();) {
+			ids.add(it.next());
+			it.remove();
+		}
+
+		int[] itemIds = new int[ids.size()];
+		int[] quantities = new int[ids.size()];
+		for (int i = 0; i < itemIds.length; i++) {
+			itemIds[i] = ids.get(i);
+			quantities[i] = inventory.items.get(itemIds[i]).physical();
+		}
+
+		try {
+			dao.updateItemQuantities(inventory.ekrutLocation, itemIds, quantities);
+			flushedItems.add(itemIds.length);
+		} catch (RuntimeException e) {
+			inventory.dirty.addAll(ids);
+			failedFlushes.increment();
+			throw e;
+		}
+	}
+
+	/**
+	 * Stops the background flushing and writes every pending change to the database.
+	 */
+	public void close() {
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(maxStalenessMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// Already shutting down, the hook is running or about to run
+		}
+	}
+
+	LocationInventory getLocation(String ekrutLocation) {
+		LocationInventory inventory = locations.get(ekrutLocation);
+		if (inventory != null) {
+			hits.increment();
+			return inventory;
+		}
+
+		// Loaded outside the map, so neither the database nor the listeners are
+		// called while holding a lock of the map. Two threads may load the same
+		// location at once, the first one to publish it wins.
+		loads.increment();
+		InventoryItem[] inventoryItems = dao.fetchAllItemsByLocation(ekrutLocation);
+		LocationInventory loaded = new LocationInventory(ekrutLocation, inventoryItems,
+				versions.incrementAndGet());
+		// A location without items may not exist at all, and any location string
+		// a client sends would otherwise stay cached forever. Not caching it also
+		// lets items added to it later be seen on the next request.
+		if (inventoryItems.length == 0)
+			return loaded;
+		inventory = locations.putIfAbsent(ekrutLocation, loaded);
+		if (inventory != null)
+			return inventory;
+
+		// Items loaded below their threshold are reported once, right away
+		synchronized (loaded) {
+			for (Entry e : loaded.items.values())
+				checkThreshold(loaded, e);
+		}
+		return loaded;
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			// Kept dirty, the next flush retries
+		}
+	}
+
+	private static InventoryItem toInventoryItem(Entry e, String ekrutLocation) {
+		return new InventoryItem(e.item, e.available(), ekrutLocation, e.threshold);
+	}
+
+	/**
+	 * @return the number of requests served from memory
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of locations loaded from the database
+	 */
+	public long getLoadCount() {
+		return loads.sum();
+	}
+
+	/**
+	 * @return the number of item quantities written to the database
+	 */
+	public long getFlushedItemCount() {
+		return flushedItems.sum();
+	}
+
+	/**
+	 * @return the number of location batches that failed to be written
+	 */
+	public long getFailedFlushCount() {
+		return failedFlushes.sum();
+	}
+
+	/**
+	 * @return the number of reservations refused for lack of stock
+	 */
+	public long getRejectedReservationCount() {
+		return rejectedReservations.sum();
+	}
+
+	/**
+	 * @return the number of item quantities waiting to be written
+	 */
+	public int getPendingCount() {
+		int pending = 0;
+		for (LocationInventory inventory : locations.values())
+			pending += inventory.dirty.size();
+		return pending;
+	}
+}
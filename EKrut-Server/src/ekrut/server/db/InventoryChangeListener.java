@@ -0,0 +1,23 @@
+package ekrut.server.db;
+
+import ekrut.entity.InventoryItemUpdate;
+
+/**
+ * Receives the changes made to the available quantities held by an
+ * {@link InventoryCache}.
+ */
+public interface InventoryChangeListener {
+
+	/**
+	 * Called after the available quantity of some items in a location changed.
+	 * Calls for the same location are made one at a time, in the order the
+	 * changes were made, while the location is locked; implementations must
+	 * return quickly and must not call back into the cache.
+	 *
+	 * @param ekrutLocation   the machine holding the items
+	 * @param previousVersion the version of the location's inventory before the changes
+	 * @param version         the version of the location's inventory after the changes
+	 * @param updates         the old and new available quantity of each changed item
+	 */
+	void inventoryChanged(String ekrutLocation, long previousVersion, long version, InventoryItemUpdate[] updates);
+}
@@ -0,0 +1,90 @@
+package ekrut.server.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ekrut.entity.InventoryItem;
+import ekrut.entity.InventoryItemUpdate;
+
+/**
+ * What changed in the inventory of a location since a given version, as
+ * returned by {@link InventoryCache#getChanges(String, long)}: either the
+ * updates made since that version, or the whole inventory when the version is
+ * too old to compute them.
+ */
+public class InventoryChanges {
+
+	private final long version;
+	private final InventoryItem[] items;
+	private final InventoryItemUpdate[] updates;
+
+	private InventoryChanges(long version, InventoryItem[] items, InventoryItemUpdate[] updates) {
+		this.version = version;
+		this.items = items;
+		this.updates = updates;
+	}
+
+	static InventoryChanges snapshot(long version, InventoryItem[] items) {
+		return new InventoryChanges(version, items, null);
+	}
+
+	static InventoryChanges delta(long version, InventoryItemUpdate[] updates) {
+		return new InventoryChanges(version, null, updates);
+	}
+
+	/**
+	 * @return the version of the inventory once the changes are applied
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return true if the whole inventory is returned instead of the updates
+	 */
+	public boolean isSnapshot() {
+		return items != null;
+	}
+
+	/**
+	 * @return every inventory item of the location, or null if only the updates are returned
+	 */
+	public InventoryItem[] getItems() {
+		return items;
+	}
+
+	/**
+	 * @return the items whose available quantity changed, or null for a snapshot
+	 */
+	public InventoryItemUpdate[] getUpdates() {
+		return updates;
+	}
+
+	/**
+	 * Merges consecutive updates of the same location into one update per item,
+	 * from its oldest to its newest quantity. Items that ended up where they
+	 * started are left out.
+	 *
+	 * @param changes the updates, oldest first
+	 * @return        the merged updates, in the order the items first changed
+	 */
+	public static InventoryItemUpdate[] merge(Iterable<InventoryItemUpdate[]> changes) {
+		LinkedHashMap<Integer, int[]> merged = new LinkedHashMap<>();
+		for (InventoryItemUpdate[] updates : changes) {
+			for (InventoryItemUpdate update : updates) {
+				int[] quantities = merged.get(update.getItemId());
+				if (quantities == null)
+					merged.put(update.getItemId(), new int[] { update.getItemOldQuantity(), update.getItemNewQuantity() });
+				else
+					quantities[1] = update.getItemNewQuantity();
+			}
+		}
+
+		ArrayList<InventoryItemUpdate> result = new ArrayList<>(merged.size());
+		for (Map.Entry<Integer, int[]> item : merged.entrySet())
+			if (item.getValue()[0] != item.getValue()[1])
+				result.add(new InventoryItemUpdate(item.getKey(), item.getValue()[0], item.getValue()[1]));
+		return result.toArray(new InventoryItemUpdate[0]);
+	}
+}
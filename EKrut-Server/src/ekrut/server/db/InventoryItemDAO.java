@@ -1,23 +1,125 @@
 package ekrut.server.db;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 import ekrut.entity.InventoryItem;
 import ekrut.entity.Item;
 
 public class InventoryItemDAO {
 
-	public static InventoryItem fetchInventoryItem(Item item, String ekrutLocation) {
-		return null;
+	private static final String SELECT_INVENTORY_ITEM =
+			"SELECT i.item_id, i.item_name, i.item_description, i.item_price, ii.item_quantity, ii.item_threshold "
+			+ "FROM inventory_item ii JOIN item i ON ii.item_id = i.item_id ";
+	private static final String UPDATE_QUANTITY =
+			"UPDATE inventory_item SET item_quantity = ? WHERE item_id = ? AND ekrut_location = ?";
+
+	private DBController con;
+	private int batchSize;
+
+	public InventoryItemDAO(DBController con) {
+		this(con, DBController.DEFAULT_BATCH_SIZE);
 	}
-	
-	public static InventoryItem[] fetchAllItemsByLocation(String ekrutLocation) {
-		return null;
+
+	/**
+	 * @param con       the controller used to access the database
+	 * @param batchSize the maximum number of items updated in a single batch
+	 */
+	public InventoryItemDAO(DBController con, int batchSize) {
+		this.con = con;
+		this.batchSize = batchSize;
 	}
-	
-	public static Boolean updateItemQuantity(InventoryItem inventoryItem) {
-		return false;
+
+	public InventoryItem fetchInventoryItem(Item item, String ekrutLocation) {
+		PreparedStatement ps = con.getPreparedStatement(
+				SELECT_INVENTORY_ITEM + "WHERE ii.item_id = ? AND ii.ekrut_location = ?");
+		try {
+			ps.setInt(1, item.getItemId());
+			ps.setString(2, ekrutLocation);
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		ArrayList<InventoryItem> result = con.query(ps, rs -> mapInventoryItem(rs, ekrutLocation));
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+	public InventoryItem[] fetchAllItemsByLocation(String ekrutLocation) {
+		PreparedStatement ps = con.getPreparedStatement(SELECT_INVENTORY_ITEM + "WHERE ii.ekrut_location = ?");
+		try {
+			ps.setString(1, ekrutLocation);
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		return con.query(ps, rs -> mapInventoryItem(rs, ekrutLocation)).toArray(new InventoryItem[0]);
+	}
+
+	public Boolean updateItemQuantity(InventoryItem inventoryItem) {
+		PreparedStatement ps = con.getPreparedStatement(UPDATE_QUANTITY);
+		try {
+			ps.setInt(1, inventoryItem.getItemQuantity());
+			ps.setInt(2, inventoryItem.getItem().getItemId());
+			ps.setString(3, inventoryItem.getEkrutLocation());
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		return con.executeUpdate(ps) == 1;
+	}
+
+	/**
+	 * Updates the quantities of many items in the same location using batched
+	 * updates, e.g. when a machine is restocked.
+	 *
+	 * @param ekrutLocation the machine whose inventory is updated
+	 * @param itemIds       the IDs of the items to update
+	 * @param quantities    the new quantity of each item, in the same order as itemIds
+	 * @return              true if every item was updated, false otherwise
+	 */
+	public Boolean updateItemQuantities(String ekrutLocation, int[] itemIds, int[] quantities) {
+		if (itemIds.length != quantities.length)
+			throw new IllegalArgumentException("Every item must have exactly one quantity.");
+
+		List<Integer> rows = IntStream.range(0, itemIds.length).boxed().collect(Collectors.toList());
+		int updated = con.executeBatch(UPDATE_QUANTITY, rows, (ps, i) -> {
+			ps.setInt(1, quantities[i]);
+			ps.setInt(2, itemIds[i]);
+			ps.setString(3, ekrutLocation);
+		}, batchSize);
+		return updated == itemIds.length;
 	}
-	
-	public static Boolean updateThresholdByArea() {
+
+	public Boolean updateItemThreshold(int itemId, String ekrutLocation, int threshold) {
+		PreparedStatement ps = con.getPreparedStatement(
+				"UPDATE inventory_item SET item_threshold = ? WHERE item_id = ? AND ekrut_location = ?");
+		try {
+			ps.setInt(1, threshold);
+			ps.setInt(2, itemId);
+			ps.setString(3, ekrutLocation);
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		return con.executeUpdate(ps) == 1;
+	}
+
+	public Boolean updateThresholdByArea() {
 		return false;
 	}
+
+	private static InventoryItem mapInventoryItem(ResultSet rs, String ekrutLocation) throws SQLException {
+		Item item = new Item(rs.getInt("item_id"), rs.getString("item_name"),
+				rs.getString("item_description"), rs.getInt("item_price"));
+		return new InventoryItem(item, rs.getInt("item_quantity"), ekrutLocation, rs.getInt("item_threshold"));
+	}
 }
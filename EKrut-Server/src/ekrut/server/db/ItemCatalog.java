@@ -0,0 +1,101 @@
+package ekrut.server.db;
+
+import ekrut.entity.Item;
+
+/**
+ * A preloaded, read-only catalog of every item, used to resolve item IDs
+ * without going to the database.
+ *
+ * Items are held in an open-addressing table keyed by the primitive item ID, so
+ * a lookup is a few array probes with no boxing. The table is never modified,
+ * when the catalog changes a new table is built and swapped in atomically, so
+ * readers never need to lock.
+ */
+public class ItemCatalog {
+
+	private final ItemDAO dao;
+	private volatile Table table = new Table(new Item[0]);
+
+	/**
+	 * An immutable open-addressing hash table from item ID to item, using linear
+	 * probing. A null value marks an empty slot.
+	 */
+	private static final class Table {
+		final int[] keys;
+		final Item[] values;
+		final int mask;
+		final int size;
+
+		Table(Item[] items) {
+			// Keep the table at most half full so probe sequences stay short
+			int capacity = Integer.highestOneBit(Math.max(2, items.length) * 2 - 1) << 1;
+			keys = new int[capacity];
+			values = new Item[capacity];
+			mask = capacity - 1;
+
+			int count = 0;
+			for (Item item : items) {
+				int i = slot(item.getItemId());
+				while (values[i] != null && keys[i] != item.getItemId())
+					i = (i + 1) & mask;
+				if (values[i] == null)
+					count++;
+				keys[i] = item.getItemId();
+				values[i] = item;
+			}
+			size = count;
+		}
+
+		Item get(int itemId) {
+			for (int i = slot(itemId); values[i] != null; i = (i + 1) & mask)
+				if (keys[i] == itemId)
+					return values[i];
+			return null;
+		}
+
+		private int slot(int itemId) {
+			// Spread sequential IDs across the table
+			int h = itemId * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & mask;
+		}
+	}
+
+	public ItemCatalog(ItemDAO dao) {
+		this.dao = dao;
+	}
+
+	/**
+	 * Loads every item from the database and replaces the catalog. Should be
+	 * called on startup and whenever items are added or changed.
+	 */
+	public void reload() {
+		replace(dao.fetchAllItems());
+	}
+
+	/**
+	 * Replaces the whole catalog. Lookups running concurrently see either the
+	 * old catalog or the new one.
+	 *
+	 * @param items every item of the new catalog
+	 */
+	public void replace(Item[] items) {
+		table = new Table(items);
+	}
+
+	/**
+	 * Returns the item with the given ID.
+	 *
+	 * @param itemId the ID of the item
+	 * @return       the item, or null if there is no such item
+	 */
+	public Item get(int itemId) {
+		return table.get(itemId);
+	}
+
+	/**
+	 * @return the number of items in the catalog
+	 */
+	public int size() {
+		return table.size;
+	}
+}
@@ -1,10 +1,41 @@
 package ekrut.server.db;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
 import ekrut.entity.Item;
 
 public class ItemDAO {
 
-	public static Item fetchItem(int itemId) {
-		return null;
+	private static final String SELECT_ITEM = "SELECT item_id, item_name, item_description, item_price FROM item";
+
+	private DBController con;
+
+	public ItemDAO(DBController con) {
+		this.con = con;
+	}
+
+	public Item fetchItem(int itemId) {
+		PreparedStatement ps = con.getPreparedStatement(SELECT_ITEM + " WHERE item_id = ?");
+		try {
+			ps.setInt(1, itemId);
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		ArrayList<Item> result = con.query(ps, ItemDAO::mapItem);
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+	public Item[] fetchAllItems() {
+		return con.query(con.getPreparedStatement(SELECT_ITEM), ItemDAO::mapItem).toArray(new Item[0]);
+	}
+
+	private static Item mapItem(ResultSet rs) throws SQLException {
+		return new Item(rs.getInt("item_id"), rs.getString("item_name"),
+				rs.getString("item_description"), rs.getInt("item_price"));
 	}
 }
@@ -0,0 +1,27 @@
+package ekrut.server.db;
+
+import ekrut.entity.InventoryItem;
+
+/**
+ * Told by an {@link InventoryCache} when the available quantity of an item
+ * falls below its threshold, and when it is restocked again. Each item is
+ * reported low once until it is restored.
+ */
+public interface LowStockListener {
+
+	/**
+	 * Called while the location is locked; implementations must return quickly
+	 * and must not call back into the cache.
+	 *
+	 * @param item the item that fell below its threshold, with its available quantity
+	 */
+	void stockLow(InventoryItem item);
+
+	/**
+	 * Called while the location is locked, like {@link #stockLow(InventoryItem)}.
+	 *
+	 * @param item the item that was restocked above its threshold
+	 */
+	default void stockRestored(InventoryItem item) {
+	}
+}
@@ -0,0 +1,118 @@
+package ekrut.server.db;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import ekrut.entity.Order;
+import ekrut.entity.OrderItem;
+
+/**
+ * Writes the orders to the orders table and their items to the order_item
+ * table, and reserves the IDs of new orders. The daily stats the reports are
+ * made of (see {@link ReportDAO}) are written along with the orders.
+ */
+public class OrderDAO {
+
+	private DBController con;
+
+	public OrderDAO(DBController con) {
+		this.con = con;
+	}
+
+	/**
+	 * Inserts orders and their items, and adds the orders to the daily stats of
+	 * their facilities, in a single transaction: either every order is written
+	 * and counted or none is. Every order must have its ID and date set.
+	 *
+	 * @param orders the orders to insert
+	 */
+	public void insertOrders(Collection<Order> orders) {
+		ArrayList<int[]> items = new ArrayList<>();
+		for (Order order : orders)
+			for (OrderItem item : order.getItems())
+				items.add(new int[] { order.getOrderId(), item.getItem().getItemId(), item.getItemQuantity() });
+
+		con.executeInTransaction(
+				new BatchUpdate<>("INSERT INTO orders (order_id, order_date, status, order_type, due_date, "
+						+ "client_address, ekrut_location) VALUES (?, ?, ?, ?, ?, ?, ?)", orders, OrderDAO::bindOrder),
+				new BatchUpdate<>("INSERT INTO order_item (order_id, item_id, quantity) VALUES (?, ?, ?)", items,
+						(ps, item) -> {
+							ps.setInt(1, item[0]);
+							ps.setInt(2, item[1]);
+							ps.setInt(3, item[2]);
+						}),
+				ReportDAO.addDailyOrderStats(DailyOrderStats.of(orders)));
+	}
+
+	/**
+	 * Reserves a block of consecutive order IDs for the caller only. The next ID
+	 * to give out is kept in the order_id_block table, in its single row, and is
+	 * moved past the block by a compare-and-set update. Two servers sharing the
+	 * database never get the same block, and IDs are never reused after a
+	 * restart, not even those left unused in a block.
+	 *
+	 * @param blockSize the number of IDs to reserve
+	 * @return          the first ID of the block
+	 */
+	public int reserveOrderIds(int blockSize) {
+		while (true) {
+			Integer next = fetchNextOrderId();
+			if (next == null) {
+				// The first block ever continues after the orders already there
+				insertNextOrderId();
+				continue;
+			}
+			if (updateNextOrderId(next, next + blockSize))
+				return next;
+			// Reserved by someone else meanwhile, try again past their block
+		}
+	}
+
+	private Integer fetchNextOrderId() {
+		PreparedStatement ps = con.getPreparedStatement("SELECT next_order_id FROM order_id_block WHERE id = 1");
+		ArrayList<Integer> result = con.query(ps, rs -> rs.getInt("next_order_id"));
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+	private void insertNextOrderId() {
+		PreparedStatement ps = con.getPreparedStatement("INSERT INTO order_id_block (id, next_order_id) "
+				+ "SELECT 1, COALESCE(MAX(order_id), 0) + 1 FROM orders");
+		try {
+			con.executeUpdate(ps);
+		} catch (RuntimeException e) {
+			// Inserted by someone else meanwhile
+			if (fetchNextOrderId() == null)
+				throw e;
+		}
+	}
+
+	private boolean updateNextOrderId(int expected, int next) {
+		PreparedStatement ps = con.getPreparedStatement(
+				"UPDATE order_id_block SET next_order_id = ? WHERE id = 1 AND next_order_id = ?");
+		try {
+			ps.setInt(1, next);
+			ps.setInt(2, expected);
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+		return con.executeUpdate(ps) == 1;
+	}
+
+	private static void bindOrder(PreparedStatement ps, Order order) throws SQLException {
+		ps.setInt(1, order.getOrderId());
+		ps.setDate(2, Date.valueOf(order.getDate()));
+		ps.setString(3, order.getStatus().name());
+		ps.setString(4, order.getType().name());
+		if (order.getDueDate() != null)
+			ps.setDate(5, Date.valueOf(order.getDueDate()));
+		else
+			ps.setNull(5, Types.DATE);
+		ps.setString(6, order.getClientAddress());
+		ps.setString(7, order.getEkrutLocation());
+	}
+}
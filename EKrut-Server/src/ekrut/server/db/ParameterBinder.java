@@ -0,0 +1,23 @@
+package ekrut.server.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Sets the parameters of a PreparedStatement from an object, used to add rows
+ * to a batch.
+ * 
+ * @param <T> the type of the object the parameters are taken from
+ */
+@FunctionalInterface
+public interface ParameterBinder<T> {
+	
+	/**
+	 * Sets the parameters of the statement from a single object.
+	 * 
+	 * @param p   the statement whose parameters are set
+	 * @param row the object holding the values of the parameters
+	 * @throws SQLException if a parameter could not be set
+	 */
+	void bind(PreparedStatement p, T row) throws SQLException;
+}
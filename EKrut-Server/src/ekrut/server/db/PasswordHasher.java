@@ -0,0 +1,99 @@
+package ekrut.server.db;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes passwords with salted PBKDF2, slow on purpose so that guessing
+ * passwords costs the same time on every try. A stored hash reads
+ * "pbkdf2-sha256$iterations$salt$hash", salt and hash in Base64, so the
+ * iterations can be raised later without breaking the stored hashes.
+ */
+class PasswordHasher {
+
+	static final int DEFAULT_ITERATIONS = 210_000;
+
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final String PREFIX = "pbkdf2-sha256";
+	private static final int SALT_BYTES = 16;
+	private static final int HASH_BITS = 256;
+
+	private final int iterations;
+	private final SecureRandom random = new SecureRandom();
+	// Checked against when the user does not exist, so that costs as much as a wrong password
+	private final String dummyHash;
+
+	/**
+	 * @param iterations the number of PBKDF2 iterations of new hashes
+	 */
+	PasswordHasher(int iterations) {
+		this.iterations = iterations;
+		this.dummyHash = hash("");
+	}
+
+	/**
+	 * @param password the password to hash
+	 * @return         the hash to store, with a new random salt
+	 */
+	String hash(String password) {
+		byte[] salt = new byte[SALT_BYTES];
+		random.nextBytes(salt);
+		Base64.Encoder base64 = Base64.getEncoder();
+		return PREFIX + '$' + iterations + '$' + base64.encodeToString(salt) + '$'
+				+ base64.encodeToString(pbkdf2(password, salt, iterations));
+	}
+
+	/**
+	 * Checks a password against a stored hash, in time independent of where
+	 * they differ. A stored value that is not a hash is taken as a password
+	 * stored in plain text.
+	 *
+	 * @param password the password to check
+	 * @param stored   the stored hash, or null to only spend the time of a check
+	 * @return         true if the password matches
+	 */
+	boolean verify(String password, String stored) {
+		if (stored == null) {
+			verify(password, dummyHash);
+			return false;
+		}
+		if (!isHash(stored))
+			return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+					stored.getBytes(StandardCharsets.UTF_8));
+
+		String[] parts = stored.split("\\$");
+		if (parts.length != 4)
+			return false;
+		Base64.Decoder base64 = Base64.getDecoder();
+		byte[] expected = base64.decode(parts[3]);
+		return MessageDigest.isEqual(pbkdf2(password, base64.decode(parts[2]), Integer.parseInt(parts[1])), expected);
+	}
+
+	/**
+	 * @return true if a stored password is a hash made with the current iterations
+	 */
+	boolean isCurrent(String stored) {
+		return isHash(stored) && stored.startsWith(PREFIX + '$' + iterations + '$');
+	}
+
+	private static boolean isHash(String stored) {
+		return stored.startsWith(PREFIX + '$');
+	}
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+}
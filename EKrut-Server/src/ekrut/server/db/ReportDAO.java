@@ -1,10 +1,133 @@
 package ekrut.server.db;
 
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+import ekrut.entity.Report;
+
+/**
+ * Reads and writes the data reports are made of:
+ * <ul>
+ * <li>daily_order_stats: number_of_orders, items_sold and total_amount per
+ * facility (ekrut_location) per day, added to as orders are committed</li>
+ * <li>report: the monthly reports already rolled up, one row per report_type,
+ * area and month (report_date is the first day of the month)</li>
+ * <li>ekrut_location: the area each facility belongs to</li>
+ * </ul>
+ */
 public class ReportDAO {
-/*
-  	Orders report fields: Facility, number_of_orders, date
-	Inventory report fields: Facility, number_of_orders, date
-	Costumers report fields: Facility, number_of_orders, date
-	check what each reports should represent..
-	*/
+
+	private static final String ADD_DAILY_ORDER_STATS =
+			"INSERT INTO daily_order_stats (ekrut_location, order_date, number_of_orders, items_sold, total_amount) "
+			+ "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE number_of_orders = number_of_orders + VALUES(number_of_orders), "
+			+ "items_sold = items_sold + VALUES(items_sold), total_amount = total_amount + VALUES(total_amount)";
+
+	private DBController con;
+
+	public ReportDAO(DBController con) {
+		this.con = con;
+	}
+
+	/**
+	 * Adds the orders of some facilities and days to their daily stats, creating
+	 * the rows that do not exist yet. Run in the transaction that writes the
+	 * orders themselves (see {@link OrderDAO#insertOrders(Collection)}), so the
+	 * stats never miss an order that was written nor count one that was not.
+	 *
+	 * @param stats the orders to add, at most one per facility and day
+	 * @return      the batch adding them
+	 */
+	static BatchUpdate<DailyOrderStats> addDailyOrderStats(Collection<DailyOrderStats> stats) {
+		return new BatchUpdate<>(ADD_DAILY_ORDER_STATS, stats, (ps, row) -> {
+			ps.setString(1, row.getEkrutLocation());
+			ps.setDate(2, Date.valueOf(row.getDate()));
+			ps.setInt(3, row.getNumberOfOrders());
+			ps.setInt(4, row.getItemsSold());
+			ps.setLong(5, row.getTotalAmount());
+		});
+	}
+
+	/**
+	 * @param area the area whose facilities are wanted
+	 * @param from the first day, inclusive
+	 * @param to   the last day, inclusive
+	 * @return     the daily stats of every facility of the area in the period
+	 */
+	public ArrayList<DailyOrderStats> fetchDailyOrderStats(String area, LocalDate from, LocalDate to) {
+		PreparedStatement ps = con.getPreparedStatement(
+				"SELECT d.ekrut_location, d.order_date, d.number_of_orders, d.items_sold, d.total_amount "
+				+ "FROM daily_order_stats d JOIN ekrut_location l ON d.ekrut_location = l.ekrut_location "
+				+ "WHERE l.area = ? AND d.order_date BETWEEN ? AND ?");
+		try {
+			ps.setString(1, area);
+			ps.setDate(2, Date.valueOf(from));
+			ps.setDate(3, Date.valueOf(to));
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		return con.query(ps, ReportDAO::mapDailyOrderStats);
+	}
+
+	/**
+	 * @return the area of every facility, keyed by ekrutLocation
+	 */
+	public HashMap<String, String> fetchLocationAreas() {
+		HashMap<String, String> areas = new HashMap<>();
+		con.query(con.getPreparedStatement("SELECT ekrut_location, area FROM ekrut_location"),
+				rs -> areas.put(rs.getString("ekrut_location"), rs.getString("area")));
+		return areas;
+	}
+
+	/**
+	 * @param reportType the type of the report
+	 * @param area       the area the report covers
+	 * @param month      the first day of the month the report covers
+	 * @return           the rolled up report, or null if the month was not rolled up yet
+	 */
+	public Report fetchReport(String reportType, String area, LocalDateTime month) {
+		PreparedStatement ps = con.getPreparedStatement(
+				"SELECT content FROM report WHERE report_type = ? AND area = ? AND report_date = ?");
+		try {
+			ps.setString(1, reportType);
+			ps.setString(2, area);
+			ps.setTimestamp(3, Timestamp.valueOf(month));
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		ArrayList<Report> result = con.query(ps, rs -> new Report(reportType, month, area, rs.getString("content")));
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+	public Boolean saveReport(Report report) {
+		PreparedStatement ps = con.getPreparedStatement(
+				"INSERT INTO report (report_type, area, report_date, content) VALUES (?, ?, ?, ?)");
+		try {
+			ps.setString(1, report.getReportType());
+			ps.setString(2, report.getArea());
+			ps.setTimestamp(3, Timestamp.valueOf(report.getDate()));
+			ps.setString(4, report.getContent());
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		return con.executeUpdate(ps) == 1;
+	}
+
+	private static DailyOrderStats mapDailyOrderStats(ResultSet rs) throws SQLException {
+		return new DailyOrderStats(rs.getString("ekrut_location"), rs.getDate("order_date").toLocalDate(),
+				rs.getInt("number_of_orders"), rs.getInt("items_sold"), rs.getLong("total_amount"));
+	}
 }
@@ -0,0 +1,23 @@
+package ekrut.server.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a ResultSet to an object.
+ * 
+ * @param <T> the type of the object each row is mapped to
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+	
+	/**
+	 * Maps the row the ResultSet is currently positioned on. Implementations
+	 * must not move the cursor.
+	 * 
+	 * @param rs the ResultSet positioned on the row to map
+	 * @return   the object representing the row
+	 * @throws SQLException if a column could not be read
+	 */
+	T mapRow(ResultSet rs) throws SQLException;
+}
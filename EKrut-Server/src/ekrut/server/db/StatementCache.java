@@ -0,0 +1,105 @@
+package ekrut.server.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A least-recently-used cache of the prepared statements of a single connection,
+ * keyed by their SQL text.
+ *
+ * A pooled connection is only used by one borrower at a time, so the cache is
+ * not thread safe. When the cache is full the least recently used statement is
+ * closed to make room for a new one.
+ */
+class StatementCache {
+
+	private final Connection conn;
+	private final int capacity;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+	private final Set<PreparedStatement> cached = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final LongAdder hits, misses, evictions;
+
+	/**
+	 * Constructs an empty statement cache for a connection.
+	 *
+	 * @param conn      the connection that prepares the statements
+	 * @param capacity  the maximum number of statements kept open
+	 * @param hits      counter incremented when a cached statement is reused
+	 * @param misses    counter incremented when a statement has to be prepared
+	 * @param evictions counter incremented when a statement is evicted
+	 */
+	StatementCache(Connection conn, int capacity, LongAdder hits, LongAdder misses, LongAdder evictions) {
+		this.conn = conn;
+		this.capacity = capacity;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		// Access order makes iteration start at the least recently used statement
+		this.statements = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true);
+	}
+
+	/**
+	 * Returns the cached statement for an SQL query, preparing and caching a new
+	 * one if needed.
+	 *
+	 * @param sql the SQL query to use as a template for the statement
+	 * @return    the prepared statement representing the SQL query
+	 * @throws SQLException if the statement could not be prepared
+	 */
+	PreparedStatement get(String sql) throws SQLException {
+		PreparedStatement p = statements.get(sql);
+		if (p != null) {
+			hits.increment();
+			return p;
+		}
+
+		misses.increment();
+		p = conn.prepareStatement(sql);
+		if (statements.size() >= capacity) {
+			Iterator<PreparedStatement> it = statements.values().iterator();
+			PreparedStatement eldest = it.next();
+			it.remove();
+			cached.remove(eldest);
+			closeQuietly(eldest);
+			evictions.increment();
+		}
+		statements.put(sql, p);
+		cached.add(p);
+		return p;
+	}
+
+	/**
+	 * Hands a statement back after use. Cached statements stay open with their
+	 * parameters cleared, others are closed.
+	 *
+	 * @param p the statement to hand back
+	 */
+	void release(PreparedStatement p) {
+		if (cached.contains(p)) {
+			try {
+				p.clearParameters();
+				p.clearBatch();
+			} catch (SQLException e) {
+				// Drop a statement that can no longer be reused
+				statements.values().remove(p);
+				cached.remove(p);
+				closeQuietly(p);
+			}
+		} else {
+			closeQuietly(p);
+		}
+	}
+
+	private static void closeQuietly(PreparedStatement p) {
+		try {
+			p.close();
+		} catch (SQLException e) {}
+	}
+}
@@ -0,0 +1,58 @@
+package ekrut.server.db;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stock held for an order by {@link InventoryCache#reserve(String, int[], int[])}.
+ *
+ * The reservation must end with exactly one of {@link #commit()}, when the
+ * order went through, or {@link #release()}, when it was cancelled. Calls after
+ * the first one have no effect.
+ */
+public class StockReservation {
+
+	private final InventoryCache cache;
+	private final InventoryCache.LocationInventory inventory;
+	private final int[] itemIds;
+	private final int[] quantities;
+	private final AtomicBoolean done = new AtomicBoolean();
+
+	StockReservation(InventoryCache cache, InventoryCache.LocationInventory inventory, int[] itemIds,
+			int[] quantities) {
+		this.cache = cache;
+		this.inventory = inventory;
+		this.itemIds = itemIds;
+		this.quantities = quantities;
+	}
+
+	/**
+	 * Takes the reserved units out of the machine's stock.
+	 *
+	 * @return true if this call completed the reservation, false if it had already ended
+	 */
+	public boolean commit() {
+		if (!done.compareAndSet(false, true))
+			return false;
+		cache.unreserve(inventory, itemIds, quantities, true);
+		return true;
+	}
+
+	/**
+	 * Makes the reserved units available to other orders again.
+	 *
+	 * @return true if this call cancelled the reservation, false if it had already ended
+	 */
+	public boolean release() {
+		if (!done.compareAndSet(false, true))
+			return false;
+		cache.unreserve(inventory, itemIds, quantities, false);
+		return true;
+	}
+
+	/**
+	 * @return the machine the stock is reserved in
+	 */
+	public String getEkrutLocation() {
+		return inventory.ekrutLocation;
+	}
+}
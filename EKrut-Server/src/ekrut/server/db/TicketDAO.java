@@ -0,0 +1,57 @@
+package ekrut.server.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+public class TicketDAO {
+
+	public static final String STATUS_OPEN = "OPEN";
+
+	private DBController con;
+
+	public TicketDAO(DBController con) {
+		this.con = con;
+	}
+
+	/**
+	 * Opens a ticket to restock an item in a location.
+	 *
+	 * @param ekrutLocation the machine to restock
+	 * @param itemId        the ID of the item to restock
+	 * @return              true if the ticket was created
+	 */
+	public Boolean createRestockTicket(String ekrutLocation, int itemId) {
+		PreparedStatement ps = con.getPreparedStatement(
+				"INSERT INTO ticket (status, ekrut_location, item_id) VALUES (?, ?, ?)");
+		try {
+			ps.setString(1, STATUS_OPEN);
+			ps.setString(2, ekrutLocation);
+			ps.setInt(3, itemId);
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		return con.executeUpdate(ps) == 1;
+	}
+
+	/**
+	 * @param ekrutLocation the machine holding the item
+	 * @param itemId        the ID of the item
+	 * @return              true if a ticket to restock the item is still open
+	 */
+	public Boolean hasOpenTicket(String ekrutLocation, int itemId) {
+		PreparedStatement ps = con.getPreparedStatement(
+				"SELECT ticket_id FROM ticket WHERE ekrut_location = ? AND item_id = ? AND status = ?");
+		try {
+			ps.setString(1, ekrutLocation);
+			ps.setInt(2, itemId);
+			ps.setString(3, STATUS_OPEN);
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		return !con.query(ps, rs -> rs.getInt("ticket_id")).isEmpty();
+	}
+}
@@ -1,5 +1,239 @@
-package ekrut.server.db;
-
-public class UserDAO {
-
-}
+package ekrut.server.db;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import ekrut.entity.User;
+import ekrut.entity.UserType;
+
+/**
+ * Reads the users and checks their passwords, which are stored as salted slow
+ * hashes (see {@link PasswordHasher}). Passwords still stored in plain text are
+ * hashed the first time their user logs in.
+ *
+ * Checking a password costs a slow hash on purpose, but a user reconnecting or
+ * logging in again shortly after would pay it every time. Successful checks are
+ * therefore remembered for a short while per user and session, as a keyed
+ * digest of the password, so checking the same password again for the same
+ * session is a fast digest and no database access. Failed checks are never
+ * remembered, so guessing passwords still pays the slow hash on every try.
+ */
+public class UserDAO {
+
+	public static final int DEFAULT_VERIFICATION_CACHE_SIZE = 10_000;
+	public static final long DEFAULT_VERIFICATION_TTL_MILLIS = 5 * 60 * 1000;
+
+	private static final String SELECT_USER = "SELECT username, password, user_type, area FROM users";
+	private static final String DIGEST_ALGORITHM = "HmacSHA256";
+
+	private static class Verification {
+		final User user;
+		final byte[] digest;
+		final long expiresMillis;
+
+		Verification(User user, byte[] digest, long expiresMillis) {
+			this.user = user;
+			this.digest = digest;
+			this.expiresMillis = expiresMillis;
+		}
+	}
+
+	private DBController con;
+	private final PasswordHasher hasher;
+	private final int verificationCacheSize;
+	private final long verificationTtlMillis;
+	// Keyed by username and session token, least recently used first
+	private final LinkedHashMap<String, Verification> verifications;
+	// Random for every run of the server, so the cached digests are worthless outside of it
+	private final SecretKeySpec digestKey;
+
+	// Statistics
+	private final LongAdder cachedVerifications = new LongAdder();
+	private final LongAdder hashedVerifications = new LongAdder();
+	private final LongAdder failedVerifications = new LongAdder();
+
+	public UserDAO(DBController con) {
+		this(con, PasswordHasher.DEFAULT_ITERATIONS, DEFAULT_VERIFICATION_CACHE_SIZE,
+				DEFAULT_VERIFICATION_TTL_MILLIS);
+	}
+
+	/**
+	 * @param con                   the controller used to access the database
+	 * @param hashIterations        the number of PBKDF2 iterations of new password hashes
+	 * @param verificationCacheSize the maximum number of successful checks remembered
+	 * @param verificationTtlMillis how long a successful check is remembered
+	 */
+	public UserDAO(DBController con, int hashIterations, int verificationCacheSize, long verificationTtlMillis) {
+		this.con = con;
+		this.hasher = new PasswordHasher(hashIterations);
+		this.verificationCacheSize = verificationCacheSize;
+		this.verificationTtlMillis = verificationTtlMillis;
+		this.verifications = new LinkedHashMap<>(verificationCacheSize * 4 / 3 + 1, 0.75f, true);
+
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		this.digestKey = new SecretKeySpec(key, DIGEST_ALGORITHM);
+	}
+
+	/**
+	 * @param username the name the user logs in with
+	 * @return         the user, or null if there is no such user
+	 */
+	public User fetchUser(String username) {
+		PreparedStatement ps = con.getPreparedStatement(SELECT_USER + " WHERE username = ?");
+		try {
+			ps.setString(1, username);
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		ArrayList<User> result = con.query(ps, UserDAO::mapUser);
+		return result.isEmpty() ? null : result.get(0);
+	}
+
+	/**
+	 * Checks the credentials of a user. Takes as long for a user that does not
+	 * exist as for a wrong password.
+	 *
+	 * @param username     the name the user logs in with
+	 * @param password     the password to check
+	 * @param sessionToken the token of the session the user had, or null
+	 * @return             the user, or null if the credentials are wrong
+	 */
+	public User verifyUser(String username, String password, String sessionToken) {
+		if (sessionToken != null) {
+			User user = verifyCached(username, password, sessionToken);
+			if (user != null) {
+				cachedVerifications.increment();
+				return user;
+			}
+		}
+
+		hashedVerifications.increment();
+		User user = fetchUser(username);
+		if (!hasher.verify(password, user == null ? null : user.getPassword())) {
+			failedVerifications.increment();
+			return null;
+		}
+
+		if (!hasher.isCurrent(user.getPassword()))
+			// Stored in plain text or with fewer iterations
+			updatePassword(username, password);
+		return user;
+	}
+
+	private User verifyCached(String username, String password, String sessionToken) {
+		Verification verification;
+		synchronized (verifications) {
+			verification = verifications.get(username + '\0' + sessionToken);
+		}
+		if (verification == null || verification.expiresMillis <= System.currentTimeMillis())
+			return null;
+		return MessageDigest.isEqual(digest(password), verification.digest) ? verification.user : null;
+	}
+
+	/**
+	 * Remembers a successful check for a session, so the same password is
+	 * checked fast for it until the check expires.
+	 *
+	 * @param user         the user whose password was checked
+	 * @param password     the password
+	 * @param sessionToken the token of the session the user logged in to
+	 */
+	public void cacheVerification(User user, String password, String sessionToken) {
+		Verification verification = new Verification(user, digest(password),
+				System.currentTimeMillis() + verificationTtlMillis);
+		synchronized (verifications) {
+			if (verifications.size() >= verificationCacheSize) {
+				Iterator<Verification> it = verifications.values().iterator();
+				it.next();
+				it.remove();
+			}
+			verifications.put(user.getUsername() + '\0' + sessionToken, verification);
+		}
+	}
+
+	/**
+	 * Forgets the successful checks of a user, e.g. when logging out or
+	 * changing the password.
+	 *
+	 * @param username the user
+	 */
+	public void forgetVerifications(String username) {
+		String prefix = username + '\0';
+		synchronized (verifications) {
+			verifications.keySet().removeIf(key -> key.startsWith(prefix));
+		}
+	}
+
+	/**
+	 * Stores a new password of a user, hashed.
+	 *
+	 * @param username the user
+	 * @param password the new password
+	 * @return         true if the user exists
+	 */
+	public Boolean updatePassword(String username, String password) {
+		PreparedStatement ps = con.getPreparedStatement("UPDATE users SET password = ? WHERE username = ?");
+		try {
+			ps.setString(1, hasher.hash(password));
+			ps.setString(2, username);
+		} catch (SQLException e) {
+			con.closeStatement(ps);
+			throw new RuntimeException(e);
+		}
+
+		boolean updated = con.executeUpdate(ps) == 1;
+		forgetVerifications(username);
+		return updated;
+	}
+
+	private byte[] digest(String password) {
+		try {
+			Mac mac = Mac.getInstance(DIGEST_ALGORITHM);
+			mac.init(digestKey);
+			return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return the number of passwords checked from the cache
+	 */
+	public long getCachedVerificationCount() {
+		return cachedVerifications.sum();
+	}
+
+	/**
+	 * @return the number of passwords checked with the slow hash
+	 */
+	public long getHashedVerificationCount() {
+		return hashedVerifications.sum();
+	}
+
+	/**
+	 * @return the number of wrong credentials
+	 */
+	public long getFailedVerificationCount() {
+		return failedVerifications.sum();
+	}
+
+	private static User mapUser(ResultSet rs) throws SQLException {
+		return new User(rs.getString("username"), rs.getString("password"),
+				UserType.valueOf(rs.getString("user_type")), rs.getString("area"));
+	}
+}
@@ -0,0 +1,81 @@
+package ekrut.server.managers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import ekrut.server.db.OrderDAO;
+
+/**
+ * Gives out the IDs of new orders without a database round trip per order.
+ * IDs are reserved from the database a block at a time (see
+ * {@link OrderDAO#reserveOrderIds(int)}) and given out of the current block by
+ * an atomic counter, so threads creating orders at the same time never wait
+ * for each other. Only the thread that finds the block used up reserves the
+ * next one, while the others wait for it.
+ *
+ * IDs left in the block when the server stops are skipped, never reused, so
+ * order IDs are unique but may have gaps. A larger block means fewer trips to
+ * the database and larger gaps.
+ */
+public class OrderIdAllocator {
+
+	public static final int DEFAULT_BLOCK_SIZE = 100;
+
+	private static class Block {
+		final int end;
+		final AtomicInteger next;
+
+		Block(int start, int size) {
+			this.end = start + size;
+			this.next = new AtomicInteger(start);
+		}
+	}
+
+	private OrderDAO orderDAO;
+	private final int blockSize;
+	// Empty until the first ID is asked for
+	private volatile Block block = new Block(0, 0);
+
+	// Statistics
+	private final LongAdder reservedBlocks = new LongAdder();
+
+	/**
+	 * @param orderDAO  reserves the blocks of IDs
+	 * @param blockSize the number of IDs reserved at a time
+	 */
+	public OrderIdAllocator(OrderDAO orderDAO, int blockSize) {
+		if (blockSize < 1)
+			throw new IllegalArgumentException("Block size must be positive");
+
+		this.orderDAO = orderDAO;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * @return a new order ID, never given out before
+	 */
+	public int nextId() {
+		while (true) {
+			Block current = block;
+			int id = current.next.getAndIncrement();
+			if (id < current.end)
+				return id;
+			reserveBlock(current);
+		}
+	}
+
+	private synchronized void reserveBlock(Block used) {
+		// Another thread may have replaced it while this one waited
+		if (block != used)
+			return;
+		block = new Block(orderDAO.reserveOrderIds(blockSize), blockSize);
+		reservedBlocks.increment();
+	}
+
+	/**
+	 * @return the number of blocks reserved from the database
+	 */
+	public long getReservedBlockCount() {
+		return reservedBlocks.sum();
+	}
+}
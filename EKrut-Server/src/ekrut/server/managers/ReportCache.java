@@ -0,0 +1,236 @@
+package ekrut.server.managers;
+
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import ekrut.entity.Report;
+
+/**
+ * A least-recently-used cache of the reports built by {@link ServerReportManager},
+ * keyed by what a {@link ekrut.net.ReportRequest} asks for: the report type,
+ * the area and the month of the date.
+ *
+ * Reports of months that are over never change, so they stay cached until
+ * evicted. A report of the current month is dropped as soon as an order of its
+ * area is committed, see {@link #invalidate(String, YearMonth)}. An invalidation
+ * only keeps the reports of its own area and month from being cached while
+ * they are built, so orders committed all day long do not keep the reports of
+ * other areas or months out of the cache. An invalidation is only remembered
+ * while a report that started building before it is still being built.
+ */
+public class ReportCache {
+
+	private static class Key {
+		final String reportType;
+		final String area;
+		final YearMonth month;
+
+		Key(String reportType, String area, YearMonth month) {
+			this.reportType = reportType;
+			this.area = area;
+			this.month = month;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return reportType.equals(other.reportType) && area.equals(other.area) && month.equals(other.month);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(reportType, area, month);
+		}
+	}
+
+	private final int capacity;
+	private final String[] reportTypes;
+	private final LinkedHashMap<Key, Report> reports;
+	// The cached reports of every month, so dropping a whole month does not scan the cache
+	private final HashMap<YearMonth, HashSet<Key>> reportsByMonth = new HashMap<>();
+	// Incremented by every invalidation, which records it for its area and month
+	// (or for its month, for every area), so a report built meanwhile is not cached
+	private long invalidationStamp;
+	private final HashMap<String, Long> areaInvalidations = new HashMap<>();
+	private final HashMap<YearMonth, Long> monthInvalidations = new HashMap<>();
+	// The stamps of the reports being built, with how many reports took each one
+	private final TreeMap<Long, Integer> outstandingStamps = new TreeMap<>();
+
+	// Statistics
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * @param capacity    the maximum number of reports kept
+	 * @param reportTypes every report type the cache may hold
+	 */
+	ReportCache(int capacity, String... reportTypes) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive");
+
+		this.capacity = capacity;
+		this.reportTypes = reportTypes;
+		// Access order makes iteration start at the least recently used report
+		this.reports = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true);
+	}
+
+	/**
+	 * @return the cached report, or null if it has to be built
+	 */
+	synchronized Report get(String reportType, String area, YearMonth month) {
+		Report report = reports.get(new Key(reportType, area, month));
+		if (report != null)
+			hits.increment();
+		else
+			misses.increment();
+		return report;
+	}
+
+	/**
+	 * Takes a stamp before building a report. Every stamp must be handed back
+	 * to {@link #release(long)} once the report is built or failed.
+	 *
+	 * @return the stamp to hand to {@link #put(Report, YearMonth, long)}
+	 */
+	synchronized long stamp() {
+		outstandingStamps.merge(invalidationStamp, 1, Integer::sum);
+		return invalidationStamp;
+	}
+
+	/**
+	 * Hands back a stamp taken by {@link #stamp()}, and forgets the
+	 * invalidations no report still being built can be affected by.
+	 *
+	 * @param stamp the stamp
+	 */
+	synchronized void release(long stamp) {
+		Long oldest = outstandingStamps.isEmpty() ? null : outstandingStamps.firstKey();
+		if (outstandingStamps.computeIfPresent(stamp, (s, count) -> count == 1 ? null : count - 1) != null
+				|| oldest == null || oldest != stamp)
+			return;
+
+		// Only an invalidation after the oldest stamp still being built can keep a report out
+		long prunable = outstandingStamps.isEmpty() ? invalidationStamp : outstandingStamps.firstKey();
+		areaInvalidations.values().removeIf(invalidated -> invalidated <= prunable);
+		monthInvalidations.values().removeIf(invalidated -> invalidated <= prunable);
+	}
+
+	/**
+	 * Caches a report, unless its area and month were invalidated since the
+	 * stamp was taken, in which case the report may already be out of date.
+	 *
+	 * @param report the report to cache
+	 * @param month  the month the report covers
+	 * @param stamp  the value of {@link #stamp()} before the report was built
+	 */
+	synchronized void put(Report report, YearMonth month, long stamp) {
+		if (areaInvalidations.getOrDefault(areaKey(report.getArea(), month), 0L) > stamp
+				|| monthInvalidations.getOrDefault(month, 0L) > stamp)
+			return;
+
+		if (reports.size() >= capacity) {
+			Iterator<Map.Entry<Key, Report>> it = reports.entrySet().iterator();
+			Key eldest = it.next().getKey();
+			it.remove();
+			forget(eldest);
+			evictions.increment();
+		}
+		Key key = new Key(report.getReportType(), report.getArea(), month);
+		reports.put(key, report);
+		reportsByMonth.computeIfAbsent(month, m -> new HashSet<>()).add(key);
+	}
+
+	/**
+	 * Drops the reports of an area for a month, e.g. because an order was
+	 * committed in one of its facilities.
+	 *
+	 * @param area  the area, or null to drop the reports of every area for the month
+	 * @param month the month
+	 */
+	synchronized void invalidate(String area, YearMonth month) {
+		invalidationStamp++;
+		invalidations.increment();
+		// Nothing being built can be out of date if no stamp is outstanding
+		boolean remember = !outstandingStamps.isEmpty();
+		if (area != null) {
+			if (remember)
+				areaInvalidations.put(areaKey(area, month), invalidationStamp);
+			for (String reportType : reportTypes) {
+				Key key = new Key(reportType, area, month);
+				if (reports.remove(key) != null)
+					forget(key);
+			}
+		} else {
+			if (remember)
+				monthInvalidations.put(month, invalidationStamp);
+			HashSet<Key> keys = reportsByMonth.remove(month);
+			if (keys != null)
+				for (Key key : keys)
+					reports.remove(key);
+		}
+	}
+
+	private void forget(Key key) {
+		HashSet<Key> keys = reportsByMonth.get(key.month);
+		if (keys != null && keys.remove(key) && keys.isEmpty())
+			reportsByMonth.remove(key.month);
+	}
+
+	private static String areaKey(String area, YearMonth month) {
+		return area + '@' + month;
+	}
+
+	/**
+	 * @return the number of reports served from the cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of reports that had to be built
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the share of the requests served from the cache, 0 if there were none
+	 */
+	public double getHitRate() {
+		long hits = getHitCount(), total = hits + getMissCount();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return the number of reports dropped to make room for others
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the number of invalidations, one per committed order
+	 */
+	public long getInvalidationCount() {
+		return invalidations.sum();
+	}
+
+	/**
+	 * @return the number of reports cached
+	 */
+	public synchronized int size() {
+		return reports.size();
+	}
+}
@@ -0,0 +1,121 @@
+package ekrut.server.managers;
+
+import ekrut.entity.InventoryItem;
+import ekrut.server.db.DBController;
+import ekrut.server.db.InventoryCache;
+import ekrut.server.db.InventoryChangeListener;
+import ekrut.server.db.InventoryChanges;
+import ekrut.server.db.InventoryItemDAO;
+import ekrut.server.db.LowStockListener;
+import ekrut.server.db.StockReservation;
+import ekrut.net.InventoryItemRequest;
+import ekrut.net.InventoryItemResponse;
+
+/**
+ * This class handles inventory requests on the server side. Inventory is served
+ * from an {@link InventoryCache} and quantity changes reach the database in the
+ * background.
+ */
+public class ServerInventoryManager {
+
+	private InventoryCache inventoryCache;
+
+	public ServerInventoryManager(DBController con) {
+		this(con, InventoryCache.DEFAULT_MAX_STALENESS_MILLIS);
+	}
+
+	/**
+	 * @param con                the controller used to access the database
+	 * @param maxStalenessMillis the longest time a quantity change may stay in memory before it is written to the database
+	 */
+	public ServerInventoryManager(DBController con, long maxStalenessMillis) {
+		this.inventoryCache = new InventoryCache(new InventoryItemDAO(con), maxStalenessMillis);
+	}
+
+	/**
+	 * Handles an inventory request sent by a client.
+	 * 
+	 * @param request the request to handle
+	 * @return        the response to send back to the client
+	 */
+	public InventoryItemResponse handleRequest(InventoryItemRequest request) {
+		if (request == null || request.getAction() == null)
+			return new InventoryItemResponse("Invalid request.");
+
+		try {
+			switch (request.getAction()) {
+			case FETCH_ITEM:
+				InventoryItem[] items = inventoryCache.getItems(request.getEkrutLocation());
+				return new InventoryItemResponse("OK", items);
+			case FETCH_CHANGES:
+				InventoryChanges changes = inventoryCache.getChanges(request.getEkrutLocation(),
+						request.getSinceVersion());
+				if (changes.isSnapshot())
+					return new InventoryItemResponse("OK", changes.getVersion(), changes.getItems());
+				return new InventoryItemResponse("OK", changes.getVersion(), changes.getUpdates());
+			case UPDATE_ITEM_QUANTITY:
+				if (request.getQuantity() < 0)
+					return new InventoryItemResponse("Quantity must be a non-negative number.");
+				return resultOf(inventoryCache.setQuantity(request.getEkrutLocation(),
+						request.getItemId(), request.getQuantity()));
+			case UPDATE_ITEMS_QUANTITY:
+				for (int quantity : request.getQuantities())
+					if (quantity < 0)
+						return new InventoryItemResponse("Quantity must be a non-negative number.");
+				return resultOf(inventoryCache.setQuantities(request.getEkrutLocation(),
+						request.getItemIds(), request.getQuantities()));
+			case UPDATE_ITEM_THRESHOLD:
+				if (request.getThreshold() < 0)
+					return new InventoryItemResponse("Threshold must be a non-negative number.");
+				return resultOf(inventoryCache.setThreshold(request.getEkrutLocation(),
+						request.getItemId(), request.getThreshold()));
+			default:
+				return new InventoryItemResponse("Invalid request.");
+			}
+		} catch (RuntimeException e) {
+			return new InventoryItemResponse("Database error.");
+		}
+	}
+
+	/**
+	 * Holds stock for an order, see {@link InventoryCache#reserve(String, int[], int[])}.
+	 *
+	 * @param ekrutLocation the machine the order is taken from
+	 * @param itemIds       the IDs of the ordered items
+	 * @param quantities    the ordered quantity of each item, in the same order as itemIds
+	 * @return              the reservation, or null if there is not enough stock
+	 */
+	public StockReservation reserve(String ekrutLocation, int[] itemIds, int[] quantities) {
+		return inventoryCache.reserve(ekrutLocation, itemIds, quantities);
+	}
+
+	/**
+	 * Registers a listener told about every change of an available quantity.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addInventoryChangeListener(InventoryChangeListener listener) {
+		inventoryCache.addChangeListener(listener);
+	}
+
+	/**
+	 * Registers a listener told when items fall below their threshold.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addLowStockListener(LowStockListener listener) {
+		inventoryCache.addLowStockListener(listener);
+	}
+
+	/**
+	 * Writes every pending inventory change to the database. Should be called
+	 * when the server stops.
+	 */
+	public void close() {
+		inventoryCache.close();
+	}
+
+	private static InventoryItemResponse resultOf(boolean success) {
+		return new InventoryItemResponse(success ? "OK" : "Item not found in this location.");
+	}
+}
@@ -0,0 +1,367 @@
+package ekrut.server.managers;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import ekrut.entity.Item;
+import ekrut.entity.Order;
+import ekrut.entity.OrderItem;
+import ekrut.entity.OrderStatus;
+import ekrut.entity.OrderType;
+import ekrut.net.OrderRequest;
+import ekrut.net.OrderRequestType;
+import ekrut.net.OrderResponse;
+import ekrut.server.db.DBController;
+import ekrut.server.db.ItemCatalog;
+import ekrut.server.db.OrderDAO;
+import ekrut.server.db.StockReservation;
+
+/**
+ * This class handles order requests on the server side.
+ *
+ * New orders go through a pipeline: each order is validated, has its items
+ * resolved through the {@link ItemCatalog} and its stock reserved on the thread
+ * that received it, then waits in a queue for the
+ * order writer. The writer takes the queued orders in groups, of up to the
+ * group size or whatever arrived within the group delay of the first one,
+ * and writes each group to the database in a single transaction, along with
+ * the report stats of its orders. One commit per group instead of one per order
+ * is what lets the database keep up at peak hours.
+ *
+ * A client is answered only once the group of its order is committed. Then
+ * the reserved stock is taken out of the machine and the cached reports the
+ * order changes are dropped. If the group fails, the stock of its orders is released and
+ * every one of them is answered with an error.
+ */
+public class ServerOrderManager {
+
+	public static final int DEFAULT_GROUP_SIZE = 64;
+	public static final long DEFAULT_GROUP_DELAY_MILLIS = 5;
+
+	private static class PendingOrder {
+		final Order order;
+		final StockReservation reservation;
+		final CompletableFuture<OrderResponse> response = new CompletableFuture<>();
+
+		PendingOrder(Order order, StockReservation reservation) {
+			this.order = order;
+			this.reservation = reservation;
+		}
+	}
+
+	private OrderDAO orderDAO;
+	private ItemCatalog itemCatalog;
+	private ServerInventoryManager serverInventoryManager;
+	private ServerReportManager serverReportManager;
+	private final int groupSize;
+	private final long groupDelayMillis;
+	private OrderIdAllocator orderIdAllocator;
+	private final LinkedBlockingQueue<PendingOrder> queue = new LinkedBlockingQueue<>();
+	private final ExecutorService writer;
+	private volatile boolean closed;
+	// Set if the writer stopped, whether closed or killed, so no order waits for it
+	private volatile boolean writerStopped;
+
+	// Statistics
+	private final LongAdder committedOrders = new LongAdder();
+	private final LongAdder committedGroups = new LongAdder();
+	private final LongAdder outOfStockOrders = new LongAdder();
+	private final LongAdder failedOrders = new LongAdder();
+	private final LongAdder failedPostCommits = new LongAdder();
+
+	public ServerOrderManager(DBController con, ItemCatalog itemCatalog, ServerInventoryManager serverInventoryManager,
+			ServerReportManager serverReportManager) {
+		this(con, itemCatalog, serverInventoryManager, serverReportManager, DEFAULT_GROUP_SIZE,
+				DEFAULT_GROUP_DELAY_MILLIS, OrderIdAllocator.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param con                    the controller used to access the database
+	 * @param itemCatalog            resolves the items of the orders
+	 * @param serverInventoryManager holds the stock of the orders
+	 * @param serverReportManager    adds the committed orders to the reports
+	 * @param groupSize              the maximum number of orders committed together
+	 * @param groupDelayMillis       how long the first order of a group waits for others to join it
+	 * @param orderIdBlockSize       the number of order IDs reserved from the database at a time
+	 */
+	public ServerOrderManager(DBController con, ItemCatalog itemCatalog, ServerInventoryManager serverInventoryManager,
+			ServerReportManager serverReportManager, int groupSize, long groupDelayMillis, int orderIdBlockSize) {
+		if (groupSize < 1)
+			throw new IllegalArgumentException("Group size must be positive");
+
+		this.orderDAO = new OrderDAO(con);
+		this.orderIdAllocator = new OrderIdAllocator(orderDAO, orderIdBlockSize);
+		this.itemCatalog = itemCatalog;
+		this.serverInventoryManager = serverInventoryManager;
+		this.serverReportManager = serverReportManager;
+		this.groupSize = groupSize;
+		this.groupDelayMillis = groupDelayMillis;
+		this.writer = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "Order writer");
+			t.setDaemon(true);
+			return t;
+		});
+		writer.execute(this::writeGroups);
+	}
+
+	/**
+	 * Handles an order request sent by a client.
+	 *
+	 * @param request the request to handle
+	 * @return        a future completed with the response to send back to the client
+	 */
+	public CompletableFuture<OrderResponse> handleRequest(OrderRequest request) {
+		if (request == null || request.getAction() != OrderRequestType.CREATE)
+			return CompletableFuture.completedFuture(new OrderResponse(OrderResponse.INVALID_REQUEST));
+		return createOrder(request.getOrder());
+	}
+
+	/**
+	 * Validates an order, reserves its stock and queues it to be written.
+	 *
+	 * @param order the new order, as sent by the client
+	 * @return      a future completed once the order is committed, or refused
+	 */
+	public CompletableFuture<OrderResponse> createOrder(Order order) {
+		if (!isValid(order))
+			return CompletableFuture.completedFuture(new OrderResponse(OrderResponse.INVALID_REQUEST));
+		if (closed)
+			return CompletableFuture.completedFuture(new OrderResponse(OrderResponse.ERROR));
+
+		// The same item may be listed twice, it is reserved and written once. The
+		// items are taken from the catalog, not as the client described them.
+		LinkedHashMap<Integer, OrderItem> merged = new LinkedHashMap<>();
+		for (OrderItem item : order.getItems()) {
+			Item known = itemCatalog.get(item.getItem().getItemId());
+			if (known == null)
+				return CompletableFuture.completedFuture(new OrderResponse(OrderResponse.INVALID_REQUEST));
+			merged.merge(known.getItemId(), new OrderItem(known, item.getItemQuantity()),
+					(a, b) -> new OrderItem(a.getItem(), a.getItemQuantity() + b.getItemQuantity()));
+		}
+		ArrayList<OrderItem> items = new ArrayList<>(merged.values());
+		int[] itemIds = new int[items.size()];
+		int[] itemQuantities = new int[items.size()];
+		for (int i = 0; i < items.size(); i++) {
+			itemIds[i] = items.get(i).getItem().getItemId();
+			itemQuantities[i] = items.get(i).getItemQuantity();
+		}
+
+		StockReservation reservation = null;
+		int orderId;
+		try {
+			reservation = serverInventoryManager.reserve(order.getEkrutLocation(), itemIds, itemQuantities);
+			if (reservation == null) {
+				outOfStockOrders.increment();
+				return CompletableFuture.completedFuture(new OrderResponse(OrderResponse.OUT_OF_STOCK));
+			}
+			orderId = orderIdAllocator.nextId();
+		} catch (RuntimeException e) {
+			if (reservation != null)
+				reservation.release();
+			failedOrders.increment();
+			return CompletableFuture.completedFuture(new OrderResponse(OrderResponse.ERROR));
+		}
+
+		Order submitted = new Order(orderId, LocalDate.now(), OrderStatus.SUBMITTED,
+				order.getType(), order.getDueDate(), order.getClientAddress(), order.getEkrutLocation(), items);
+		PendingOrder pending = new PendingOrder(submitted, reservation);
+		queue.add(pending);
+		// Closed meanwhile, the writer may be gone already
+		if ((closed || writerStopped) && queue.remove(pending))
+			fail(Collections.singletonList(pending));
+		return pending.response;
+	}
+
+	private static boolean isValid(Order order) {
+		if (order == null || order.getType() == null || order.getEkrutLocation() == null
+				|| order.getItems() == null || order.getItems().isEmpty())
+			return false;
+		if (order.getType() == OrderType.REMOTE && order.getClientAddress() == null)
+			return false;
+		for (OrderItem item : order.getItems())
+			if (item == null || item.getItem() == null || item.getItemQuantity() < 1)
+				return false;
+		return true;
+	}
+
+	/**
+	 * The loop of the order writer: waits for an order, gathers the orders
+	 * queued with it into a group and commits the group. Should the loop stop
+	 * for any reason, the queued orders fail and so do the new ones.
+	 */
+	private void writeGroups() {
+		ArrayList<PendingOrder> group = new ArrayList<>(groupSize);
+		try {
+			writeGroupsUntilClosed(group);
+		} finally {
+			writerStopped = true;
+			// The group being gathered, if any, then whatever is still queued
+			queue.drainTo(group);
+			fail(group);
+		}
+	}
+
+	private void writeGroupsUntilClosed(ArrayList<PendingOrder> group) {
+		try {
+			while (!closed || !queue.isEmpty()) {
+				PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null)
+					continue;
+
+				group.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(groupDelayMillis);
+				while (group.size() < groupSize) {
+					// Whatever is already queued joins at once, then wait out the delay for more
+					if (queue.drainTo(group, groupSize - group.size()) > 0)
+						continue;
+					long left = deadline - System.nanoTime();
+					if (left <= 0)
+						break;
+					PendingOrder next = queue.poll(left, TimeUnit.NANOSECONDS);
+					if (next == null)
+						break;
+					group.add(next);
+				}
+
+				try {
+					commit(group);
+				} catch (Throwable e) {
+					// Never leave a client without an answer, nor the writer dead
+					fail(group);
+				}
+				group.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void commit(ArrayList<PendingOrder> group) {
+		ArrayList<Order> orders = new ArrayList<>(group.size());
+		for (PendingOrder pending : group)
+			orders.add(pending.order);
+
+		try {
+			orderDAO.insertOrders(orders);
+		} catch (RuntimeException e) {
+			fail(group);
+			return;
+		}
+
+		// The orders are in the database now, whatever fails from here on they are answered OK
+		committedGroups.increment();
+		for (PendingOrder pending : group) {
+			try {
+				pending.reservation.commit();
+			} catch (Throwable e) {
+				failedPostCommits.increment();
+			}
+			try {
+				serverReportManager.orderCommitted(pending.order);
+			} catch (Throwable e) {
+				failedPostCommits.increment();
+			}
+			committedOrders.increment();
+			pending.response.complete(new OrderResponse(OrderResponse.OK, pending.order.getOrderId()));
+		}
+	}
+
+	private void fail(Iterable<PendingOrder> orders) {
+		for (PendingOrder pending : orders) {
+			// Orders already committed keep their stock and their answer
+			try {
+				if (pending.reservation.release())
+					failedOrders.increment();
+			} catch (Throwable e) {
+				failedOrders.increment();
+			}
+			pending.response.complete(new OrderResponse(OrderResponse.ERROR));
+		}
+	}
+
+	/**
+	 * Stops taking orders and waits for the queued ones to be written. Should be
+	 * called when the server stops, before the inventory and report managers
+	 * are closed.
+	 */
+	public void close() {
+		closed = true;
+		writer.shutdown();
+		try {
+			writer.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// Queued after the writer stopped
+		ArrayList<PendingOrder> left = new ArrayList<>();
+		queue.drainTo(left);
+		fail(left);
+	}
+
+	/**
+	 * @return the number of orders written to the database
+	 */
+	public long getCommittedOrderCount() {
+		return committedOrders.sum();
+	}
+
+	/**
+	 * @return the number of transactions the orders were written in
+	 */
+	public long getCommittedGroupCount() {
+		return committedGroups.sum();
+	}
+
+	/**
+	 * @return the average number of orders written per transaction
+	 */
+	public double getAverageGroupSize() {
+		long groups = getCommittedGroupCount();
+		return groups == 0 ? 0 : (double) getCommittedOrderCount() / groups;
+	}
+
+	/**
+	 * @return the number of orders refused for lack of stock
+	 */
+	public long getOutOfStockCount() {
+		return outOfStockOrders.sum();
+	}
+
+	/**
+	 * @return the number of orders that failed to be written
+	 */
+	public long getFailedOrderCount() {
+		return failedOrders.sum();
+	}
+
+	/**
+	 * @return the allocator giving out the IDs of new orders
+	 */
+	public OrderIdAllocator getOrderIdAllocator() {
+		return orderIdAllocator;
+	}
+
+	/**
+	 * @return the number of times taking the stock of a written order, or adding
+	 *         it to the reports, failed
+	 */
+	public long getFailedPostCommitCount() {
+		return failedPostCommits.sum();
+	}
+
+	/**
+	 * @return the number of orders waiting to be written
+	 */
+	public int getPendingCount() {
+		return queue.size();
+	}
+}
@@ -1,5 +1,338 @@
 package ekrut.server.managers;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import ekrut.entity.Order;
+import ekrut.entity.Report;
+import ekrut.entity.User;
+import ekrut.entity.UserType;
+import ekrut.net.ReportRequest;
+import ekrut.net.ReportResponse;
+import ekrut.server.db.DBController;
+import ekrut.server.db.DailyOrderStats;
+import ekrut.server.db.ReportDAO;
+
+/**
+ * This class handles report requests on the server side.
+ *
+ * Reports are never computed by going over the orders. Every order is added to
+ * the stats of its facility and day in the transaction that writes it (see
+ * {@link ekrut.server.db.OrderDAO#insertOrders(java.util.Collection)}), so the
+ * report of an area for a month only sums the days of the facilities in that
+ * area, however many orders they took, and always matches the orders table.
+ * Once a month is over, its reports are rolled up into report rows and served
+ * from there.
+ *
+ * Only the orders report exists. The inventory and customers reports named
+ * when reports were first planned have no data to be made of yet: orders do
+ * not record their customer, and the inventory keeps no history to sum by
+ * month.
+ *
+ * Built reports are kept in a {@link ReportCache}, so dashboards showing the
+ * same report again do not hit the database. Committing an order drops only
+ * the cached reports of its area and month.
+ *
+ * A request for {@link ReportRequest#ALL} areas or report types, as made for
+ * the CEO, builds every report it covers in parallel on a bounded fork-join
+ * pool, so it takes about as long as the slowest of them. Only the CEO may
+ * ask for every area at once.
+ */
 public class ServerReportManager {
 
+	/**
+	 * The orders report: one line per facility of the area,
+	 * "facility,number_of_orders,items_sold,total_amount".
+	 */
+	public static final String ORDERS_REPORT = "ORDERS";
+
+	public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 2000;
+	public static final int DEFAULT_REPORT_CACHE_SIZE = 1024;
+	// Bounded well below the connection pool, as every report reads the database
+	public static final int DEFAULT_REPORT_PARALLELISM = 4;
+
+	private static final String[] REPORT_TYPES = { ORDERS_REPORT };
+
+	private ReportDAO reportDAO;
+	private ReportCache reportCache;
+	private ForkJoinPool reportPool;
+	private volatile HashMap<String, String> locationAreas;
+	// Set when an order came from a facility of no known area, the areas are loaded again in the background
+	private volatile boolean locationAreasStale;
+	private YearMonth currentMonth = YearMonth.now();
+	private final ScheduledExecutorService checker;
+
+	// Statistics
+	private final LongAdder committedOrders = new LongAdder();
+
+	public ServerReportManager(DBController con) {
+		this(con, DEFAULT_CHECK_INTERVAL_MILLIS, DEFAULT_REPORT_CACHE_SIZE, DEFAULT_REPORT_PARALLELISM);
+	}
+
+	/**
+	 * @param con                 the controller used to access the database
+	 * @param checkIntervalMillis how often new facilities and the end of the month are checked for
+	 * @param reportCacheSize     the maximum number of reports kept in memory
+	 * @param reportParallelism   the maximum number of reports built at once for a single request
+	 */
+	public ServerReportManager(DBController con, long checkIntervalMillis, int reportCacheSize,
+			int reportParallelism) {
+		this.reportDAO = new ReportDAO(con);
+		this.reportCache = new ReportCache(reportCacheSize, REPORT_TYPES);
+		this.reportPool = new ForkJoinPool(reportParallelism);
+		this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Report roll-up");
+			t.setDaemon(true);
+			return t;
+		});
+		checker.scheduleWithFixedDelay(this::refreshAndRollUp, checkIntervalMillis, checkIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Drops the cached reports a committed order changes. The order is already
+	 * in the stats of its facility and day, written with it. Takes constant time
+	 * and never touches the database.
+	 *
+	 * @param order the committed order
+	 */
+	public void orderCommitted(Order order) {
+		LocalDate date = order.getDate() != null ? order.getDate() : LocalDate.now();
+		committedOrders.increment();
+
+		// Until the area of the facility is known, every area's reports for the month are dropped
+		HashMap<String, String> areas = locationAreas;
+		String area = areas == null ? null : areas.get(order.getEkrutLocation());
+		if (area == null)
+			locationAreasStale = true;
+		reportCache.invalidate(area, YearMonth.from(date));
+	}
+
+	/**
+	 * Handles a report request sent by a client.
+	 *
+	 * @param request the request to handle
+	 * @param user    the user logged in on the client, or null
+	 * @return        the response to send back to the client
+	 */
+	public ReportResponse handleRequest(ReportRequest request, User user) {
+		if (request != null && ReportRequest.ALL.equals(request.getArea())
+				&& (user == null || user.getUserType() != UserType.CEO)) {
+			ReportResponse response = new ReportResponse();
+			response.setResultCode(ReportResponse.UNAUTHORIZED);
+			return response;
+		}
+		return handleRequest(request);
+	}
+
+	/**
+	 * Handles a report request without checking who asked for it, for callers
+	 * inside the server.
+	 *
+	 * @param request the request to handle
+	 * @return        the response to send back
+	 */
+	public ReportResponse handleRequest(ReportRequest request) {
+		ReportResponse response = new ReportResponse();
+		if (request == null || request.getArea() == null || request.getDate() == null
+				|| !isReportType(request.getReportType())) {
+			response.setResultCode(ReportResponse.INVALID_REQUEST);
+			return response;
+		}
+
+		try {
+			YearMonth month = YearMonth.from(request.getDate());
+			if (ReportRequest.ALL.equals(request.getArea()) || ReportRequest.ALL.equals(request.getReportType()))
+				response.setReports(getMonthlyReports(request.getReportType(), request.getArea(), month));
+			else
+				response.setReport(getMonthlyReport(request.getReportType(), request.getArea(), month));
+			response.setResultCode(ReportResponse.OK);
+		} catch (RuntimeException e) {
+			response.setResultCode(ReportResponse.ERROR);
+		}
+		return response;
+	}
+
+	private static boolean isReportType(String reportType) {
+		if (ReportRequest.ALL.equals(reportType))
+			return true;
+		for (String type : REPORT_TYPES)
+			if (type.equals(reportType))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the reports of several areas and types for a month, building them
+	 * in parallel.
+	 *
+	 * @param reportType the type of the reports, or {@link ReportRequest#ALL}
+	 * @param area       the area the reports cover, or {@link ReportRequest#ALL}
+	 * @param month      the month the reports cover
+	 * @return           the reports, by area and then by type
+	 */
+	public ArrayList<Report> getMonthlyReports(String reportType, String area, YearMonth month) {
+		Iterable<String> areas = ReportRequest.ALL.equals(area) ? new TreeSet<>(getLocationAreas().values())
+				: Collections.singletonList(area);
+		String[] types = ReportRequest.ALL.equals(reportType) ? REPORT_TYPES : new String[] { reportType };
+
+		ArrayList<ForkJoinTask<Report>> tasks = new ArrayList<>();
+		for (String a : areas)
+			for (String type : types)
+				tasks.add(reportPool.submit(() -> getMonthlyReport(type, a, month)));
+
+		ArrayList<Report> reports = new ArrayList<>(tasks.size());
+		for (ForkJoinTask<Report> task : tasks)
+			reports.add(task.join());
+		return reports;
+	}
+
+	/**
+	 * Returns the report of an area for a month, from the cache if possible.
+	 * Otherwise, reports of months that are over are read from their report row,
+	 * rolling the month up first if needed, and the report of the current month
+	 * is summed from its days.
+	 *
+	 * @param reportType the type of the report
+	 * @param area       the area the report covers
+	 * @param month      the month the report covers
+	 * @return           the report
+	 */
+	public Report getMonthlyReport(String reportType, String area, YearMonth month) {
+		Report report = reportCache.get(reportType, area, month);
+		if (report != null)
+			return report;
+
+		long stamp = reportCache.stamp();
+		try {
+			if (!month.isBefore(YearMonth.now())) {
+				report = buildReport(reportType, area, month);
+			} else {
+				report = reportDAO.fetchReport(reportType, area, month.atDay(1).atStartOfDay());
+				if (report == null)
+					report = rollUp(reportType, area, month);
+			}
+			reportCache.put(report, month, stamp);
+		} finally {
+			reportCache.release(stamp);
+		}
+		return report;
+	}
+
+	/**
+	 * Saves the report of an area for a month that is over, unless it was
+	 * already saved.
+	 */
+	private Report rollUp(String reportType, String area, YearMonth month) {
+		LocalDateTime start = month.atDay(1).atStartOfDay();
+		Report report = reportDAO.fetchReport(reportType, area, start);
+		if (report != null)
+			return report;
+
+		report = buildReport(reportType, area, month);
+		try {
+			reportDAO.saveReport(report);
+		} catch (RuntimeException e) {
+			// Rolled up by someone else meanwhile
+			Report saved = reportDAO.fetchReport(reportType, area, start);
+			if (saved == null)
+				throw e;
+			report = saved;
+		}
+		return report;
+	}
+
+	private Report buildReport(String reportType, String area, YearMonth month) {
+		ArrayList<DailyOrderStats> days = reportDAO.fetchDailyOrderStats(area, month.atDay(1), month.atEndOfMonth());
+		// Loaded for the invalidation of the cache by orderCommitted
+		getLocationAreas();
+
+		TreeMap<String, DailyOrderStats> facilities = new TreeMap<>();
+		for (DailyOrderStats day : days)
+			facilities.merge(day.getEkrutLocation(), day, DailyOrderStats::plus);
+
+		StringBuilder content = new StringBuilder();
+		for (DailyOrderStats facility : facilities.values())
+			content.append(facility.getEkrutLocation()).append(',').append(facility.getNumberOfOrders())
+					.append(',').append(facility.getItemsSold()).append(',').append(facility.getTotalAmount())
+					.append('\n');
+		return new Report(reportType, month.atDay(1).atStartOfDay(), area, content.toString());
+	}
+
+	/**
+	 * Returns the area of every facility, loading them if they are not known
+	 * yet.
+	 */
+	private HashMap<String, String> getLocationAreas() {
+		HashMap<String, String> areas = locationAreas;
+		if (areas == null) {
+			areas = reportDAO.fetchLocationAreas();
+			locationAreas = areas;
+		}
+		return areas;
+	}
+
+	/**
+	 * Loads the areas again if an order came from an unknown facility and, once
+	 * a month is over, rolls up the reports of every area for it.
+	 */
+	private void refreshAndRollUp() {
+		try {
+			if (locationAreasStale) {
+				// A new facility, or the areas were never loaded
+				locationAreasStale = false;
+				locationAreas = reportDAO.fetchLocationAreas();
+			}
+
+			YearMonth now = YearMonth.now();
+			if (now.equals(currentMonth))
+				return;
+
+			for (String area : new TreeSet<>(getLocationAreas().values()))
+				for (String reportType : REPORT_TYPES)
+					rollUp(reportType, area, currentMonth);
+			currentMonth = now;
+		} catch (RuntimeException e) {
+			// Tried again on the next run
+		}
+	}
+
+	/**
+	 * Stops the background roll-up.
+	 */
+	public void close() {
+		checker.shutdown();
+		reportPool.shutdown();
+		try {
+			checker.awaitTermination(DEFAULT_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the cache of the built reports, mainly for its statistics
+	 */
+	public ReportCache getReportCache() {
+		return reportCache;
+	}
+
+	/**
+	 * @return the number of committed orders the reports were told about
+	 */
+	public long getCommittedOrderCount() {
+		return committedOrders.sum();
+	}
 }
@@ -1,5 +1,360 @@
-package ekrut.server.managers;
-
-public class ServerSessionManager {
-
-}
+package ekrut.server.managers;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import ekrut.entity.User;
+import ekrut.net.UserRequest;
+import ekrut.net.UserRequestType;
+import ekrut.net.UserResponse;
+import ekrut.server.db.UserDAO;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * This class handles the user sessions on the server side.
+ *
+ * Sessions are kept in concurrent maps by token, by username and by
+ * connection, so logging in, logging out and {@link ekrut.net.UserRequestType#IS_CONNECTED}
+ * are a few hash lookups and never wait on a lock shared by all users, even
+ * when a whole shift logs in at once. A user may be logged in on a single
+ * connection at a time.
+ *
+ * Logging in returns the token of the session. Requests carrying the token are
+ * tied to their user by {@link #getSession(String, ConnectionToClient)}, one
+ * hash lookup, rather than by checking credentials. When a connection closes,
+ * its session is detached and kept for {@link #DEFAULT_RESUME_GRACE_MILLIS},
+ * so a client reconnecting after a network failure resumes it with its token
+ * instead of logging in again.
+ *
+ * Sessions that stay idle longer than the idle timeout expire. Rather than
+ * scanning every session periodically, each session is scheduled on a
+ * {@link TimingWheel} at its deadline; using a session only records the time,
+ * and a session found still in use when its deadline comes is scheduled again.
+ */
+public class ServerSessionManager {
+
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30 * 60 * 1000;
+	public static final long DEFAULT_RESUME_GRACE_MILLIS = 2 * 60 * 1000;
+
+	private static final long TICK_MILLIS = 1000;
+	private static final int WHEEL_SIZE = 512;
+	private static final int TOKEN_BYTES = 24;
+
+	private UserDAO userDAO;
+	private final long idleTimeoutMillis;
+	private final long resumeGraceMillis;
+	private final ConcurrentHashMap<String, Session> sessionsByToken = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Session> sessionsByUsername = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<ConnectionToClient, Session> sessionsByClient = new ConcurrentHashMap<>();
+	private final SecureRandom random = new SecureRandom();
+	private final TimingWheel<Session> expiries;
+	private final ScheduledExecutorService expirer;
+
+	// Statistics
+	private final LongAdder logins = new LongAdder();
+	private final LongAdder failedLogins = new LongAdder();
+	private final LongAdder expiredSessions = new LongAdder();
+	private final LongAdder resumedSessions = new LongAdder();
+
+	public ServerSessionManager(UserDAO userDAO) {
+		this(userDAO, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_RESUME_GRACE_MILLIS);
+	}
+
+	/**
+	 * @param userDAO           the DAO used to check the credentials of the users
+	 * @param idleTimeoutMillis how long a session may stay unused before it expires
+	 */
+	public ServerSessionManager(UserDAO userDAO, long idleTimeoutMillis) {
+		this(userDAO, idleTimeoutMillis, DEFAULT_RESUME_GRACE_MILLIS);
+	}
+
+	/**
+	 * @param userDAO           the DAO used to check the credentials of the users
+	 * @param idleTimeoutMillis how long a session may stay unused before it expires
+	 * @param resumeGraceMillis how long a session outlives its connection, waiting to be resumed
+	 */
+	public ServerSessionManager(UserDAO userDAO, long idleTimeoutMillis, long resumeGraceMillis) {
+		this.userDAO = userDAO;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.resumeGraceMillis = resumeGraceMillis;
+		this.expiries = new TimingWheel<>(TICK_MILLIS, WHEEL_SIZE, System.currentTimeMillis());
+		this.expirer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Session expirer");
+			t.setDaemon(true);
+			return t;
+		});
+		expirer.scheduleAtFixedRate(this::expireIdleSessions, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Handles a user request sent by a client.
+	 *
+	 * @param request the request to handle
+	 * @param client  the connection the request came from
+	 * @return        the response to send back to the client
+	 */
+	public UserResponse handleRequest(UserRequest request, ConnectionToClient client) {
+		if (request == null || request.getAction() == null)
+			return new UserResponse(UserResponse.INVALID_REQUEST);
+		if (request.getAction() == UserRequestType.RESUME)
+			return resume(request.getToken(), client);
+		if (request.getUsername() == null)
+			return new UserResponse(UserResponse.INVALID_REQUEST);
+
+		try {
+			switch (request.getAction()) {
+			case CONNECT:
+				return connect(request.getUsername(), request.getPassword(), request.getToken(), client);
+			case DISCONNECT:
+				return new UserResponse(disconnect(request.getUsername(), client));
+			case IS_CONNECTED:
+				return new UserResponse(isConnected(request.getUsername(), client) ? UserResponse.OK
+						: UserResponse.NOT_CONNECTED);
+			default:
+				return new UserResponse(UserResponse.INVALID_REQUEST);
+			}
+		} catch (RuntimeException e) {
+			return new UserResponse(UserResponse.ERROR);
+		}
+	}
+
+	/**
+	 * Logs a user in. The token of a previous session of the client, if any,
+	 * lets the password be checked from the cache of recent checks.
+	 */
+	private UserResponse connect(String username, String password, String previousToken,
+			ConnectionToClient client) {
+		User user = password == null ? null : userDAO.verifyUser(username, password, previousToken);
+		if (user == null) {
+			failedLogins.increment();
+			return new UserResponse(UserResponse.WRONG_CREDENTIALS);
+		}
+
+		long now = System.currentTimeMillis();
+		Session session = new Session(newToken(), user, client, now);
+		if (!register(sessionsByUsername, username, session, now))
+			return new UserResponse(UserResponse.ALREADY_CONNECTED);
+		if (!register(sessionsByClient, client, session, now)) {
+			// Another user is logged in on this connection
+			sessionsByUsername.remove(username, session);
+			return new UserResponse(UserResponse.ALREADY_CONNECTED);
+		}
+		sessionsByToken.put(session.getToken(), session);
+		userDAO.cacheVerification(user, password, session.getToken());
+
+		expiries.schedule(session, now + idleTimeoutMillis);
+		logins.increment();
+		return new UserResponse(UserResponse.OK, session.getToken());
+	}
+
+	/**
+	 * Moves the session of a token to a new connection, e.g. after the client
+	 * reconnected.
+	 */
+	private UserResponse resume(String token, ConnectionToClient client) {
+		Session session = token == null ? null : sessionsByToken.get(token);
+		long now = System.currentTimeMillis();
+		if (session == null || isExpired(session, now))
+			return new UserResponse(UserResponse.SESSION_EXPIRED);
+
+		ConnectionToClient previous = session.getClient();
+		if (previous != client) {
+			if (!register(sessionsByClient, client, session, now))
+				return new UserResponse(UserResponse.ALREADY_CONNECTED);
+			session.setClient(client);
+			if (previous != null)
+				sessionsByClient.remove(previous, session);
+			// Ended meanwhile by its previous connection, or expired
+			if (sessionsByToken.get(token) != session) {
+				sessionsByClient.remove(client, session);
+				return new UserResponse(UserResponse.SESSION_EXPIRED);
+			}
+			resumedSessions.increment();
+		}
+		session.touch(now);
+		return new UserResponse(UserResponse.OK, token);
+	}
+
+	/**
+	 * Puts a session in a map unless a session still in use is there, ending
+	 * the one that is there if it expired but was not collected yet, or if it
+	 * is waiting to be resumed and the user logged in again instead.
+	 *
+	 * @return true if the session was put
+	 */
+	private <K> boolean register(ConcurrentHashMap<K, Session> sessions, K key, Session session, long now) {
+		Session existing;
+		while ((existing = sessions.putIfAbsent(key, session)) != null) {
+			if (existing.getClient() != null && !isExpired(existing, now))
+				return false;
+			end(existing);
+			if (existing.getClient() != null)
+				expiredSessions.increment();
+		}
+		return true;
+	}
+
+	private int disconnect(String username, ConnectionToClient client) {
+		Session session = sessionsByClient.get(client);
+		if (session == null || !session.getUser().getUsername().equals(username))
+			return UserResponse.NOT_CONNECTED;
+
+		end(session);
+		// Logging in again after logging out checks the password in full
+		userDAO.forgetVerifications(username);
+		return UserResponse.OK;
+	}
+
+	/**
+	 * @param username the user to look for
+	 * @param client   the connection asking, whose own session is kept alive by asking
+	 * @return         true if the user is logged in
+	 */
+	private boolean isConnected(String username, ConnectionToClient client) {
+		Session session = sessionsByUsername.get(username);
+		long now = System.currentTimeMillis();
+		// A session waiting to be resumed does not count, the user may log in again
+		if (session == null || session.getClient() == null || isExpired(session, now))
+			return false;
+
+		if (session.getClient() == client)
+			session.touch(now);
+		return true;
+	}
+
+	/**
+	 * Returns the session of a token sent on a connection, marking it as used.
+	 * A token is only accepted on the connection of its session; after
+	 * reconnecting, the client resumes the session first.
+	 *
+	 * @param token  the token of the session
+	 * @param client the connection the token was sent on
+	 * @return       the session, or null if the token is unknown, expired or
+	 *               belongs to another connection
+	 */
+	public Session getSession(String token, ConnectionToClient client) {
+		Session session = token == null ? null : sessionsByToken.get(token);
+		long now = System.currentTimeMillis();
+		if (session == null || session.getClient() != client || isExpired(session, now))
+			return null;
+
+		session.touch(now);
+		return session;
+	}
+
+	/**
+	 * Returns the session a user logged in on a connection, marking it as used.
+	 *
+	 * @param client the connection
+	 * @return       the session, or null if no user is logged in on it
+	 */
+	public Session getSession(ConnectionToClient client) {
+		Session session = sessionsByClient.get(client);
+		long now = System.currentTimeMillis();
+		if (session == null || isExpired(session, now))
+			return null;
+
+		session.touch(now);
+		return session;
+	}
+
+	/**
+	 * Detaches the session of a connection when it closes. The session expires
+	 * unless resumed on another connection within the grace period.
+	 *
+	 * @param client the connection
+	 */
+	public void clientDisconnected(ConnectionToClient client) {
+		Session session = sessionsByClient.remove(client);
+		if (session == null || session.getClient() != client)
+			return;
+
+		long now = System.currentTimeMillis();
+		session.setClient(null);
+		session.touch(now);
+		expiries.schedule(session, now + resumeGraceMillis);
+	}
+
+	private boolean isExpired(Session session, long now) {
+		long timeout = session.getClient() == null ? resumeGraceMillis : idleTimeoutMillis;
+		return now - session.getLastAccessMillis() >= timeout;
+	}
+
+	private void end(Session session) {
+		sessionsByToken.remove(session.getToken(), session);
+		sessionsByUsername.remove(session.getUser().getUsername(), session);
+		ConnectionToClient client = session.getClient();
+		if (client != null)
+			sessionsByClient.remove(client, session);
+	}
+
+	private void expireIdleSessions() {
+		long now = System.currentTimeMillis();
+		expiries.advance(now, session -> {
+			// Already ended
+			if (sessionsByToken.get(session.getToken()) != session)
+				return;
+
+			if (isExpired(session, now)) {
+				end(session);
+				expiredSessions.increment();
+			} else {
+				long timeout = session.getClient() == null ? resumeGraceMillis : idleTimeoutMillis;
+				expiries.schedule(session, session.getLastAccessMillis() + timeout);
+			}
+		});
+	}
+
+	private String newToken() {
+		byte[] bytes = new byte[TOKEN_BYTES];
+		random.nextBytes(bytes);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	/**
+	 * Stops expiring the idle sessions.
+	 */
+	public void close() {
+		expirer.shutdown();
+	}
+
+	/**
+	 * @return the number of users logged in
+	 */
+	public int getSessionCount() {
+		return sessionsByToken.size();
+	}
+
+	/**
+	 * @return the number of successful logins
+	 */
+	public long getLoginCount() {
+		return logins.sum();
+	}
+
+	/**
+	 * @return the number of logins refused for wrong credentials
+	 */
+	public long getFailedLoginCount() {
+		return failedLogins.sum();
+	}
+
+	/**
+	 * @return the number of sessions ended for staying idle
+	 */
+	public long getExpiredSessionCount() {
+		return expiredSessions.sum();
+	}
+
+	/**
+	 * @return the number of sessions resumed on a new connection
+	 */
+	public long getResumedSessionCount() {
+		return resumedSessions.sum();
+	}
+}
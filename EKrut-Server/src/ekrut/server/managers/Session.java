@@ -0,0 +1,60 @@
+package ekrut.server.managers;
+
+import ekrut.entity.User;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * A user logged in on a connection, as kept by {@link ServerSessionManager}.
+ * The session is identified by an opaque random token and ends when the user
+ * disconnects or the session stays idle for too long. When its connection
+ * closes, the session is detached and may be resumed on a new connection with
+ * its token for a short while.
+ */
+public class Session {
+
+	private final String token;
+	private final User user;
+	private volatile ConnectionToClient client;
+	private volatile long lastAccessMillis;
+
+	Session(String token, User user, ConnectionToClient client, long nowMillis) {
+		this.token = token;
+		this.user = user;
+		this.client = client;
+		this.lastAccessMillis = nowMillis;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	/**
+	 * @return the connection the session is used on, or null while detached
+	 */
+	public ConnectionToClient getClient() {
+		return client;
+	}
+
+	void setClient(ConnectionToClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * @return when the session was last used, in milliseconds since the epoch
+	 */
+	public long getLastAccessMillis() {
+		return lastAccessMillis;
+	}
+
+	/**
+	 * Marks the session as used, pushing back its expiry. A plain write, so the
+	 * requests of a session never contend with each other.
+	 */
+	void touch(long nowMillis) {
+		lastAccessMillis = nowMillis;
+	}
+}
@@ -0,0 +1,98 @@
+package ekrut.server.managers;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel: deadlines are hashed by their tick into a fixed ring
+ * of buckets, so scheduling is O(1) and each tick only looks at the entries of
+ * one bucket instead of scanning everything scheduled. Deadlines further away
+ * than one turn of the wheel stay in their bucket for the following turns.
+ *
+ * Entries may be scheduled from any thread, while {@link #advance(long, Consumer)}
+ * is called by a single thread. An entry scheduled while its bucket is being
+ * expired may fire one turn late, so users must not rely on the wheel alone to
+ * decide whether something expired.
+ *
+ * @param <T> the type of the scheduled entries
+ */
+class TimingWheel<T> {
+
+	private static class Timeout<T> {
+		final T entry;
+		final long deadlineTick;
+
+		Timeout(T entry, long deadlineTick) {
+			this.entry = entry;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+
+	private final long tickMillis;
+	private final ConcurrentLinkedQueue<Timeout<T>>[] buckets;
+	private final int mask;
+	// The last tick expired, only written by the thread advancing the wheel
+	private volatile long currentTick;
+
+	/**
+	 * @param tickMillis  the length of a tick, the precision of the deadlines
+	 * @param bucketCount the number of buckets, rounded up to a power of two
+	 * @param nowMillis   the current time
+	 */
+	TimingWheel(long tickMillis, int bucketCount, long nowMillis) {
+		if (tickMillis < 1 || bucketCount < 1)
+			throw new IllegalArgumentException("Tick and bucket count must be positive");
+
+		int size = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+		this.tickMillis = tickMillis;
+		this.buckets = newBuckets(size);
+		this.mask = size - 1;
+		this.currentTick = nowMillis / tickMillis;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> ConcurrentLinkedQueue<Timeout<T>>[] newBuckets(int size) {
+		// A generic array cannot be created, only cast to
+		ConcurrentLinkedQueue<Timeout<T>>[] buckets =
+				(ConcurrentLinkedQueue<Timeout<T>>[]) new ConcurrentLinkedQueue<?>[size];
+		for (int i = 0; i < size; i++)
+			buckets[i] = new ConcurrentLinkedQueue<>();
+		return buckets;
+	}
+
+	/**
+	 * @param entry          the entry to expire
+	 * @param deadlineMillis when to expire it, rounded up to the next tick
+	 */
+	void schedule(T entry, long deadlineMillis) {
+		long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+		buckets[(int) (tick & mask)].add(new Timeout<>(entry, tick));
+	}
+
+	/**
+	 * Expires every entry whose deadline passed, tick by tick.
+	 *
+	 * @param nowMillis the current time
+	 * @param expired   called with each expired entry
+	 */
+	void advance(long nowMillis, Consumer<T> expired) {
+		long target = nowMillis / tickMillis;
+		ArrayList<Timeout<T>> later = new ArrayList<>();
+		while (currentTick < target) {
+			long tick = currentTick + 1;
+			ConcurrentLinkedQueue<Timeout<T>> bucket = buckets[(int) (tick & mask)];
+			Timeout<T> timeout;
+			while ((timeout = bucket.poll()) != null) {
+				if (timeout.deadlineTick <= tick)
+					expired.accept(timeout.entry);
+				else
+					later.add(timeout);
+			}
+			// Put back once the bucket is drained, or they would be polled again
+			bucket.addAll(later);
+			later.clear();
+			currentTick = tick;
+		}
+	}
+}
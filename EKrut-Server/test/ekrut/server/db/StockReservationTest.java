@@ -0,0 +1,225 @@
+package ekrut.server.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ekrut.entity.InventoryItem;
+import ekrut.entity.Item;
+
+/**
+ * Tests the reservations of {@link InventoryCache} and the stock they are
+ * taken from, against an inventory held in memory instead of the database.
+ */
+public class StockReservationTest {
+
+	private static final String LOCATION = "Haifa";
+	private static final int COLA = 1;
+	private static final int CHIPS = 2;
+
+	/**
+	 * Loads a fixed inventory and keeps the quantities flushed to it.
+	 */
+	private static class MemoryInventoryDAO extends InventoryItemDAO {
+		final ConcurrentHashMap<Integer, Integer> flushed = new ConcurrentHashMap<>();
+
+		MemoryInventoryDAO() {
+			super(null);
+		}
+
+		@Override
+		public InventoryItem[] fetchAllItemsByLocation(String ekrutLocation) {
+			if (!LOCATION.equals(ekrutLocation))
+				return new InventoryItem[0];
+			return new InventoryItem[] {
+					new InventoryItem(new Item(COLA, "Cola", "Can", 5), 100, ekrutLocation, 0),
+					new InventoryItem(new Item(CHIPS, "Chips", "Bag", 7), 10, ekrutLocation, 0) };
+		}
+
+		@Override
+		public Boolean updateItemQuantities(String ekrutLocation, int[] itemIds, int[] quantities) {
+			for (int i = 0; i < itemIds.length; i++)
+				flushed.put(itemIds[i], quantities[i]);
+			return true;
+		}
+	}
+
+	private MemoryInventoryDAO dao;
+	private InventoryCache cache;
+
+	@Before
+	public void setUp() {
+		dao = new MemoryInventoryDAO();
+		// Flushed by the tests only
+		cache = new InventoryCache(dao, TimeUnit.HOURS.toMillis(1));
+	}
+
+	@After
+	public void tearDown() {
+		cache.close();
+	}
+
+	private int available(int itemId) {
+		return cache.getItem(LOCATION, itemId).getItemQuantity();
+	}
+
+	@Test
+	public void reserveTakesUnitsOutOfTheAvailableStock() {
+		StockReservation reservation = cache.reserve(LOCATION, new int[] { COLA, CHIPS }, new int[] { 3, 4 });
+
+		assertNotNull(reservation);
+		assertEquals(97, available(COLA));
+		assertEquals(6, available(CHIPS));
+	}
+
+	@Test
+	public void commitKeepsTheUnitsSold() {
+		StockReservation reservation = cache.reserve(LOCATION, new int[] { COLA }, new int[] { 3 });
+
+		assertTrue(reservation.commit());
+		assertEquals(97, available(COLA));
+		cache.flush();
+		assertEquals(Integer.valueOf(97), dao.flushed.get(COLA));
+	}
+
+	@Test
+	public void releaseGivesTheUnitsBack() {
+		StockReservation reservation = cache.reserve(LOCATION, new int[] { COLA }, new int[] { 3 });
+
+		assertTrue(reservation.release());
+		assertEquals(100, available(COLA));
+		cache.flush();
+		// Nothing was sold, so nothing is written
+		assertNull(dao.flushed.get(COLA));
+	}
+
+	@Test
+	public void onlyTheFirstCallEndsAReservation() {
+		StockReservation reservation = cache.reserve(LOCATION, new int[] { COLA }, new int[] { 3 });
+
+		assertTrue(reservation.commit());
+		assertFalse(reservation.release());
+		assertFalse(reservation.commit());
+		assertEquals(97, available(COLA));
+	}
+
+	@Test
+	public void failedReservationGivesBackTheItemsAlreadyTaken() {
+		assertNull(cache.reserve(LOCATION, new int[] { COLA, CHIPS }, new int[] { 3, 11 }));
+
+		assertEquals(100, available(COLA));
+		assertEquals(10, available(CHIPS));
+		assertEquals(1, cache.getRejectedReservationCount());
+	}
+
+	@Test
+	public void unknownItemIsRejected() {
+		assertNull(cache.reserve(LOCATION, new int[] { COLA, 99 }, new int[] { 1, 1 }));
+		assertEquals(100, available(COLA));
+	}
+
+	@Test
+	public void locationWithoutItemsIsNotCached() {
+		assertEquals(0, cache.getItems("Nowhere").length);
+		assertEquals(0, cache.getItems("Nowhere").length);
+		assertNull(cache.reserve("Nowhere", new int[] { COLA }, new int[] { 1 }));
+		// Loaded again on every request, while a real location is loaded once
+		assertEquals(3, cache.getLoadCount());
+
+		available(COLA);
+		available(COLA);
+		assertEquals(4, cache.getLoadCount());
+	}
+
+	@Test
+	public void concurrentReservationsNeverOversell() throws Exception {
+		int threads = 8;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicInteger reserved = new AtomicInteger();
+		ArrayList<Future<?>> done = new ArrayList<>();
+		for (int t = 0; t < threads; t++)
+			done.add(pool.submit(() -> {
+				start.await();
+				for (int i = 0; i < 10; i++)
+					if (cache.reserve(LOCATION, new int[] { CHIPS }, new int[] { 1 }) != null)
+						reserved.incrementAndGet();
+				return null;
+			}));
+		start.countDown();
+		for (Future<?> f : done)
+			f.get(10, TimeUnit.SECONDS);
+		pool.shutdown();
+
+		assertEquals(10, reserved.get());
+		assertEquals(0, available(CHIPS));
+	}
+
+	@Test
+	public void racingCommitAndReleaseEndEachReservationOnce() throws Exception {
+		int rounds = 50;
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		int committed = 0;
+		for (int i = 0; i < rounds; i++) {
+			StockReservation reservation = cache.reserve(LOCATION, new int[] { COLA }, new int[] { 1 });
+			CountDownLatch start = new CountDownLatch(1);
+			Future<Boolean> commit = pool.submit(() -> {
+				start.await();
+				return reservation.commit();
+			});
+			Future<Boolean> release = pool.submit(() -> {
+				start.await();
+				return reservation.release();
+			});
+			start.countDown();
+
+			boolean wasCommitted = commit.get(10, TimeUnit.SECONDS);
+			assertTrue(wasCommitted != release.get(10, TimeUnit.SECONDS));
+			if (wasCommitted)
+				committed++;
+		}
+		pool.shutdown();
+
+		assertEquals(100 - committed, available(COLA));
+		cache.flush();
+		if (committed > 0)
+			assertEquals(Integer.valueOf(100 - committed), dao.flushed.get(COLA));
+	}
+
+	@Test
+	public void packedStockKeepsBothHalves() {
+		long stock = InventoryCache.Entry.stock(Integer.MAX_VALUE, 5);
+
+		assertEquals(Integer.MAX_VALUE, InventoryCache.Entry.available(stock));
+		assertEquals(5, InventoryCache.Entry.reserved(stock));
+		assertEquals(0, InventoryCache.Entry.available(InventoryCache.Entry.stock(0, Integer.MAX_VALUE)));
+		assertEquals(Integer.MAX_VALUE, InventoryCache.Entry.reserved(InventoryCache.Entry.stock(0, Integer.MAX_VALUE)));
+	}
+
+	@Test
+	public void restockKeepsTheReservedUnits() {
+		StockReservation reservation = cache.reserve(LOCATION, new int[] { CHIPS }, new int[] { 4 });
+
+		// The machine now physically holds 20, 4 of them still reserved
+		assertTrue(cache.setQuantity(LOCATION, CHIPS, 20));
+		assertEquals(16, available(CHIPS));
+
+		reservation.release();
+		assertEquals(20, available(CHIPS));
+	}
+}
@@ -0,0 +1,110 @@
+package ekrut.server.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ekrut.server.db.OrderDAO;
+
+/**
+ * Tests {@link OrderIdAllocator} against blocks reserved in memory instead of
+ * the database.
+ */
+public class OrderIdAllocatorTest {
+
+	/**
+	 * Reserves consecutive blocks starting from 1000, slowly, so threads pile up
+	 * on a used-up block.
+	 */
+	private static class MemoryOrderDAO extends OrderDAO {
+		final AtomicInteger next = new AtomicInteger(1000);
+		final AtomicInteger reservations = new AtomicInteger();
+
+		MemoryOrderDAO() {
+			super(null);
+		}
+
+		@Override
+		public int reserveOrderIds(int blockSize) {
+			reservations.incrementAndGet();
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return next.getAndAdd(blockSize);
+		}
+	}
+
+	@Test
+	public void idsComeOutOfTheBlockInOrder() {
+		MemoryOrderDAO dao = new MemoryOrderDAO();
+		OrderIdAllocator allocator = new OrderIdAllocator(dao, 3);
+
+		for (int id = 1000; id < 1007; id++)
+			assertEquals(id, allocator.nextId());
+		assertEquals(3, allocator.getReservedBlockCount());
+		assertEquals(3, dao.reservations.get());
+	}
+
+	@Test
+	public void blockIsReservedOnlyWhenFirstNeeded() {
+		MemoryOrderDAO dao = new MemoryOrderDAO();
+		OrderIdAllocator allocator = new OrderIdAllocator(dao, 10);
+
+		assertEquals(0, allocator.getReservedBlockCount());
+		allocator.nextId();
+		assertEquals(1, allocator.getReservedBlockCount());
+	}
+
+	@Test
+	public void concurrentThreadsGetUniqueIdsAndOneBlockPerHandover() throws Exception {
+		int threads = 8, idsPerThread = 500, blockSize = 16;
+		MemoryOrderDAO dao = new MemoryOrderDAO();
+		OrderIdAllocator allocator = new OrderIdAllocator(dao, blockSize);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		ArrayList<Future<int[]>> results = new ArrayList<>();
+		for (int t = 0; t < threads; t++)
+			results.add(pool.submit(() -> {
+				start.await();
+				int[] ids = new int[idsPerThread];
+				for (int i = 0; i < ids.length; i++)
+					ids[i] = allocator.nextId();
+				return ids;
+			}));
+		start.countDown();
+
+		HashSet<Integer> seen = new HashSet<>();
+		for (Future<int[]> result : results)
+			for (int id : result.get(30, TimeUnit.SECONDS))
+				assertTrue("ID given out twice: " + id, seen.add(id));
+		pool.shutdown();
+
+		int total = threads * idsPerThread;
+		assertEquals(total, seen.size());
+		// Only the thread finding a block used up reserves the next one
+		int blocks = (total + blockSize - 1) / blockSize;
+		assertEquals(blocks, dao.reservations.get());
+		assertEquals(blocks, allocator.getReservedBlockCount());
+		// No ID is skipped while the server runs
+		for (int id = 1000; id < 1000 + total; id++)
+			assertTrue(seen.contains(id));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void blockSizeMustBePositive() {
+		new OrderIdAllocator(new MemoryOrderDAO(), 0);
+	}
+}
@@ -0,0 +1,82 @@
+package ekrut.server.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests the expiry of {@link TimingWheel} with a clock set by hand.
+ */
+public class TimingWheelTest {
+
+	private static ArrayList<String> advance(TimingWheel<String> wheel, long nowMillis) {
+		ArrayList<String> expired = new ArrayList<>();
+		wheel.advance(nowMillis, expired::add);
+		return expired;
+	}
+
+	@Test
+	public void entryExpiresAtTheTickOfItsDeadline() {
+		TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+		wheel.schedule("a", 25);
+
+		// Rounded up to the tick ending at 30
+		assertTrue(advance(wheel, 29).isEmpty());
+		assertEquals(Collections.singletonList("a"), advance(wheel, 30));
+		assertTrue(advance(wheel, 100).isEmpty());
+	}
+
+	@Test
+	public void entriesBeyondOneTurnWaitForTheirTurn() {
+		// 8 buckets of 10ms: one turn of the wheel is 80ms
+		TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+		wheel.schedule("near", 20);
+		wheel.schedule("far", 20 + 80 * 3);
+
+		assertEquals(Collections.singletonList("near"), advance(wheel, 20));
+		assertTrue(advance(wheel, 20 + 80 * 3 - 1).isEmpty());
+		assertEquals(Collections.singletonList("far"), advance(wheel, 20 + 80 * 3));
+	}
+
+	@Test
+	public void advancingOverManyTicksExpiresEverythingDue() {
+		TimingWheel<String> wheel = new TimingWheel<>(10, 4, 0);
+		wheel.schedule("a", 10);
+		wheel.schedule("b", 35);
+		wheel.schedule("c", 70);
+		wheel.schedule("d", 500);
+
+		ArrayList<String> expired = advance(wheel, 100);
+		assertEquals(Arrays.asList("a", "b", "c"), expired);
+		assertEquals(Collections.singletonList("d"), advance(wheel, 500));
+	}
+
+	@Test
+	public void pastDeadlineExpiresOnTheNextTick() {
+		TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+		wheel.schedule("late", 500);
+
+		assertTrue(advance(wheel, 1009).isEmpty());
+		assertEquals(Collections.singletonList("late"), advance(wheel, 1010));
+	}
+
+	@Test
+	public void bucketCountIsRoundedUpToAPowerOfTwo() {
+		// 5 buckets become 8, so a deadline 7 ticks away is still within one turn
+		TimingWheel<String> wheel = new TimingWheel<>(1, 5, 0);
+		wheel.schedule("a", 7);
+
+		assertTrue(advance(wheel, 6).isEmpty());
+		assertEquals(Collections.singletonList("a"), advance(wheel, 7));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tickMustBePositive() {
+		new TimingWheel<String>(0, 8, 0);
+	}
+}
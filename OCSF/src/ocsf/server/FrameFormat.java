@@ -0,0 +1 @@
+// This file extends the OCSF framework supporting section 3.8 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.compackage ocsf.server;import java.io.*;/*** The <code> FrameFormat </code> class decodes the messages of clients* that send them in frames.<p>** A framed connection starts with <code>FRAMED_HEADER</code> instead of the* header of an object stream. Each message follows as a four byte length* and then that many bytes, holding a complete object stream with the* message as its only object. Knowing the length up front, a server* running in non-blocking mode waits for the whole message before decoding* it, instead of trying again every time a part of it arrives.<p>** Clients that send a plain object stream are still accepted; the first* bytes of the connection tell the two apart.<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @see ocsf.client.AbstractClient*/final class FrameFormat{  // CLASS VARIABLES **************************************************  /**   * The header written once at the start of every object stream.   */  static final byte[] STREAM_HEADER =    {(byte)0xAC, (byte)0xED, 0x00, 0x05};  /**   * The header written once at the start of a framed connection. Must   * match the one written by <code>AbstractClient</code>.   */  static final byte[] FRAMED_HEADER = {'O', 'C', 'S', 'F'};  /**   * The size of the length written before every message.   */  static final int LENGTH_SIZE = 4;  /**   * The largest framed message accepted from a client, in bytes.   */  static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;// CONSTRUCTOR ******************************************************  private FrameFormat() {}// CLASS METHODS ****************************************************  /**   * Tells the format of a connection from its first bytes.   *   * @param header the first bytes received from the client.   * @param offset where the bytes start in <code>header</code>.   * @return true if the connection is framed, false if it is a plain   *    object stream.   * @exception StreamCorruptedException if it is neither.   */  static boolean isFramed(byte[] header, int offset)    throws StreamCorruptedException  {    if (startsWith(header, offset, FRAMED_HEADER))      return true;    if (startsWith(header, offset, STREAM_HEADER))      return false;    throw new StreamCorruptedException("invalid stream header");  }  /**   * Reads the length written before a message.   *   * @param bytes the received bytes.   * @param offset where the length starts.   * @return the length of the message.   * @exception IOException if the length is not a valid one.   */  static int readLength(byte[] bytes, int offset) throws IOException  {    int length = ((bytes[offset] & 0xFF) << 24)      | ((bytes[offset + 1] & 0xFF) << 16)      | ((bytes[offset + 2] & 0xFF) << 8)      | (bytes[offset + 3] & 0xFF);    return checkLength(length);  }  /**   * Checks the length written before a message.   *   * @param length the length.   * @return the length.   * @exception IOException if the length is not a valid one.   */  static int checkLength(int length) throws IOException  {    if (length < 0)      throw new StreamCorruptedException("invalid message length");    if (length > MAX_MESSAGE_SIZE)      throw new IOException("Message from client is too large");    return length;  }  /**   * Decodes a complete message.   *   * @param bytes the received bytes.   * @param offset where the message starts.   * @param length the length of the message.   * @return the message.   * @exception IOException if the bytes are not an object stream.   * @exception ClassNotFoundException if the message is of an unknown   *    class.   */  static Object decode(byte[] bytes, int offset, int length)    throws IOException, ClassNotFoundException  {    ObjectInputStream in = new ObjectInputStream(      new ByteArrayInputStream(bytes, offset, length));    return in.readObject();  }  private static boolean startsWith(byte[] bytes, int offset, byte[] prefix)  {    for (int i=0; i<prefix.length; i++)    {      if (bytes[offset + i] != prefix[i])        return false;    }    return true;  }}// End of FrameFormat class
\ No newline at end of file
@@ -0,0 +1 @@
+// This file extends the OCSF framework supporting section 3.8 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.compackage ocsf.server;import java.io.*;import java.net.*;import java.nio.*;import java.nio.channels.*;import java.util.*;import java.util.concurrent.*;import java.util.concurrent.atomic.*;/*** The <code> NioConnection </code> class holds the non-blocking channel of a* client connected to a server running in non-blocking mode, and converts* between the channel bytes and the objects exchanged with the client.<p>** Clients send their messages in frames (see <code> FrameFormat </code>),* so a message is decoded once, when all of its bytes have arrived.<p>** Clients sending a plain object stream, as older versions of* <code> AbstractClient </code> did, can still connect. Since such a* client resets its stream after each message, every message can be* decoded on its own; an attempt that runs out of bytes is simply retried* when more data arrives. As every attempt starts over, their messages are* limited to a much smaller size.<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @see ocsf.server.NioServerCore*/class NioConnection{  // CLASS VARIABLES **************************************************  /**   * The size of a single read from the channel.   */  private static final int READ_SIZE = 16 * 1024;  /**   * The largest message accepted from a client sending a plain object   * stream, in bytes. Decoding such a message may start over after every   * read, so the cost of decoding grows with the square of its size.   */  private static final int MAX_UNFRAMED_MESSAGE_SIZE = 256 * 1024;  /**   * The most bytes queued for a client that does not read them fast   * enough. Sending never waits for the client, so without a limit a   * stalled client would hold on to every message sent to it.   */  static final int MAX_QUEUED_BYTES = 8 * 1024 * 1024;  // INSTANCE VARIABLES ***********************************************  /**   * The channel connected to the client.   */  private final SocketChannel channel;  /**   * The event loop owning the channel.   */  private final NioServerCore.EventLoop loop;  /**   * The server whose hook methods are called.   */  private final AbstractServer server;  /**   * The core that keeps track of the open connections.   */  private final NioServerCore core;  /**   * The connection handed to the hook methods of the server.   */  private final ConnectionToClient client;  /**   * The registration of the channel with the selector of the loop.   */  private SelectionKey key;  /**   * Bytes received from the client and not decoded yet.   */  private byte[] input = new byte[READ_SIZE];  /**   * The number of bytes held in <code>input</code>.   */  private int inputLength = 0;  /**   * Indicates if the stream header of the client has been read.   */  private boolean headerRead = false;  /**   * Indicates if the client sends its messages in frames.   */  private boolean framed = false;  /**   * The stream used to encode messages sent to the client. Guarded by   * itself, together with <code>encoded</code> and the write queue.   */  private final ObjectOutputStream output;  /**   * The bytes written by <code>output</code>.   */  private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();  /**   * Encoded messages waiting to be written to the channel.   */  private final ConcurrentLinkedQueue<ByteBuffer> writeQueue =    new ConcurrentLinkedQueue<ByteBuffer>();  /**   * The number of bytes held in the write queue.   */  private final AtomicInteger queuedBytes = new AtomicInteger();  /**   * Indicates if the connection has been closed.   */  private volatile boolean closed = false;// CONSTRUCTOR ******************************************************  /**   * Constructs the connection for an accepted channel. Must be called   * on the event loop owning the channel.   *   * @param channel the non-blocking channel of the client.   * @param loop the event loop owning the channel.   * @param server the server whose hook methods are called.   * @param core the core that keeps track of the open connections.   * @exception IOException if the channel could not be registered.   */  NioConnection(SocketChannel channel, NioServerCore.EventLoop loop,    AbstractServer server, NioServerCore core) throws IOException  {    this.channel = channel;    this.loop = loop;    this.server = server;    this.core = core;    // The stream header goes out first, like with a blocking connection    output = new ObjectOutputStream(encoded);    output.flush();    queue(encoded.toByteArray());    encoded.reset();    key = channel.register(loop.selector, 0, this);    client = new ConnectionToClient(this, server);  }// INSTANCE METHODS *************************************************  /**   * @return the connection handed to the hook methods of the server.   */  ConnectionToClient getClient()  {    return client;  }  /**   * @return the socket of the channel.   */  Socket getSocket()  {    return channel.socket();  }  /**   * @return true if the connection has not been closed.   */  boolean isOpen()  {    return !closed;  }  /**   * Starts waiting for data from the client, and for the channel to   * accept the pending writes.   */  void interestRead()  {    updateInterest();  }  /**   * Encodes a message and queues it to be written to the client. May be   * called from any thread. If the client let more than   * <code>MAX_QUEUED_BYTES</code> pile up, the connection is closed   * instead, like a blocking send to a client that stopped reading   * would eventually fail.   *   * @param msg the message to be sent.   * @exception IOException if the message could not be encoded, the   *    connection is closed, or the client is too far behind.   */  void send(Object msg) throws IOException  {    if (closed)      throw new SocketException("socket does not exist");    IOException overflow = null;    synchronized (output)    {      output.writeObject(msg);      output.reset();      output.flush();      if (queuedBytes.get() + encoded.size() > MAX_QUEUED_BYTES)        overflow = new IOException("Client is not reading, "          + queuedBytes.get() + " bytes already queued");      else        queue(encoded.toByteArray());      encoded.reset();    }    if (overflow != null)    {      fail(overflow);      throw overflow;    }    loop.execute(this::flush);  }  /**   * Adds encoded bytes to the write queue.   */  private void queue(byte[] bytes)  {    queuedBytes.addAndGet(bytes.length);    writeQueue.add(ByteBuffer.wrap(bytes));  }  /**   * Closes the channel. Does not call any hook method.   */  void close()  {    if (closed)      return;    closed = true;    loop.execute(() ->    {      if (key != null)        key.cancel();    });    try    {      channel.close();    }    catch (IOException ex) {}    finally    {      core.unregister(client);    }  }  /**   * Handles the channel being ready for reading or writing. Called by   * the event loop.   *   * @param key the selection key of the channel.   */  void handleReady(SelectionKey key)  {    try    {      if (key.isValid() && key.isWritable())        flush();      if (key.isValid() && key.isReadable())        read();    }    catch (CancelledKeyException ex) {}  }  /**   * Closes the connection after an exception, and reports the exception   * to the server unless the connection was already closed. Only this   * connection is affected, never the event loop serving it.   *   * @param exception the exception thrown while serving the client.   */  void fail(Throwable exception)  {    if (closed)      return;    client.closeQuietly();    try    {      server.clientException(client, exception);    }    catch (Throwable ex) {}  }// METHODS USED BY THE EVENT LOOP ONLY ------------------------------  /**   * Reads the available bytes and handles every complete message.   */  private void read()  {    try    {      ByteBuffer buffer;      int count;      do      {        // Handling the complete messages first may free enough room        if (inputLength == input.length)          decodeMessages();        ensureInputSpace(READ_SIZE);        buffer = ByteBuffer.wrap(input, inputLength, input.length - inputLength);        count = channel.read(buffer);        if (count > 0)          inputLength += count;      }      while (count > 0 && !buffer.hasRemaining());      decodeMessages();      if (count < 0)        throw new EOFException("Connection closed by the client");    }    // Errors too, such as a stack overflow while handling a message: only    // this client is dropped, not the event loop serving the others    catch (Throwable exception)    {      fail(exception);    }  }  /**   * Decodes and handles every complete message held in the input buffer.   *   * @exception IOException if the client sent bytes that are not an   *    object stream.   * @exception ClassNotFoundException if a message is of an unknown class.   */  private void decodeMessages() throws IOException, ClassNotFoundException  {    int position = 0;    if (!headerRead)    {      if (inputLength < FrameFormat.STREAM_HEADER.length)        return;      framed = FrameFormat.isFramed(input, 0);      position = FrameFormat.STREAM_HEADER.length;      headerRead = true;    }    if (framed)      position = decodeFrames(position);    else      position = decodeObjects(position);    // Keep only the bytes that were not decoded yet    System.arraycopy(input, position, input, 0, inputLength - position);    inputLength -= position;    // Make room for the whole of the next frame at once    if (framed && inputLength >= FrameFormat.LENGTH_SIZE)      ensureInputSpace(FrameFormat.LENGTH_SIZE        + FrameFormat.readLength(input, 0) - inputLength);  }  /**   * Decodes and handles every complete frame held in the input buffer.   * A frame is only decoded once all of its bytes have arrived.   *   * @param position where the next frame starts.   * @return where the frames not decoded yet start.   */  private int decodeFrames(int position)    throws IOException, ClassNotFoundException  {    while (inputLength - position >= FrameFormat.LENGTH_SIZE && !closed)    {      int length = FrameFormat.readLength(input, position);      int start = position + FrameFormat.LENGTH_SIZE;      if (inputLength - start < length)        break;      Object msg = FrameFormat.decode(input, start, length);      position = start + length;      server.dispatchMessageFromClient(msg, client);    }    return position;  }  /**   * Decodes and handles every complete message of a plain object stream   * held in the input buffer.   *   * @param position where the next message starts.   * @return where the messages not decoded yet start.   */  private int decodeObjects(int position)    throws IOException, ClassNotFoundException  {    while (position < inputLength && !closed)    {      TrackingInputStream bytes =        new TrackingInputStream(input, position, inputLength - position);      Object msg;      try      {        ObjectInputStream in = new ObjectInputStream(new SequenceInputStream(          new ByteArrayInputStream(FrameFormat.STREAM_HEADER), bytes));        msg = in.readObject();      }      catch (IOException ex)      {        // Running out of bytes only means the message is not complete yet        if (bytes.reachedEnd())          break;        throw ex;      }      position = inputLength - bytes.available();      server.dispatchMessageFromClient(msg, client);    }    return position;  }  /**   * Makes sure the input buffer can hold some more bytes, or at least one   * more if it already has the largest size allowed.   *   * @param space the number of free bytes needed.   * @exception IOException if the client sent a message that is too large.   */  private void ensureInputSpace(int space) throws IOException  {    if (input.length - inputLength >= space)      return;    int maxSize = framed ?      FrameFormat.LENGTH_SIZE + FrameFormat.MAX_MESSAGE_SIZE :      MAX_UNFRAMED_MESSAGE_SIZE;    int size = Math.min(Math.max(input.length * 2, inputLength + space),      maxSize);    if (size > input.length)      input = Arrays.copyOf(input, size);    else if (inputLength == input.length)      throw new IOException("Message from client is too large");  }  /**   * Writes as many queued messages as the channel accepts.   */  private void flush()  {    if (closed)      return;    try    {      ByteBuffer buffer;      while ((buffer = writeQueue.peek()) != null)      {        channel.write(buffer);        if (buffer.hasRemaining())          break;        writeQueue.poll();        queuedBytes.addAndGet(-buffer.limit());      }      updateInterest();    }    catch (Throwable exception)    {      fail(exception);    }  }  /**   * Waits for the channel to accept writes only while some are pending.   */  private void updateInterest()  {    if (closed || !key.isValid())      return;    key.interestOps(writeQueue.isEmpty() ? SelectionKey.OP_READ :      SelectionKey.OP_READ | SelectionKey.OP_WRITE);  }// INNER CLASSES ----------------------------------------------------  /**   * A byte array stream that remembers if a read ever ran out of bytes.   */  private static class TrackingInputStream extends ByteArrayInputStream  {    private boolean reachedEnd = false;    TrackingInputStream(byte[] buf, int offset, int length)    {      super(buf, offset, length);    }    public synchronized int read()    {      int b = super.read();      if (b < 0)        reachedEnd = true;      return b;    }    public synchronized int read(byte[] b, int off, int len)    {      int count = super.read(b, off, len);      if (count < len)        reachedEnd = true;      return count;    }    boolean reachedEnd()    {      return reachedEnd;    }  }}// End of NioConnection Class
\ No newline at end of file
@@ -0,0 +1 @@
+// This file extends the OCSF framework supporting section 3.8 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.compackage ocsf.server;import java.io.*;import java.nio.channels.*;import java.util.*;import java.util.concurrent.*;import java.util.concurrent.atomic.*;/*** The <code> NioServerCore </code> class runs the client connections of an* <code> AbstractServer </code> that was switched to non-blocking mode* (see <code> AbstractServer.setEventLoops </code>).<p>** Instead of one thread per client, a small fixed number of event loop* threads each wait on a <code> Selector </code> for many client channels* at once. Accepted channels are spread over the event loops in turn, and* every message of a client is read, decoded and handled by the event loop* that owns its channel, so messages of the same client are still handled* in the order they were sent.<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @see ocsf.server.NioConnection*/class NioServerCore{  // INSTANCE VARIABLES *********************************************  /**   * The server whose hook methods are called.   */  private final AbstractServer server;  /**   * The event loops the client channels are spread over.   */  private final EventLoop[] loops;  /**   * The index of the event loop that gets the next accepted channel.   */  private final AtomicInteger nextLoop = new AtomicInteger();  /**   * The connections currently open.   */  private final Set<ConnectionToClient> connections =    ConcurrentHashMap.newKeySet();// CONSTRUCTOR ******************************************************  /**   * Constructs the core and starts its event loop threads.   *   * @param server the server whose hook methods are called.   * @param loopCount the number of event loop threads.   * @exception IOException if a selector could not be opened.   */  NioServerCore(AbstractServer server, int loopCount) throws IOException  {    this.server = server;    this.loops = new EventLoop[loopCount];    try    {      for (int i=0; i<loopCount; i++)      {        loops[i] = new EventLoop("OCSF event loop " + i);      }    }    catch (IOException ex)    {      shutdown();      throw ex;    }    for (int i=0; i<loopCount; i++)    {      loops[i].thread.start();    }  }// INSTANCE METHODS *************************************************  /**   * Hands a newly accepted channel to one of the event loops.   *   * @param channel the channel of the accepted client.   */  void register(SocketChannel channel)  {    EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(),      loops.length)];    loop.execute(() ->    {      NioConnection nio = null;      try      {        channel.configureBlocking(false);        channel.socket().setTcpNoDelay(true);        nio = new NioConnection(channel, loop, server, this);        connections.add(nio.getClient());      }      catch (IOException ex)      {        try        {          channel.close();        }        catch (IOException exc) {}        return;      }      try      {        server.clientConnected(nio.getClient());        // The hook may already have closed the connection        if (nio.isOpen())          nio.interestRead();      }      catch (Throwable exception)      {        nio.fail(exception);      }    });  }  /**   * Forgets a connection that was closed.   *   * @param client the connection that was closed.   */  void unregister(ConnectionToClient client)  {    connections.remove(client);  }  /**   * Returns the connections currently open.   *   * @return an array of <code>Thread</code> containing   * <code>ConnectionToClient</code> instances.   */  Thread[] getClientConnections()  {    return connections.toArray(new Thread[0]);  }  /**   * Counts the connections currently open.   *   * @return the number of clients currently connected.   */  int getNumberOfClients()  {    return connections.size();  }  /**   * Stops the event loop threads. Connections should already have been   * closed.   */  void shutdown()  {    for (EventLoop loop : loops)    {      if (loop != null)        loop.stop();    }  }// INNER CLASSES ----------------------------------------------------  /**   * A thread waiting on a selector for the channels it owns, and running   * the tasks handed to it by other threads.   */  static class EventLoop implements Runnable  {    /**     * The selector that waits for the channels of this loop.     */    final Selector selector;    /**     * The thread running this loop.     */    final Thread thread;    /**     * Tasks to run on this loop, such as registering a channel or     * writing to one.     */    private final ConcurrentLinkedQueue<Runnable> tasks =      new ConcurrentLinkedQueue<Runnable>();    /**     * Indicates if the loop is ready to stop.     */    private volatile boolean readyToStop = false;    /**     * Constructs an event loop without starting its thread.     *     * @param name the name of the thread.     * @exception IOException if the selector could not be opened.     */    EventLoop(String name) throws IOException    {      selector = Selector.open();      thread = new Thread(this, name);      thread.setDaemon(true);    }    /**     * Runs a task on this loop. If called from the loop itself the     * task runs right away.     *     * @param task the task to run.     */    void execute(Runnable task)    {      if (inEventLoop())      {        task.run();        return;      }      tasks.add(task);      selector.wakeup();    }    /**     * @return true if the calling thread is the thread of this loop.     */    boolean inEventLoop()    {      return Thread.currentThread() == thread;    }    /**     * Stops the loop and closes its selector.     */    void stop()    {      readyToStop = true;      selector.wakeup();    }    /**     * Waits for ready channels and runs pending tasks until stopped.     * Not to be called.     */    public void run()    {      try      {        while (!readyToStop)        {          selector.select();          Runnable task;          while ((task = tasks.poll()) != null)          {            try            {              task.run();            }            catch (Throwable exception)            {              // The tasks of a connection close it themselves when they              // fail; the loop keeps serving the other connections            }          }          Iterator<SelectionKey> it = selector.selectedKeys().iterator();          while (it.hasNext())          {            SelectionKey key = it.next();            it.remove();            NioConnection nio = (NioConnection)key.attachment();            try            {              nio.handleReady(key);            }            catch (Throwable exception)            {              nio.fail(exception);            }          }        }      }      catch (IOException exception)      {        // The selector failed, nothing more can be done on this loop      }      finally      {        for (SelectionKey key : selector.keys())        {          try          {            key.channel().close();          }          catch (IOException ex) {}        }        try        {          selector.close();        }        catch (IOException ex) {}      }    }  }}// End of NioServerCore Class
\ No newline at end of file
@@ -0,0 +1 @@
+// This file extends the OCSF framework supporting section 3.8 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.compackage ocsf.server;import java.lang.reflect.*;import java.time.Duration;import java.util.concurrent.atomic.*;import java.util.function.Consumer;/*** The <code> VirtualThreads </code> class starts the connection threads of* an <code> AbstractServer </code> running in virtual thread mode (see* <code> AbstractServer.setVirtualThreads </code>), and counts how often a* virtual thread pins its carrier thread.<p>** Virtual threads, and the JFR event streams used to count pinning, are* reached through reflection so that the framework still builds and runs* on Java versions without them; on those versions* <code> isSupported </code> returns false.<p>** Project Name: OCSF (Object Client-Server Framework)<p>*/class VirtualThreads{  // CLASS VARIABLES **************************************************  /**   * The name of the JFR event recorded when a virtual thread blocks   * while pinned to its carrier thread.   */  private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";  /**   * <code>Thread.ofVirtual()</code>, or null if not available.   */  private static final Method OF_VIRTUAL;  /**   * <code>Thread.Builder.name(String)</code>.   */  private static final Method NAME;  /**   * <code>Thread.Builder.start(Runnable)</code>.   */  private static final Method START;  static  {    Method ofVirtual = null, name = null, start = null;    try    {      Class<?> builder = Class.forName("java.lang.Thread$Builder");      ofVirtual = Thread.class.getMethod("ofVirtual");      name = builder.getMethod("name", String.class);      start = builder.getMethod("start", Runnable.class);      // Fails when virtual threads are a disabled preview feature      ofVirtual.invoke(null);    }    catch (Exception ex)    {      ofVirtual = null;    }    OF_VIRTUAL = ofVirtual;    NAME = name;    START = start;  }  // INSTANCE VARIABLES ***********************************************  /**   * The number of times a virtual thread blocked while pinned.   */  private final AtomicLong pinnedCount = new AtomicLong();  /**   * The JFR stream reporting pinned virtual threads (a   * <code>jdk.jfr.consumer.RecordingStream</code>), null if JFR is not   * available.   */  private AutoCloseable pinnedEvents;// CLASS METHODS ****************************************************  /**   * @return true if this Java version can start virtual threads.   */  static boolean isSupported()  {    return OF_VIRTUAL != null;  }  /**   * Starts a task on a new virtual thread.   *   * @param name the name of the thread.   * @param task the task to run.   * @return the started thread.   */  static Thread start(String name, Runnable task)  {    if (!isSupported())      throw new UnsupportedOperationException(        "Virtual threads require Java 21 or later");    try    {      Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);      return (Thread)START.invoke(builder, task);    }    catch (InvocationTargetException ex)    {      Throwable cause = ex.getCause();      if (cause instanceof RuntimeException)        throw (RuntimeException)cause;      if (cause instanceof Error)        throw (Error)cause;      throw new IllegalStateException(cause);    }    catch (IllegalAccessException ex)    {      throw new IllegalStateException(ex);    }  }// INSTANCE METHODS *************************************************  /**   * Starts counting the virtual threads that block while pinned. If JFR   * is not available the count stays at 0.   */  synchronized void startPinnedMonitor()  {    if (pinnedEvents != null)      return;    try    {      Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");      Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");      Consumer<Object> onPinned = event -> pinnedCount.incrementAndGet();      AutoCloseable events =        (AutoCloseable)streamClass.getConstructor().newInstance();      try      {        Object settings = streamClass.getMethod("enable", String.class)          .invoke(events, PINNED_EVENT);        settingsClass.getMethod("withThreshold", Duration.class)          .invoke(settings, Duration.ZERO);        streamClass.getMethod("onEvent", String.class, Consumer.class)          .invoke(events, PINNED_EVENT, onPinned);        streamClass.getMethod("startAsync").invoke(events);      }      catch (Exception ex)      {        events.close();        throw ex;      }      pinnedEvents = events;    }    catch (Exception ex) {}    catch (LinkageError ex) {}  }  /**   * Stops counting pinned virtual threads. The count is kept.   */  synchronized void stopPinnedMonitor()  {    if (pinnedEvents == null)      return;    try    {      pinnedEvents.close();    }    catch (Exception ex) {}    pinnedEvents = null;  }  /**   * @return the number of times a virtual thread blocked while pinned.   */  long getPinnedCount()  {    return pinnedCount.get();  }}// End of VirtualThreads Class
\ No newline at end of file
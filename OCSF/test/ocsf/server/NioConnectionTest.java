@@ -0,0 +1 @@
+// This file extends the OCSF framework supporting section 3.8 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.compackage ocsf.server;import static org.junit.Assert.*;import java.io.*;import java.net.*;import java.util.*;import java.util.concurrent.*;import org.junit.*;/*** Tests that a server running in non-blocking mode decodes the messages of* a client however their bytes are split by the network.<p>** The client is a plain socket, so the tests choose exactly which bytes* arrive together.<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @see ocsf.server.NioConnection*/public class NioConnectionTest{  /**   * How long to wait for a message to be handled.   */  private static final long TIMEOUT_SECONDS = 10;  /**   * A server in non-blocking mode keeping every message it handles.   */  private static class RecordingServer extends AbstractServer  {    final LinkedBlockingQueue<Object> received =      new LinkedBlockingQueue<Object>();    final LinkedBlockingQueue<Throwable> exceptions =      new LinkedBlockingQueue<Throwable>();    final LinkedBlockingQueue<ConnectionToClient> connected =      new LinkedBlockingQueue<ConnectionToClient>();    volatile boolean failNextConnection = false;    RecordingServer(int port)    {      super(port);      setEventLoops(1);    }    protected void clientConnected(ConnectionToClient client)    {      if (failNextConnection)      {        failNextConnection = false;        throw new IllegalStateException("connection refused by the hook");      }      connected.add(client);    }    protected void clientException(      ConnectionToClient client, Throwable exception)    {      exceptions.add(exception);    }    protected void handleMessageFromClient(      Object msg, ConnectionToClient client)    {      if ("fail".equals(msg))        throw new IllegalStateException("message refused by the handler");      received.add(msg);    }  }  private RecordingServer server;  private int port;  private Socket socket;  private OutputStream out;  @Before  public void setUp() throws IOException  {    ServerSocket probe = new ServerSocket(0);    try    {      port = probe.getLocalPort();    }    finally    {      probe.close();    }    server = new RecordingServer(port);    server.listen();    socket = new Socket("localhost", port);    socket.setTcpNoDelay(true);    out = socket.getOutputStream();  }  @After  public void tearDown() throws IOException  {    socket.close();    server.close();  }  /**   * @return a message as a framed client sends it: its length, then an   *    object stream holding only the message.   */  private static byte[] frame(Object msg) throws IOException  {    ByteArrayOutputStream stream = new ByteArrayOutputStream();    ObjectOutputStream objects = new ObjectOutputStream(stream);    objects.writeObject(msg);    objects.close();    byte[] body = stream.toByteArray();    ByteArrayOutputStream bytes = new ByteArrayOutputStream();    DataOutputStream data = new DataOutputStream(bytes);    data.writeInt(body.length);    data.write(body);    return bytes.toByteArray();  }  private static byte[] concat(byte[]... parts)  {    ByteArrayOutputStream bytes = new ByteArrayOutputStream();    for (byte[] part : parts)      bytes.write(part, 0, part.length);    return bytes.toByteArray();  }  /**   * Sends bytes in separate writes, pausing in between so each part is   * read on its own.   */  private void sendInParts(byte[] bytes, int... cuts) throws Exception  {    int start = 0;    for (int cut : cuts)    {      out.write(bytes, start, cut - start);      out.flush();      Thread.sleep(50);      start = cut;    }    out.write(bytes, start, bytes.length - start);    out.flush();  }  private Object nextMessage() throws InterruptedException  {    Object msg = server.received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);    assertNotNull("No message was handled", msg);    return msg;  }  /**   * Opens another framed connection to the server.   */  private Socket connect() throws IOException  {    Socket other = new Socket("localhost", port);    other.getOutputStream().write(FrameFormat.FRAMED_HEADER);    return other;  }  /**   * @return true once the server closed the connection of a socket.   */  private static boolean closedByServer(Socket other) throws IOException  {    other.setSoTimeout((int)TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));    InputStream in = other.getInputStream();    try    {      // Skip the stream header sent by the server      while (in.read() >= 0);      return true;    }    catch (SocketException ex)    {      // Reset rather than closed      return true;    }  }  @Test  public void failingConnectHookClosesOnlyItsConnection() throws Exception  {    out.write(concat(FrameFormat.FRAMED_HEADER, frame("before")));    out.flush();    assertEquals("before", nextMessage());    server.failNextConnection = true;    Socket other = connect();    try    {      assertTrue(closedByServer(other));      assertTrue(server.exceptions.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)        instanceof IllegalStateException);    }    finally    {      other.close();    }    // The event loop still serves the first client    out.write(frame("after"));    out.flush();    assertEquals("after", nextMessage());  }  @Test  public void failingHandlerClosesOnlyItsConnection() throws Exception  {    out.write(concat(FrameFormat.FRAMED_HEADER, frame("before")));    out.flush();    assertEquals("before", nextMessage());    Socket other = connect();    try    {      other.getOutputStream().write(frame("fail"));      assertTrue(closedByServer(other));    }    finally    {      other.close();    }    out.write(frame("after"));    out.flush();    assertEquals("after", nextMessage());  }  @Test  public void clientThatNeverReadsIsClosed() throws Exception  {    assertNotNull(server.connected.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));    Socket stalled = new Socket();    stalled.setReceiveBufferSize(4096);    stalled.connect(new InetSocketAddress("localhost", port));    try    {      stalled.getOutputStream().write(FrameFormat.FRAMED_HEADER);      ConnectionToClient client =        server.connected.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);      assertNotNull(client);      // Far more than the limit and any socket buffers, if never refused      byte[] payload = new byte[256 * 1024];      int sent = 0;      try      {        for (; sent < 4 * NioConnection.MAX_QUEUED_BYTES / payload.length;          sent++)        {          client.sendToClient(payload);        }        fail("Sending to a client that never reads never failed");      }      catch (IOException ex)      {        // Expected      }      assertTrue(sent > 0);      assertTrue(server.exceptions.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)        instanceof IOException);      try      {        client.sendToClient("more");        fail("The connection was not closed");      }      catch (IOException ex)      {        // Expected      }    }    finally    {      stalled.close();    }    // The other client is still served    out.write(concat(FrameFormat.FRAMED_HEADER, frame("after")));    out.flush();    assertEquals("after", nextMessage());  }  @Test  public void frameSplitAnywhereIsDecodedOnce() throws Exception  {    byte[] frame = frame("hello");    // Inside the header, inside the length, and inside the body    sendInParts(concat(FrameFormat.FRAMED_HEADER, frame), 2, 6, 12);    assertEquals("hello", nextMessage());    Thread.sleep(100);    assertTrue(server.received.isEmpty());  }  @Test  public void frameSentByteByByteIsDecoded() throws Exception  {    byte[] bytes = concat(FrameFormat.FRAMED_HEADER, frame(42));    for (byte b : bytes)    {      out.write(b);      out.flush();    }    assertEquals(42, nextMessage());  }  @Test  public void framesSentTogetherAreDecodedInOrder() throws Exception  {    ByteArrayOutputStream bytes = new ByteArrayOutputStream();    bytes.write(FrameFormat.FRAMED_HEADER);    for (int i=0; i<100; i++)      bytes.write(frame(i));    // The last frame is cut short, then completed    byte[] last = frame("last");    bytes.write(last, 0, 3);    out.write(bytes.toByteArray());    out.flush();    Thread.sleep(50);    out.write(last, 3, last.length - 3);    out.flush();    for (int i=0; i<100; i++)      assertEquals(i, nextMessage());    assertEquals("last", nextMessage());  }  @Test  public void frameLargerThanASingleReadIsDecoded() throws Exception  {    char[] chars = new char[200 * 1024];    Arrays.fill(chars, 'x');    String large = new String(chars);    byte[] frame = frame(large);    sendInParts(concat(FrameFormat.FRAMED_HEADER, frame),      FrameFormat.FRAMED_HEADER.length + 100, frame.length / 2);    assertEquals(large, nextMessage());  }  @Test  public void plainObjectStreamIsStillAccepted() throws Exception  {    ObjectOutputStream objects = new ObjectOutputStream(out);    objects.writeObject("first");    objects.reset();    objects.flush();    objects.writeObject("second");    objects.flush();    assertEquals("first", nextMessage());    assertEquals("second", nextMessage());  }}// End of NioConnectionTest class
\ No newline at end of file
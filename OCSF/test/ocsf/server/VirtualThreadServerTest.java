@@ -0,0 +1 @@
+// This file extends the OCSF framework supporting section 3.8 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.compackage ocsf.server;import static org.junit.Assert.*;import java.io.*;import java.net.*;import java.util.concurrent.*;import org.junit.*;/*** Tests a server serving every client on its own virtual thread. Skipped* before Java 21.<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @see ocsf.server.AbstractServer#setVirtualThreads(boolean)*/public class VirtualThreadServerTest{  /**   * How long to wait for a message to be handled.   */  private static final long TIMEOUT_SECONDS = 10;  /**   * A server in virtual thread mode keeping every message it handles.   */  private static class RecordingServer extends AbstractServer  {    final LinkedBlockingQueue<Object> received =      new LinkedBlockingQueue<Object>();    RecordingServer(int port)    {      super(port);      setVirtualThreads(true);    }    protected void handleMessageFromClient(      Object msg, ConnectionToClient client)    {      received.add(msg);    }  }  private int port;  private RecordingServer server;  @Before  public void setUp() throws IOException  {    Assume.assumeTrue(VirtualThreads.isSupported());    ServerSocket probe = new ServerSocket(0);    try    {      port = probe.getLocalPort();    }    finally    {      probe.close();    }    server = new RecordingServer(port);    server.listen();  }  @After  public void tearDown() throws IOException  {    if (server != null)      server.close();  }  @Test  public void silentClientDoesNotHoldUpLaterClients() throws Exception  {    // Connects and never sends its stream header    Socket silent = new Socket("localhost", port);    try    {      Socket client = new Socket("localhost", port);      try      {        ObjectOutputStream out =          new ObjectOutputStream(client.getOutputStream());        out.writeObject("hello");        out.flush();        assertEquals("hello",          server.received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));      }      finally      {        client.close();      }    }    finally    {      silent.close();    }  }  @Test  public void closingTheServerClosesASilentClient() throws Exception  {    Socket silent = new Socket("localhost", port);    try    {      // Give the server time to accept it      Thread.sleep(100);      server.close();      server = null;      silent.setSoTimeout((int)TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));      try      {        assertEquals(-1, silent.getInputStream().read());      }      catch (SocketException ex)      {        // Reset rather than closed      }    }    finally    {      silent.close();    }  }}// End of VirtualThreadServerTest class
\ No newline at end of file